@@ -0,0 +1,63 @@
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Shape;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Boards with the mix of shapes a real session produces
+public final class BenchBoards {
+
+    private BenchBoards() {
+    }
+
+    public static List<ColoredShape> randomBoard(int count, long seed) {
+        return randomBoard(count, seed, 850, 400);
+    }
+
+    // Shapes spread over a board of the given size
+    public static List<ColoredShape> randomBoard(int count, long seed, int width, int height) {
+        Random random = new Random(seed);
+        Font font = new Font("Arial", Font.PLAIN, 20);
+        List<ColoredShape> shapes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int x = random.nextInt(width);
+            int y = random.nextInt(height);
+            Color color = new Color(random.nextInt(0xFFFFFF));
+            Shape shape;
+            String text = null;
+            switch (i % 5) {
+                case 0:
+                    shape = new Line2D.Double(x, y, x + random.nextInt(20), y + random.nextInt(20));
+                    break;
+                case 1:
+                    shape = new Ellipse2D.Double(x, y, 40, 40);
+                    break;
+                case 2:
+                    shape = new Rectangle2D.Double(x, y, random.nextInt(200), random.nextInt(200));
+                    break;
+                case 3:
+                    text = Character.toString((char) ('a' + random.nextInt(26)));
+                    shape = new Text2D(text, x, y, color, font);
+                    break;
+                default:
+                    int[] points = new int[32];
+                    for (int p = 0; p < points.length; p += 2) {
+                        x += random.nextInt(7) - 3;
+                        y += random.nextInt(7) - 3;
+                        points[p] = x;
+                        points[p + 1] = y;
+                    }
+                    shape = new Polyline2D(points);
+                    break;
+            }
+            ColoredShape coloredShape = new ColoredShape(shape, color, text);
+            coloredShape.setSequence(i + 1);
+            shapes.add(coloredShape);
+        }
+        return shapes;
+    }
+}
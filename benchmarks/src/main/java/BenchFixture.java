@@ -0,0 +1,26 @@
+import benchmarks.Fixture;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// What the fixtures share: each registers its operations by name while it is set up
+public abstract class BenchFixture implements Fixture {
+    private final Map<String, Operation> operations = new HashMap<>();
+
+    protected void define(String name, Operation operation) {
+        operations.put(name, operation);
+    }
+
+    @Override
+    public Operation operation(String name) {
+        Operation operation = operations.get(name);
+        if (operation == null) {
+            throw new IllegalArgumentException(getClass().getName() + " has no operation " + name);
+        }
+        return operation;
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+    }
+}
@@ -0,0 +1,84 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// A WhiteboardServer with in-process fake clients. With path "session" the shapes are drawn through the
+// first client's ClientSession, as a joined client's calls are, so its admission checks are measured too;
+// with "board" they go to the board directly.
+public class BroadcastBenchFixture extends BenchFixture {
+    // Clear the board now and then so a long run does not fill the heap; sequence numbers keep counting
+    private static final int CLEAR_EVERY = 100_000;
+
+    private WhiteboardServer server;
+    // The board itself, or the drawing client's session on it
+    private WhiteboardServerInterface target;
+    private final List<FakeClient> clients = new ArrayList<>();
+    private long sequence = 0;
+
+    @Override
+    public void setUp(Map<String, String> params) throws Exception {
+        // Measure the board on its own, without the journal or a board left over from another run
+        System.setProperty("whiteboard.journal.dir", "");
+        // Limits far above what one thread draws, so the session checks them but never holds a shape back
+        System.setProperty("whiteboard.limit.drawPerSecond", "1e9");
+        System.setProperty("whiteboard.limit.drawBurst", "1e9");
+        System.setProperty("whiteboard.limit.boardPerSecond", "1e9");
+        server = new WhiteboardServer("localhost", 0, "bench");
+        int clientCount = Integer.parseInt(params.get("clients"));
+        for (int i = 0; i < clientCount; i++) {
+            FakeClient client = new FakeClient(server);
+            clients.add(client);
+            server.addClient(client, "client" + i);
+        }
+        target = server;
+        if ("session".equals(params.get("path"))) {
+            ClientSession session = new ClientSession(server, clients.get(0));
+            server.setSession(clients.get(0), session);
+            target = session;
+        }
+        define("broadcast", this::broadcast);
+        define("awaitDelivery", this::awaitDelivery);
+    }
+
+    // Calls one of the broadcastDraw* methods and returns the sequence number the shape will get
+    private Object broadcast(long shapeIndex) throws Exception {
+        if (sequence > 0 && sequence % CLEAR_EVERY == 0) {
+            target.clear();
+        }
+        int x = (int) (shapeIndex % 850);
+        int y = (int) (shapeIndex % 400);
+        switch ((int) (shapeIndex & 3)) {
+            case 0:
+                target.broadcastDrawLine(x, y, x + 10, y + 10, 0xFF000000);
+                break;
+            case 1:
+                target.broadcastDrawRectangle(x, y, 30, 20, 0xFFFF0000);
+                break;
+            case 2:
+                target.broadcastDrawOval(x, y, 30, 20, 0xFF00FF00);
+                break;
+            default:
+                target.broadcastDrawCircle(x, y, 25, 0xFF0000FF);
+                break;
+        }
+        return ++sequence;
+    }
+
+    // Waits until every fake client has received the shape with this sequence number
+    private Object awaitDelivery(long target) throws InterruptedException {
+        for (FakeClient client : clients) {
+            while (client.getLastSequence() < target) {
+                Thread.onSpinWait();
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void tearDown() {
+        server.shutdown();
+    }
+}
@@ -0,0 +1,195 @@
+import java.awt.Color;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+// Runs a leader and two follower nodes in one JVM, talking over loopback with either transport, with clients
+// in-process on every node. Each node gets the same number of concurrent drawers; the harness reports the write
+// throughput of the cluster and checks that every node and every client ends up with the leader's board.
+//
+//   java -cp benchmarks/target/benchmarks.jar ClusterHarness [basePort] [clientsPerNode] [shapesPerNode] [rmi|nio]
+public class ClusterHarness {
+    private static final int NODES = 3;
+    private static final String BOARD = BoardManager.DEFAULT_BOARD;
+
+    public static void main(String[] args) throws Exception {
+        int basePort = args.length > 0 ? Integer.parseInt(args[0]) : 21099;
+        int clientsPerNode = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int shapesPerNode = args.length > 2 ? Integer.parseInt(args[2]) : 20_000;
+        Transport transport = Transport.named(args.length > 3 ? args[3] : "rmi");
+        System.setProperty("whiteboard.journal.dir", "");
+        // The drawers write as fast as the cluster takes it, far past the per-client rate limits
+        for (String limit : new String[] {"whiteboard.limit.drawPerSecond", "whiteboard.limit.boardPerSecond"}) {
+            if (System.getProperty(limit) == null) {
+                System.setProperty(limit, "0");
+            }
+        }
+        if (System.getProperty("whiteboard.join.policy") == null) {
+            System.setProperty("whiteboard.join.policy", "accept");
+        }
+
+        // All the nodes run in this JVM, so they share whatever secret it has
+        if (System.getProperty("whiteboard.cluster.secret") == null) {
+            System.setProperty("whiteboard.cluster.secret", Long.toHexString(new SecureRandom().nextLong()));
+        }
+
+        BoardManager leader = new BoardManager(new ServerExecutors(), "harness");
+        transport.bind(basePort, "WhiteboardBoards", leader);
+        leader.start();
+        List<BoardManager> nodes = new ArrayList<>();
+        nodes.add(leader);
+        for (int i = 1; i < NODES; i++) {
+            nodes.add(ClusterNode.startFollower(transport, basePort + i, "localhost", basePort, "node-" + i));
+        }
+
+        List<Probe> probes = new ArrayList<>();
+        List<WhiteboardServerInterface> boards = new ArrayList<>();
+        for (int n = 0; n < NODES; n++) {
+            WhiteboardServerInterface board = null;
+            for (int c = 0; c < clientsPerNode; c++) {
+                Probe probe = new Probe();
+                String userName = "client-" + n + "-" + c;
+                // A follower passes the join on to the leader, which answers the probe over the transport
+                nodes.get(n).requestJoin(probe, userName, BOARD);
+                board = nodes.get(n).addClient(probe, userName, BOARD, probe.grant.get(10, TimeUnit.SECONDS));
+                probe.board = board;
+                probes.add(probe);
+            }
+            boards.add(board);
+        }
+
+        // One drawer per node, all writing at once; followers forward every write to the leader
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> drawers = new ArrayList<>();
+        for (int n = 0; n < NODES; n++) {
+            WhiteboardServerInterface board = boards.get(n);
+            int node = n;
+            Thread drawer = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < shapesPerNode; i++) {
+                        int x = i % 850, y = (i * 7 + node * 100) % 400;
+                        board.broadcastDrawLine(x, y, x + 10, y + 10, 0xFF000000 | node);
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }, "drawer-" + n);
+            drawer.start();
+            drawers.add(drawer);
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread drawer : drawers) {
+            drawer.join();
+        }
+        long written = System.nanoTime();
+
+        long target = boards.get(0).getBoardChunk(Long.MAX_VALUE, 1).getSequence();
+        for (Probe probe : probes) {
+            while (probe.lastSequence < target) {
+                Thread.sleep(1);
+            }
+        }
+        long converged = System.nanoTime();
+
+        int total = NODES * shapesPerNode;
+        System.out.printf("%s, %d nodes, %d clients each: %d shapes written in %d ms (%.0f shapes/s), all clients caught up %d ms later%n",
+                args.length > 3 ? args[3] : "rmi", NODES, clientsPerNode, total, (written - begin) / 1_000_000, total / ((written - begin) / 1e9),
+                (converged - written) / 1_000_000);
+
+        List<ColoredShape> expected = boards.get(0).getSnapshot().getShapes();
+        boolean consistent = expected.size() == total && target == total;
+        for (int n = 1; n < NODES; n++) {
+            List<ColoredShape> actual = boards.get(n).getSnapshot().getShapes();
+            consistent &= sameBoard(expected, actual);
+        }
+        System.out.println(consistent ? "Every node holds the leader's board" : "Nodes DIVERGED from the leader");
+
+        for (int n = NODES - 1; n >= 0; n--) {
+            nodes.get(n).shutdown();
+        }
+        System.exit(consistent ? 0 : 1);
+    }
+
+    private static boolean sameBoard(List<ColoredShape> expected, List<ColoredShape> actual) {
+        if (expected.size() != actual.size()) {
+            return false;
+        }
+        for (int i = 0; i < expected.size(); i++) {
+            ColoredShape a = expected.get(i), b = actual.get(i);
+            if (a.getSequence() != b.getSequence() || !a.getShape().getBounds2D().equals(b.getShape().getBounds2D())
+                    || !a.getColor().equals(b.getColor())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Only keeps track of how far along the board it is
+    private static class Probe extends UnicastRemoteObject implements WhiteboardClientInterface, JoinListener {
+        final CompletableFuture<Long> grant = new CompletableFuture<>();
+        volatile WhiteboardServerInterface board;
+        volatile long lastSequence = 0;
+
+        Probe() throws RemoteException {
+        }
+
+        @Override
+        public void joinAnswered(String boardId, boolean accepted, long grant) {
+            this.grant.complete(grant);
+        }
+
+        @Override
+        public void draw(ColoredShape shape) {
+            lastSequence = shape.getSequence();
+        }
+
+        @Override
+        public void resync() throws RemoteException {
+            lastSequence = board.getBoardChunk(Long.MAX_VALUE, 1).getSequence();
+        }
+
+        @Override
+        public void erase(long[] sequences) {
+        }
+
+        @Override
+        public void previewStroke(long strokeId, int[] points, int color) {
+        }
+
+        @Override
+        public void previewText(long textId, String text, int x, int y, int color) {
+        }
+
+        @Override
+        public void receiveMessage(String message) {
+        }
+
+        @Override
+        public void clear() {
+        }
+
+        @Override
+        public void closeApplication() {
+        }
+
+        @Override
+        public void setCurrentColor(Color color) {
+        }
+
+        @Override
+        public boolean ping() {
+            return true;
+        }
+
+        @Override
+        public void receiveChatMessage(ChatMessage message) {
+        }
+    }
+}
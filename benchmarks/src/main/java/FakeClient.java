@@ -0,0 +1,64 @@
+import java.awt.Color;
+import java.rmi.RemoteException;
+
+// A client that only records what the server sent it. Not exported, the server calls it directly.
+public class FakeClient implements WhiteboardClientInterface {
+    private final WhiteboardServerInterface server;
+    private volatile long lastSequence = 0;
+
+    public FakeClient(WhiteboardServerInterface server) {
+        this.server = server;
+    }
+
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    @Override
+    public void draw(ColoredShape shape) {
+        lastSequence = shape.getSequence();
+    }
+
+    @Override
+    public void resync() throws RemoteException {
+        // Only the position matters here, so skip fetching the shapes
+        lastSequence = server.getBoardChunk(Long.MAX_VALUE, 1).getSequence();
+    }
+
+    @Override
+    public void erase(long[] sequences) {
+    }
+
+    @Override
+    public void previewStroke(long strokeId, int[] points, int color) {
+    }
+
+    @Override
+    public void previewText(long textId, String text, int x, int y, int color) {
+    }
+
+    @Override
+    public void receiveMessage(String message) {
+    }
+
+    @Override
+    public void clear() {
+    }
+
+    @Override
+    public void closeApplication() {
+    }
+
+    @Override
+    public void setCurrentColor(Color color) {
+    }
+
+    @Override
+    public boolean ping() {
+        return true;
+    }
+
+    @Override
+    public void receiveChatMessage(ChatMessage message) {
+    }
+}
@@ -0,0 +1,66 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.List;
+
+// Heap kept per shape by the server's ShapeLog and by a client's BoardReplica, each with its spatial
+// index, for a board with the usual mix of lines, circles, rectangles, text and strokes. Shapes are
+// made in batches and only the board keeps them, so what is left after a full GC is the board's.
+//
+//   java -Xmx4g -cp benchmarks/target/benchmarks.jar HeapHarness [shapes]
+public class HeapHarness {
+    private static final int BATCH = 10_000;
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int side = (int) Math.sqrt((double) count * 1100);
+
+        long before = usedHeap();
+        ShapeLog log = new ShapeLog();
+        for (int done = 0; done < count; done += BATCH) {
+            for (ColoredShape shape : batch(done, Math.min(BATCH, count - done), side)) {
+                log.append(shape, null);
+            }
+        }
+        long logBytes = usedHeap() - before;
+        report("ShapeLog", log.size(), logBytes);
+        // What the whiteboard_drawings_heap_bytes metric says for the same board
+        report("  reported", log.size(), log.heapBytes());
+        log = null;
+
+        before = usedHeap();
+        BoardReplica replica = new BoardReplica();
+        long sequence = 0;
+        for (int done = 0; done < count; done += BATCH) {
+            for (ColoredShape shape : batch(done, Math.min(BATCH, count - done), side)) {
+                shape.setSequence(++sequence);
+                replica.append(shape);
+            }
+        }
+        long replicaBytes = usedHeap() - before;
+        report("BoardReplica", replica.size(), replicaBytes);
+    }
+
+    private static List<ColoredShape> batch(int first, int count, int side) {
+        // Seeded by position, so every run builds the same board
+        return BenchBoards.randomBoard(count, first, side, side);
+    }
+
+    private static void report(String name, int shapes, long bytes) {
+        System.out.printf("%-12s %,d shapes: %,d MB, %.1f bytes per shape%n", name, shapes, bytes >> 20, bytes / (double) shapes);
+    }
+
+    private static long usedHeap() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long used = Long.MAX_VALUE;
+        // Collect until the number stops dropping
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            long now = memory.getHeapMemoryUsage().getUsed();
+            if (now >= used) {
+                break;
+            }
+            used = now;
+        }
+        return used;
+    }
+}
@@ -0,0 +1,208 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// How many drawers can one server keep up with? For each bot count it starts a fresh server in a child
+// JVM (no GUI, and no journal unless -Dwhiteboard.journal.dir is given) and puts that many BotClients in
+// this JVM on one board, drawing at the given per-bot rates. After a warm-up it reports the latency from a
+// bot's draw call to every other bot's draw() callback, the throughput, and the CPU used by the server and
+// by the bots; bots short of CPU make the server look slower than it is. Other -Dwhiteboard.* settings are
+// passed on to the server.
+//
+//   java -cp benchmarks/target/benchmarks.jar LoadHarness [bots,bots,...] [seconds] [--transport rmi|nio]
+//        [--shapes n] [--strokes n] [--texts n] [--chats n] [--points n]
+public class LoadHarness {
+    private static final String READY = "READY";
+    private static final int WARM_UP_SECONDS = 5;
+
+    private static volatile LatencyHistogram latencies = new LatencyHistogram();
+
+    public static void main(String[] commandLine) throws Exception {
+        List<String> options = new ArrayList<>(Arrays.asList(commandLine));
+        if (!options.isEmpty() && options.get(0).equals("--serve")) {
+            serve(Integer.parseInt(options.get(1)), options.get(2));
+            return;
+        }
+        String transport = WhiteboardConfig.transport();
+        int index = options.indexOf("--transport");
+        if (index >= 0 && index + 1 < options.size()) {
+            transport = options.get(index + 1);
+            options.subList(index, index + 2).clear();
+        }
+        BotClient.Rates rates = BotClient.Rates.fromArgs(options);
+        String[] steps = (options.size() > 0 ? options.get(0) : "10,50,100").split(",");
+        int seconds = options.size() > 1 ? Integer.parseInt(options.get(1)) : 30;
+
+        System.out.println(transport + ", every bot draws " + rates + "; " + WARM_UP_SECONDS + " s warm-up, "
+                + seconds + " s measured, latency is from a bot's call to each peer's draw()");
+        System.out.println(Runtime.getRuntime().availableProcessors() + " processors shared by the server and the bots");
+        System.out.printf("%6s %9s %12s %8s %8s %8s %8s %12s %12s %8s %7s %6s%n", "bots", "calls/s", "delivered/s",
+                "p50 ms", "p99 ms", "p999 ms", "max ms", "server CPU", "bots CPU", "resyncs", "errors", "late");
+        for (String step : steps) {
+            run(Integer.parseInt(step.trim()), seconds, transport, rates);
+        }
+        System.exit(0);
+    }
+
+    private static void run(int botCount, int seconds, String transportName, BotClient.Rates rates) throws Exception {
+        if (botCount < 2 || botCount > BotClient.MAX_BOTS) {
+            throw new IllegalArgumentException("Between 2 and " + BotClient.MAX_BOTS + " bots");
+        }
+        int port;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        Process server = startServer(port, transportName);
+        Transport transport = Transport.named(transportName);
+        try {
+            BoardManagerInterface boards = (BoardManagerInterface) transport.lookup("localhost", port, "WhiteboardBoards");
+            BotClient[] bots = new BotClient[botCount];
+            for (int i = 0; i < botCount; i++) {
+                bots[i] = new BotClient("bot" + i, i, rates, i);
+                bots[i].setDrawListener((receiver, shape) -> {
+                    int color = shape.getColor().getRGB();
+                    int sender = BotClient.botOf(color);
+                    if (sender != receiver.getBotIndex() && sender < bots.length) {
+                        latencies.record(System.nanoTime() - bots[sender].sentAt(color));
+                    }
+                });
+                if (!bots[i].askToJoin(boards, BoardManager.DEFAULT_BOARD)) {
+                    throw new IllegalStateException("The server did not let bot" + i + " join");
+                }
+            }
+            for (BotClient bot : bots) {
+                bot.start();
+            }
+            Thread.sleep(TimeUnit.SECONDS.toMillis(WARM_UP_SECONDS));
+
+            latencies = new LatencyHistogram();
+            long sentBefore = sent(bots);
+            long cpuBefore = cpuNanos(server.toHandle());
+            long botsCpuBefore = cpuNanos(ProcessHandle.current());
+            long begin = System.nanoTime();
+            Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+            LatencyHistogram measured = latencies;
+            long elapsed = System.nanoTime() - begin;
+            double cpu = cores(cpuBefore, cpuNanos(server.toHandle()), elapsed);
+            double botsCpu = cores(botsCpuBefore, cpuNanos(ProcessHandle.current()), elapsed);
+            long calls = sent(bots) - sentBefore;
+
+            for (BotClient bot : bots) {
+                bot.stop();
+            }
+            long resyncs = 0, errors = 0, late = 0;
+            for (BotClient bot : bots) {
+                resyncs += bot.getResyncs();
+                errors += bot.getErrors();
+                late += bot.getLate();
+            }
+            double elapsedSeconds = elapsed / 1e9;
+            System.out.printf("%6d %9.0f %12.0f %8.2f %8.2f %8.2f %8.2f %6.2f cores %6.2f cores %8d %7d %6d%n", botCount,
+                    calls / elapsedSeconds, measured.getCount() / elapsedSeconds,
+                    millis(measured.percentileNanos(0.5)), millis(measured.percentileNanos(0.99)),
+                    millis(measured.percentileNanos(0.999)), millis(measured.getMaxNanos()),
+                    cpu, botsCpu, resyncs, errors, late);
+        } finally {
+            server.getOutputStream().close();
+            if (!server.waitFor(30, TimeUnit.SECONDS)) {
+                server.destroyForcibly();
+            }
+            transport.close();
+        }
+    }
+
+    private static long sent(BotClient[] bots) {
+        long sent = 0;
+        for (BotClient bot : bots) {
+            sent += bot.getSent();
+        }
+        return sent;
+    }
+
+    // CPU time the process has used so far, -1 if the platform does not say
+    private static long cpuNanos(ProcessHandle process) {
+        return process.info().totalCpuDuration().map(Duration::toNanos).orElse(-1L);
+    }
+
+    // Cores kept busy on average between two readings of cpuNanos()
+    private static double cores(long before, long after, long elapsed) {
+        return before < 0 || after < 0 ? Double.NaN : (after - before) / (double) elapsed;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    // SERVER
+
+    private static Process startServer(int port, String transport) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith("whiteboard.")) {
+                command.add("-D" + name + "=" + System.getProperty(name));
+            }
+        }
+        if (System.getProperty("whiteboard.journal.dir") == null) {
+            command.add("-Dwhiteboard.journal.dir=");
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(LoadHarness.class.getName());
+        command.add("--serve");
+        command.add(Integer.toString(port));
+        command.add(transport);
+        Process server = new ProcessBuilder(command).redirectErrorStream(true).start();
+
+        BufferedReader output = new BufferedReader(new InputStreamReader(server.getInputStream(), StandardCharsets.UTF_8));
+        String line;
+        while ((line = output.readLine()) != null && !line.equals(READY)) {
+            System.err.println("server: " + line);
+        }
+        if (line == null) {
+            throw new IOException("The server did not start");
+        }
+        // Pass on anything unexpected, but not a line for every bot that joins, leaves or chats
+        Thread drain = new Thread(() -> {
+            try {
+                String next;
+                while ((next = output.readLine()) != null) {
+                    if (!next.endsWith(" added") && !next.equals("Client removed") && !next.startsWith("Adding chat message")) {
+                        System.err.println("server: " + next);
+                    }
+                }
+            } catch (IOException e) {
+                // Server exited
+            }
+        }, "server-output");
+        drain.setDaemon(true);
+        drain.start();
+        return server;
+    }
+
+    // Runs in the child JVM until the harness closes its standard input
+    private static void serve(int port, String transportName) throws Exception {
+        Transport transport = Transport.named(transportName);
+        // Nobody is there to approve the bots
+        if (System.getProperty("whiteboard.join.policy") == null) {
+            System.setProperty("whiteboard.join.policy", "accept");
+        }
+        BoardManager boards = new BoardManager(new ServerExecutors(), null);
+        transport.bind(port, "WhiteboardBoards", boards);
+        boards.start();
+        System.out.println(READY);
+        while (System.in.read() != -1) {
+            // Nothing is sent, only the end of the stream matters
+        }
+        boards.shutdown();
+        transport.close();
+        System.exit(0);
+    }
+}
@@ -0,0 +1,68 @@
+import java.awt.geom.Rectangle2D;
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+
+// The server's File > Save and File > Open paths on a board of a given size
+public class PersistenceBenchFixture extends BenchFixture {
+    private static final Rectangle2D VIEWPORT = new Rectangle2D.Double(0, 0, 200, 100);
+
+    private WhiteboardServer server;
+    private boolean legacy;
+    private File file;
+
+    // format is "legacy" or "indexed"
+    @Override
+    public void setUp(Map<String, String> params) throws Exception {
+        this.file = new File(params.get("file"));
+        this.legacy = "legacy".equals(params.get("format"));
+        List<ColoredShape> board = BenchBoards.randomBoard(Integer.parseInt(params.get("shapes")), 42);
+        if (legacy) {
+            BoardFile.writeLegacy(file, board);
+        } else {
+            BoardFile.write(file, board);
+        }
+        // Measure the board on its own, without the journal or a board left over from another run
+        System.setProperty("whiteboard.journal.dir", "");
+        server = new WhiteboardServer("localhost", 0, "bench");
+        server.openBoard(file);
+        define("save", argument -> save());
+        define("open", argument -> {
+            server.openBoard(file);
+            return null;
+        });
+        define("openViewport", argument -> openViewport());
+    }
+
+    private Object save() throws Exception {
+        if (legacy) {
+            server.exportLegacyBoard(file);
+        } else {
+            server.saveBoard(file);
+        }
+        return null;
+    }
+
+    // Returns the number of shapes loaded
+    private int openViewport() throws Exception {
+        if (legacy) {
+            // The legacy format has to be read in full to find anything
+            int found = 0;
+            for (ColoredShape shape : BoardFile.readLegacy(file)) {
+                if (shape.getShape().intersects(VIEWPORT)) {
+                    found++;
+                }
+            }
+            return found;
+        }
+        try (BoardFile board = BoardFile.open(file)) {
+            return board.query(VIEWPORT).size();
+        }
+    }
+
+    @Override
+    public void tearDown() {
+        server.shutdown();
+        file.delete();
+    }
+}
@@ -0,0 +1,69 @@
+import java.awt.Color;
+import java.awt.Shape;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Encodes and decodes ColoredShape with default Java serialization of the AWT fields and with ShapeCodec
+public class SerializationBenchFixture extends BenchFixture {
+
+    // Same fields as ColoredShape before it had a compact serialized form
+    static class LegacyColoredShape implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private Shape shape;
+        private Color color;
+        private String text;
+
+        LegacyColoredShape(ColoredShape coloredShape) {
+            this.shape = coloredShape.getShape();
+            this.color = coloredShape.getColor();
+            this.text = coloredShape.getText();
+        }
+    }
+
+    private List<ColoredShape> shapes;
+    private ArrayList<LegacyColoredShape> legacyShapes;
+
+    @Override
+    public void setUp(Map<String, String> params) throws Exception {
+        int count = Integer.parseInt(params.get("shapes"));
+        shapes = BenchBoards.randomBoard(count, 42);
+        legacyShapes = new ArrayList<>(count);
+        for (ColoredShape shape : shapes) {
+            legacyShapes.add(new LegacyColoredShape(shape));
+        }
+        define("encodeShapeLegacy", index -> serialize(legacyShapes.get((int) (index % legacyShapes.size()))));
+        define("encodeShapeCodec", index -> serialize(shapes.get((int) (index % shapes.size()))));
+        define("encodeBoardLegacy", index -> serialize(legacyShapes));
+        define("encodeBoardCodec", index -> serialize(new BoardSnapshot(shapes.size(), shapes)));
+        // Each decodes the same stream every time
+        byte[] legacyShape = serialize(legacyShapes.get(0));
+        byte[] codecShape = serialize(shapes.get(0));
+        byte[] legacyBoard = serialize(legacyShapes);
+        byte[] codecBoard = serialize(new BoardSnapshot(shapes.size(), shapes));
+        define("decodeShapeLegacy", index -> decode(legacyShape));
+        define("decodeShapeCodec", index -> decode(codecShape));
+        define("decodeBoardLegacy", index -> decode(legacyBoard));
+        define("decodeBoardCodec", index -> decode(codecBoard));
+    }
+
+    private static Object decode(byte[] bytes) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readObject();
+        }
+    }
+
+    private static byte[] serialize(Object object) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(object);
+        }
+        return bytes.toByteArray();
+    }
+}
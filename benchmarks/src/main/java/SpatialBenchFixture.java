@@ -0,0 +1,75 @@
+import java.awt.geom.Rectangle2D;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+// Region queries over a board: the spatial index against scanning every shape
+public class SpatialBenchFixture extends BenchFixture {
+    // Keeps the density of the default 850x400 board at about 300 shapes per screen
+    private static final int PIXELS_PER_SHAPE = 1100;
+    private static final int QUERIES = 1024;
+
+    private List<ColoredShape> board;
+    private SpatialIndex index;
+    private Rectangle2D[] queries;
+
+    // area is "point", "tile" or "screen"
+    @Override
+    public void setUp(Map<String, String> params) {
+        int shapes = Integer.parseInt(params.get("shapes"));
+        String area = params.get("area");
+        int side = (int) Math.sqrt((double) shapes * PIXELS_PER_SHAPE);
+        board = BenchBoards.randomBoard(shapes, 42, side, side);
+        index = new SpatialIndex(WhiteboardConfig.indexCellSize());
+        for (int i = 0; i < board.size(); i++) {
+            index.add(i, SpatialIndex.boundsOf(board.get(i).getShape()));
+        }
+
+        double width, height;
+        switch (area) {
+            case "point":
+                width = 6;
+                height = 6;
+                break;
+            case "tile":
+                width = 256;
+                height = 256;
+                break;
+            default:
+                width = 850;
+                height = 400;
+                break;
+        }
+        Random random = new Random(7);
+        queries = new Rectangle2D[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            queries[i] = new Rectangle2D.Double(random.nextInt(side), random.nextInt(side), width, height);
+        }
+        define("indexQuery", this::indexQuery);
+        define("linearScan", this::linearScan);
+        define("indexRemoveAndAdd", this::indexRemoveAndAdd);
+    }
+
+    private Object indexQuery(long next) {
+        return index.query(queries[(int) (next & (QUERIES - 1))]).length;
+    }
+
+    private Object linearScan(long next) {
+        Rectangle2D query = queries[(int) (next & (QUERIES - 1))];
+        int found = 0;
+        for (ColoredShape shape : board) {
+            if (SpatialIndex.boundsOf(shape.getShape()).intersects(query)) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    private Object indexRemoveAndAdd(long next) {
+        // Take a shape out and put it back so the index keeps its size
+        int id = (int) (next % board.size());
+        index.remove(id);
+        index.add(id, SpatialIndex.boundsOf(board.get(id).getShape()));
+        return id;
+    }
+}
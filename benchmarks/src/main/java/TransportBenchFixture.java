@@ -0,0 +1,136 @@
+import java.awt.Color;
+import java.net.ServerSocket;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// A WhiteboardServer reached over a real transport on loopback, with clients called back the same way
+public class TransportBenchFixture extends BenchFixture {
+    // Clear the board now and then so a long run does not fill the heap; sequence numbers keep counting
+    private static final int CLEAR_EVERY = 100_000;
+
+    private WhiteboardServer server;
+    // The server and the clients each get their own transport, so every call crosses the socket
+    private Transport serverTransport;
+    private Transport clientTransport;
+    private WhiteboardServerInterface remoteServer;
+    private final List<Probe> clients = new ArrayList<>();
+    private long sequence = 0;
+
+    @Override
+    public void setUp(Map<String, String> params) throws Exception {
+        String transport = params.get("transport");
+        int clientCount = Integer.parseInt(params.get("clients"));
+        System.setProperty("whiteboard.journal.dir", "");
+        int port;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        server = new WhiteboardServer("localhost", port, "bench");
+        serverTransport = Transport.named(transport);
+        serverTransport.bind(port, "WhiteboardServer", server);
+        clientTransport = "rmi".equals(transport) ? serverTransport : Transport.named(transport);
+        remoteServer = (WhiteboardServerInterface) clientTransport.lookup("localhost", port, "WhiteboardServer");
+        for (int i = 0; i < clientCount; i++) {
+            Probe client = new Probe();
+            clients.add(client);
+            remoteServer.addClient(client, "client" + i);
+        }
+        define("draw", this::draw);
+        define("awaitDelivery", this::awaitDelivery);
+    }
+
+    // Draws one line through the transport and returns the sequence number it will get
+    private Object draw(long shapeIndex) throws Exception {
+        if (sequence > 0 && sequence % CLEAR_EVERY == 0) {
+            remoteServer.clear();
+        }
+        int x = (int) (shapeIndex % 850);
+        int y = (int) (shapeIndex % 400);
+        remoteServer.broadcastDrawLine(x, y, x + 10, y + 10, 0xFF000000);
+        return ++sequence;
+    }
+
+    // Waits until every client has been called back with the shape with this sequence number
+    private Object awaitDelivery(long target) throws InterruptedException {
+        for (Probe client : clients) {
+            while (client.lastSequence < target) {
+                Thread.onSpinWait();
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void tearDown() {
+        server.shutdown();
+        for (Probe client : clients) {
+            try {
+                UnicastRemoteObject.unexportObject(client, true);
+            } catch (java.rmi.NoSuchObjectException e) {
+                // Already unexported
+            }
+        }
+        clientTransport.close();
+        serverTransport.close();
+    }
+
+    // Exported, so RMI calls it back over a socket like a real client
+    private static class Probe extends UnicastRemoteObject implements WhiteboardClientInterface {
+        volatile long lastSequence = 0;
+
+        Probe() throws RemoteException {
+        }
+
+        @Override
+        public void draw(ColoredShape shape) {
+            lastSequence = shape.getSequence();
+        }
+
+        @Override
+        public void resync() {
+        }
+
+        @Override
+        public void erase(long[] sequences) {
+        }
+
+        @Override
+        public void previewStroke(long strokeId, int[] points, int color) {
+        }
+
+        @Override
+        public void previewText(long textId, String text, int x, int y, int color) {
+        }
+
+        @Override
+        public void receiveMessage(String message) {
+        }
+
+        @Override
+        public void clear() {
+        }
+
+        @Override
+        public void closeApplication() {
+        }
+
+        @Override
+        public void setCurrentColor(Color color) {
+        }
+
+        @Override
+        public boolean ping() {
+            return true;
+        }
+
+        @Override
+        public void receiveChatMessage(ChatMessage message) {
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Throughput of WhiteboardServer.broadcastDraw* with N in-process clients, called on the board itself or
+// through a joined client's ClientSession
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BroadcastBenchmark {
+
+    @Param({"1", "8", "32"})
+    public int clients;
+
+    @Param({"board", "session"})
+    public String path;
+
+    private Fixture fixture;
+    private Fixture.Operation broadcast;
+    private Fixture.Operation awaitDelivery;
+    private int shapeIndex;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        fixture = Fixture.create("BroadcastBenchFixture");
+        fixture.setUp(Map.of("clients", String.valueOf(clients), "path", path));
+        broadcast = fixture.operation("broadcast");
+        awaitDelivery = fixture.operation("awaitDelivery");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        fixture.tearDown();
+    }
+
+    // Time for the drawing call to return, i.e. to append the shape and queue it for every client
+    @Benchmark
+    public Object broadcast() throws Exception {
+        return broadcast.run(shapeIndex++);
+    }
+
+    // Time until every client has received the shape
+    @Benchmark
+    public Object broadcastAndDeliver() throws Exception {
+        Object sequence = broadcast.run(shapeIndex++);
+        awaitDelivery.run((Long) sequence);
+        return sequence;
+    }
+}
@@ -0,0 +1,29 @@
+package benchmarks;
+
+import java.util.Map;
+
+// The whiteboard classes live in the default package, which a JMH benchmark (it must have a package)
+// cannot import. So every benchmark drives a default-package fixture through this one interface: the
+// fixture is created by name, set up from the benchmark's parameters, and hands out its operations by
+// name. A benchmark looks its operations up in @Setup, so a measured call is a single interface call.
+public interface Fixture {
+    void setUp(Map<String, String> params) throws Exception;
+
+    // Throws IllegalArgumentException if the fixture has no such operation
+    Operation operation(String name);
+
+    void tearDown() throws Exception;
+
+    interface Operation {
+        // The argument is a counter for operations that vary their input; the result goes to the blackhole
+        Object run(long argument) throws Exception;
+    }
+
+    static Fixture create(String className) {
+        try {
+            return (Fixture) Class.forName(className).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            throw new IllegalStateException("Cannot create benchmark fixture " + className, e);
+        }
+    }
+}
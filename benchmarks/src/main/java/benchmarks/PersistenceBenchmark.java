@@ -0,0 +1,71 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// File > Save and File > Open of the server at different board sizes, in the legacy serialized format
+// and the memory-mapped indexed format
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class PersistenceBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int shapes;
+
+    @Param({"legacy", "indexed"})
+    public String format;
+
+    private Fixture fixture;
+    private Fixture.Operation save;
+    private Fixture.Operation open;
+    private Fixture.Operation openViewport;
+
+    @Setup
+    public void setUp() throws Exception {
+        File file = File.createTempFile("whiteboard-bench", ".board");
+        fixture = Fixture.create("PersistenceBenchFixture");
+        fixture.setUp(Map.of("shapes", String.valueOf(shapes), "format", format, "file", file.getPath()));
+        save = fixture.operation("save");
+        open = fixture.operation("open");
+        openViewport = fixture.operation("openViewport");
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        fixture.tearDown();
+    }
+
+    @Benchmark
+    public Object save() throws Exception {
+        return save.run(0);
+    }
+
+    @Benchmark
+    public Object open() throws Exception {
+        return open.run(0);
+    }
+
+    // Only the shapes in one screen-sized viewport of the file
+    @Benchmark
+    public Object openViewport() throws Exception {
+        return openViewport.run(0);
+    }
+}
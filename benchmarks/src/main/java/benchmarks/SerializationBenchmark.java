@@ -0,0 +1,94 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Cost of serializing ColoredShape: default Java serialization of the AWT fields against ShapeCodec.
+// The shape benchmarks are one shape per stream, as in a draw() call; the board ones are a whole snapshot.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+
+    @Param({"1000", "100000"})
+    public int shapes;
+
+    private Fixture.Operation encodeShapeLegacy;
+    private Fixture.Operation encodeShapeCodec;
+    private Fixture.Operation decodeShapeLegacy;
+    private Fixture.Operation decodeShapeCodec;
+    private Fixture.Operation encodeBoardLegacy;
+    private Fixture.Operation encodeBoardCodec;
+    private Fixture.Operation decodeBoardLegacy;
+    private Fixture.Operation decodeBoardCodec;
+    private long index;
+
+    @Setup
+    public void setUp() throws Exception {
+        Fixture fixture = Fixture.create("SerializationBenchFixture");
+        fixture.setUp(Map.of("shapes", String.valueOf(shapes)));
+        encodeShapeLegacy = fixture.operation("encodeShapeLegacy");
+        encodeShapeCodec = fixture.operation("encodeShapeCodec");
+        decodeShapeLegacy = fixture.operation("decodeShapeLegacy");
+        decodeShapeCodec = fixture.operation("decodeShapeCodec");
+        encodeBoardLegacy = fixture.operation("encodeBoardLegacy");
+        encodeBoardCodec = fixture.operation("encodeBoardCodec");
+        decodeBoardLegacy = fixture.operation("decodeBoardLegacy");
+        decodeBoardCodec = fixture.operation("decodeBoardCodec");
+    }
+
+    @Benchmark
+    public Object encodeShapeLegacy() throws Exception {
+        return encodeShapeLegacy.run(index++);
+    }
+
+    @Benchmark
+    public Object encodeShapeCodec() throws Exception {
+        return encodeShapeCodec.run(index++);
+    }
+
+    @Benchmark
+    public Object decodeShapeLegacy() throws Exception {
+        return decodeShapeLegacy.run(index++);
+    }
+
+    @Benchmark
+    public Object decodeShapeCodec() throws Exception {
+        return decodeShapeCodec.run(index++);
+    }
+
+    @Benchmark
+    public Object encodeBoardLegacy() throws Exception {
+        return encodeBoardLegacy.run(index++);
+    }
+
+    @Benchmark
+    public Object encodeBoardCodec() throws Exception {
+        return encodeBoardCodec.run(index++);
+    }
+
+    @Benchmark
+    public Object decodeBoardLegacy() throws Exception {
+        return decodeBoardLegacy.run(index++);
+    }
+
+    @Benchmark
+    public Object decodeBoardCodec() throws Exception {
+        return decodeBoardCodec.run(index++);
+    }
+}
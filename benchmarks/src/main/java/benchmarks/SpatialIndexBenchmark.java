@@ -0,0 +1,63 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Latency of a region query at different board sizes: a point (hit-testing, erasing), a 256x256 tile
+// (redrawing a damaged area) and an 850x400 screen (viewport culling), each at a random spot on the board
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class SpatialIndexBenchmark {
+
+    @Param({"100000", "1000000"})
+    public int shapes;
+
+    @Param({"point", "tile", "screen"})
+    public String area;
+
+    private Fixture.Operation indexQuery;
+    private Fixture.Operation linearScan;
+    private Fixture.Operation indexRemoveAndAdd;
+    private long next;
+
+    @Setup
+    public void setUp() throws Exception {
+        Fixture fixture = Fixture.create("SpatialBenchFixture");
+        fixture.setUp(Map.of("shapes", String.valueOf(shapes), "area", area));
+        indexQuery = fixture.operation("indexQuery");
+        linearScan = fixture.operation("linearScan");
+        indexRemoveAndAdd = fixture.operation("indexRemoveAndAdd");
+    }
+
+    @Benchmark
+    public Object indexQuery() throws Exception {
+        return indexQuery.run(next++);
+    }
+
+    @Benchmark
+    public Object linearScan() throws Exception {
+        return linearScan.run(next++);
+    }
+
+    // Upper bound on what the index adds to every append, and the cost of erasing a shape
+    @Benchmark
+    public Object indexRemoveAndAdd() throws Exception {
+        return indexRemoveAndAdd.run(next++);
+    }
+}
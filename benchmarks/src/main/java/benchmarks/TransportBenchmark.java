@@ -0,0 +1,67 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// RMI against the NIO socket transport: calls per second, and the latency distribution of a drawing
+// call and of the callbacks it causes, with the server and its clients on loopback
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransportBenchmark {
+
+    @Param({"rmi", "nio"})
+    public String transport;
+
+    @Param({"1", "8"})
+    public int clients;
+
+    private Fixture fixture;
+    private Fixture.Operation draw;
+    private Fixture.Operation awaitDelivery;
+    private int shapeIndex;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        fixture = Fixture.create("TransportBenchFixture");
+        fixture.setUp(Map.of("transport", transport, "clients", String.valueOf(clients)));
+        draw = fixture.operation("draw");
+        awaitDelivery = fixture.operation("awaitDelivery");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        fixture.tearDown();
+    }
+
+    // One remote call: the drawing call returns once the shape is queued for every client
+    @Benchmark
+    public Object draw() throws Exception {
+        return draw.run(shapeIndex++);
+    }
+
+    // The call plus every client's draw() callback
+    @Benchmark
+    public Object drawAndDeliver() throws Exception {
+        Object sequence = draw.run(shapeIndex++);
+        awaitDelivery.run((Long) sequence);
+        return sequence;
+    }
+}
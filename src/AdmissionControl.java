@@ -0,0 +1,135 @@
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// Decides which draw and chat calls of a board's clients go through. Every client session has its own
+// token buckets, so a client calling at mouse-event rate only slows itself down, and the board's total
+// draw rate is shared equally by the clients that drew in the last second or two.
+//
+// Under pressure the cheapest thing to lose goes first. A stroke or text preview needs half a burst of
+// tokens left, otherwise it is held back and merged into the next preview. A shape waits up to maxWait
+// for a token before it is rejected. Committing a stroke or text block the peers already watched being
+// drawn is never rejected, it only runs the bucket into debt.
+public class AdmissionControl {
+
+    public enum Result {
+        ADMITTED,
+        // Admitted after waiting for a token
+        DELAYED,
+        // A preview that should be merged into the next one
+        HELD,
+        REJECTED;
+    }
+
+    // The buckets of one client
+    public static class Session {
+        private final TokenBucket draw;
+        private final TokenBucket chat;
+        // Last second this client counted as drawing, guarded by the AdmissionControl
+        private long activeSecond = -1;
+
+        private Session(double drawBurst, double chatBurst) {
+            draw = new TokenBucket(drawBurst);
+            chat = new TokenBucket(chatBurst);
+        }
+    }
+
+    private final double drawRate;
+    private final double drawBurst;
+    private final double boardRate;
+    private final double chatRate;
+    private final double chatBurst;
+    private final long maxWaitNanos;
+    // Clients that drew in the current and in the previous second
+    private long second = 0;
+    private int activeNow = 0;
+    private int activeBefore = 0;
+
+    public AdmissionControl() {
+        this(WhiteboardConfig.drawRateLimit(), WhiteboardConfig.drawBurst(), WhiteboardConfig.boardDrawRateLimit(),
+                WhiteboardConfig.chatRateLimit(), WhiteboardConfig.chatBurst(), WhiteboardConfig.admissionMaxWaitMillis());
+    }
+
+    // A rate of 0 or less is no limit
+    public AdmissionControl(double drawRate, double drawBurst, double boardRate, double chatRate, double chatBurst, long maxWaitMillis) {
+        this.drawRate = drawRate;
+        this.drawBurst = drawBurst;
+        this.boardRate = boardRate;
+        this.chatRate = chatRate;
+        this.chatBurst = chatBurst;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxWaitMillis));
+    }
+
+    public Session newSession() {
+        return new Session(drawBurst, chatBurst);
+    }
+
+    // A shape, an erase or a clear
+    public Result admitShape(Session session) {
+        return admit(session.draw, drawRate(session));
+    }
+
+    // The commit of a stroke or text block whose previews were admitted
+    public Result admitCommit(Session session) {
+        double rate = drawRate(session);
+        if (rate > 0) {
+            session.draw.take(rate);
+        }
+        return Result.ADMITTED;
+    }
+
+    public Result admitPreview(Session session) {
+        double rate = drawRate(session);
+        if (rate <= 0 || session.draw.tryTake(rate, session.draw.getBurst() / 2)) {
+            return Result.ADMITTED;
+        }
+        return Result.HELD;
+    }
+
+    public Result admitChat(Session session) {
+        return admit(session.chat, chatRate);
+    }
+
+    private Result admit(TokenBucket bucket, double rate) {
+        if (rate <= 0 || bucket.tryTake(rate, 0)) {
+            return Result.ADMITTED;
+        }
+        long deadline = System.nanoTime() + maxWaitNanos;
+        while (true) {
+            long wait = bucket.nanosUntilAvailable(rate);
+            if (System.nanoTime() + wait > deadline) {
+                return Result.REJECTED;
+            }
+            LockSupport.parkNanos(wait);
+            if (Thread.interrupted()) {
+                Thread.currentThread().interrupt();
+                return Result.REJECTED;
+            }
+            if (bucket.tryTake(rate, 0)) {
+                return Result.DELAYED;
+            }
+        }
+    }
+
+    // The client's own limit, or its share of the board's, whichever is lower; 0 if neither applies
+    private double drawRate(Session session) {
+        if (boardRate <= 0) {
+            return drawRate;
+        }
+        double share = boardRate / countActive(session);
+        return drawRate > 0 ? Math.min(drawRate, share) : share;
+    }
+
+    private synchronized int countActive(Session session) {
+        long now = System.nanoTime() / TimeUnit.SECONDS.toNanos(1);
+        if (now != second) {
+            activeBefore = now == second + 1 ? activeNow : 0;
+            activeNow = 0;
+            second = now;
+        }
+        if (session.activeSecond != now) {
+            session.activeSecond = now;
+            activeNow++;
+        }
+        return Math.max(1, Math.max(activeNow, activeBefore));
+    }
+}
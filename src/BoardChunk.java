@@ -0,0 +1,26 @@
+import java.util.List;
+
+// One piece of the board, streamed to a client that is catching up. getSequence() is the last sequence
+// number on the board when the chunk was taken; the shapes are the next ones after what the client asked for.
+public class BoardChunk extends BoardSnapshot {
+    private static final long serialVersionUID = 1L;
+
+    // Sequence number before the first shape of the current board. It changes when the board is cleared
+    // or replaced, which tells the client to start over.
+    private final long baseSequence;
+
+    public BoardChunk(long baseSequence, long sequence, List<ColoredShape> shapes) {
+        super(sequence, shapes);
+        this.baseSequence = baseSequence;
+    }
+
+    public long getBaseSequence() {
+        return baseSequence;
+    }
+
+    // True if this chunk reaches the end of the board
+    public boolean isLast() {
+        List<ColoredShape> shapes = getShapes();
+        return shapes.isEmpty() || shapes.get(shapes.size() - 1).getSequence() >= getSequence();
+    }
+}
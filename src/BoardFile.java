@@ -0,0 +1,382 @@
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Shape;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.Rectangle2D;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Board file that is read through a memory map instead of being deserialized up front.
+//
+// Layout (big-endian):
+//   header   magic, version, shape count, font count, offset of the extra data, offset of the font table
+//   records  one 32-byte record per shape, so shape i is at HEADER_BYTES + i * RECORD_BYTES
+//   extra    variable-length data (text, stroke points) that records point into, then the font table
+//
+// Every record carries the shape's geometry or bounding box, so the shapes in a viewport can be found
+// and decoded without touching the others. Files written by File > Save before this format are still
+// read and written by readLegacy() and writeLegacy().
+public class BoardFile implements Closeable {
+    public static final int MAGIC = 0x57424446; // "WBDF"
+    private static final int VERSION = 1;
+    // First two bytes of any Java serialization stream, i.e. of legacy board files
+    private static final int LEGACY_MAGIC = 0xACED;
+
+    private static final int HEADER_BYTES = 32;
+    // tag, flags, font id (2), color (4), a, b, c, d (16), extra offset (4), extra length (4)
+    private static final int RECORD_BYTES = 32;
+
+    private static final int FLAG_TEXT = 1;
+
+    private final ByteBuffer records;
+    private final ByteBuffer extra;
+    private final Font[] fonts;
+    private final int count;
+
+    private BoardFile(ByteBuffer records, ByteBuffer extra, Font[] fonts, int count) {
+        this.records = records;
+        this.extra = extra;
+        this.fonts = fonts;
+        this.count = count;
+    }
+
+    // FORMAT DETECTION
+
+    public static boolean isBoardFile(File file) throws IOException {
+        return readMagic(file) == MAGIC;
+    }
+
+    public static boolean isLegacyFile(File file) throws IOException {
+        return (readMagic(file) >>> 16) == LEGACY_MAGIC;
+    }
+
+    private static int readMagic(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return in.readInt();
+        } catch (EOFException e) {
+            return 0;
+        }
+    }
+
+    // READING
+
+    // Maps the file. Nothing is decoded until a shape is asked for.
+    public static BoardFile open(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                throw new StreamCorruptedException("Not a board file: " + file);
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                throw new StreamCorruptedException("Not a board file: " + file);
+            }
+            int count = header.getInt(8);
+            int fontCount = header.getInt(12);
+            long extraOffset = header.getLong(16);
+            long fontTableOffset = header.getLong(24);
+            long extraBytes = channel.size() - extraOffset;
+            if (count < 0 || extraOffset != HEADER_BYTES + (long) count * RECORD_BYTES || extraBytes < 0) {
+                throw new StreamCorruptedException("Corrupt board file header: " + file);
+            }
+            // A single mapping is limited to 2 GB
+            if (extraOffset > Integer.MAX_VALUE || extraBytes > Integer.MAX_VALUE) {
+                throw new IOException("Board file too large to map: " + file);
+            }
+            // The mappings stay valid after the channel is closed
+            ByteBuffer records = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES, (long) count * RECORD_BYTES);
+            ByteBuffer extra = channel.map(FileChannel.MapMode.READ_ONLY, extraOffset, extraBytes);
+
+            Font[] fonts = new Font[fontCount];
+            int position = (int) fontTableOffset;
+            for (int i = 0; i < fontCount; i++) {
+                String name = readString(extra, position);
+                position += 4 + extra.getInt(position);
+                fonts[i] = new Font(name, extra.getInt(position), extra.getInt(position + 4));
+                position += 8;
+            }
+            return new BoardFile(records, extra, fonts, count);
+        }
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public ColoredShape get(int index) {
+        int record = index * RECORD_BYTES;
+        int tag = records.get(record);
+        int flags = records.get(record + 1);
+        int fontId = records.getShort(record + 2);
+        Color color = new Color(records.getInt(record + 4), true);
+        int a = records.getInt(record + 8);
+        int b = records.getInt(record + 12);
+        int c = records.getInt(record + 16);
+        int d = records.getInt(record + 20);
+        int position = records.getInt(record + 24);
+
+        String text = null;
+        if ((flags & FLAG_TEXT) != 0) {
+            text = readString(extra, position);
+            position += 4 + extra.getInt(position);
+        }
+        Shape shape;
+        switch (tag) {
+            case ShapeCodec.TAG_LINE:
+                shape = new Line2D.Double(a, b, c, d);
+                break;
+            case ShapeCodec.TAG_ELLIPSE:
+                shape = new Ellipse2D.Double(a, b, c, d);
+                break;
+            case ShapeCodec.TAG_RECTANGLE:
+                shape = new Rectangle2D.Double(a, b, c, d);
+                break;
+            case ShapeCodec.TAG_TEXT:
+                shape = new Text2D(readString(extra, position), a, b, color, fonts[fontId]);
+                break;
+            case ShapeCodec.TAG_POLYLINE: {
+                int[] points = new int[extra.getInt(position)];
+                for (int i = 0; i < points.length; i++) {
+                    points[i] = extra.getInt(position + 4 + i * 4);
+                }
+                shape = new Polyline2D(points);
+                break;
+            }
+            default:
+                throw new IllegalStateException("Unknown shape tag " + tag + " in record " + index);
+        }
+        return new ColoredShape(shape, color, text);
+    }
+
+    public List<ColoredShape> readAll() {
+        List<ColoredShape> shapes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            shapes.add(get(i));
+        }
+        return shapes;
+    }
+
+    // Decodes only the shapes whose bounds intersect the viewport, in board order
+    public List<ColoredShape> query(Rectangle2D viewport) {
+        List<ColoredShape> shapes = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int record = i * RECORD_BYTES;
+            int tag = records.get(record);
+            int a = records.getInt(record + 8);
+            int b = records.getInt(record + 12);
+            int c = records.getInt(record + 16);
+            int d = records.getInt(record + 20);
+            double x, y, width, height;
+            if (tag == ShapeCodec.TAG_LINE) {
+                x = Math.min(a, c);
+                y = Math.min(b, d);
+                width = Math.abs(c - a);
+                height = Math.abs(d - b);
+            } else if (tag == ShapeCodec.TAG_TEXT) {
+                // c and d hold the text's estimated width and the font size; y is the baseline
+                x = a;
+                y = b - d;
+                width = c;
+                height = d + d / 4;
+            } else {
+                x = a;
+                y = b;
+                width = c;
+                height = d;
+            }
+            // Inclusive so that zero-width lines and dots are found too
+            if (x <= viewport.getMaxX() && x + width >= viewport.getMinX()
+                    && y <= viewport.getMaxY() && y + height >= viewport.getMinY()) {
+                shapes.add(get(i));
+            }
+        }
+        return shapes;
+    }
+
+    private static String readString(ByteBuffer buffer, int position) {
+        byte[] bytes = new byte[buffer.getInt(position)];
+        ByteBuffer view = buffer.duplicate();
+        view.position(position + 4);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Nothing to release: the mappings are unmapped once this object is garbage collected
+    @Override
+    public void close() {
+    }
+
+    // WRITING
+
+    // Writes the shapes to a temporary file next to the target and moves it into place,
+    // so a failed save leaves the previous file as it was
+    public static void write(File file, List<ColoredShape> shapes) throws IOException {
+        File temp = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+        Map<Font, Integer> fontIds = new HashMap<>();
+        List<Font> fonts = new ArrayList<>();
+        ByteArrayOutputStream extraBytes = new ByteArrayOutputStream();
+        DataOutputStream extra = new DataOutputStream(extraBytes);
+
+        try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(RECORD_BYTES * 2048);
+            channel.position(HEADER_BYTES);
+            for (ColoredShape coloredShape : shapes) {
+                if (buffer.remaining() < RECORD_BYTES) {
+                    drain(channel, buffer);
+                }
+                writeRecord(buffer, coloredShape, extra, fontIds, fonts);
+            }
+            drain(channel, buffer);
+
+            int fontTableOffset = extra.size();
+            for (Font font : fonts) {
+                writeString(extra, font.getName());
+                extra.writeInt(font.getStyle());
+                extra.writeInt(font.getSize());
+            }
+            extra.flush();
+            channel.write(ByteBuffer.wrap(extraBytes.toByteArray()));
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.putInt(shapes.size());
+            header.putInt(fonts.size());
+            header.putLong(HEADER_BYTES + (long) shapes.size() * RECORD_BYTES);
+            header.putLong(fontTableOffset);
+            header.flip();
+            channel.write(header, 0);
+            channel.force(true);
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeRecord(ByteBuffer buffer, ColoredShape coloredShape, DataOutputStream extra,
+                                    Map<Font, Integer> fontIds, List<Font> fonts) throws IOException {
+        Shape shape = coloredShape.getShape();
+        int position = extra.size();
+        int flags = 0;
+        if (coloredShape.getText() != null) {
+            flags |= FLAG_TEXT;
+            writeString(extra, coloredShape.getText());
+        }
+        int tag, fontId = 0, a, b, c, d;
+        if (shape instanceof Line2D) {
+            Line2D line = (Line2D) shape;
+            tag = ShapeCodec.TAG_LINE;
+            a = (int) Math.round(line.getX1());
+            b = (int) Math.round(line.getY1());
+            c = (int) Math.round(line.getX2());
+            d = (int) Math.round(line.getY2());
+        } else if (shape instanceof Text2D) {
+            // Checked before Rectangle2D, which Text2D extends
+            Text2D text = (Text2D) shape;
+            tag = ShapeCodec.TAG_TEXT;
+            Integer id = fontIds.get(text.getFont());
+            if (id == null) {
+                id = fonts.size();
+                fonts.add(text.getFont());
+                fontIds.put(text.getFont(), id);
+            }
+            fontId = id;
+            a = (int) Math.round(text.getX());
+            b = (int) Math.round(text.getY());
+            // Text2D has no width, so estimate one em per character for viewport queries
+            c = text.getFont().getSize() * text.getText().length();
+            d = text.getFont().getSize();
+            writeString(extra, text.getText());
+        } else if (shape instanceof Polyline2D) {
+            int[] points = ((Polyline2D) shape).getPoints();
+            Rectangle2D bounds = shape.getBounds2D();
+            tag = ShapeCodec.TAG_POLYLINE;
+            a = (int) Math.floor(bounds.getX());
+            b = (int) Math.floor(bounds.getY());
+            c = (int) Math.ceil(bounds.getWidth());
+            d = (int) Math.ceil(bounds.getHeight());
+            extra.writeInt(points.length);
+            for (int point : points) {
+                extra.writeInt(point);
+            }
+        } else if (shape instanceof Ellipse2D || shape instanceof Rectangle2D) {
+            Rectangle2D bounds = shape instanceof Ellipse2D ? ((Ellipse2D) shape).getFrame() : (Rectangle2D) shape;
+            tag = shape instanceof Ellipse2D ? ShapeCodec.TAG_ELLIPSE : ShapeCodec.TAG_RECTANGLE;
+            a = (int) Math.round(bounds.getX());
+            b = (int) Math.round(bounds.getY());
+            c = (int) Math.round(bounds.getWidth());
+            d = (int) Math.round(bounds.getHeight());
+        } else {
+            throw new IOException("Cannot save shape of type " + shape.getClass().getName());
+        }
+        buffer.put((byte) tag);
+        buffer.put((byte) flags);
+        buffer.putShort((short) fontId);
+        buffer.putInt(coloredShape.getColor().getRGB());
+        buffer.putInt(a);
+        buffer.putInt(b);
+        buffer.putInt(c);
+        buffer.putInt(d);
+        buffer.putInt(position);
+        buffer.putInt(extra.size() - position);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // LEGACY FORMAT: one serialized ColoredShape after another
+
+    public static List<ColoredShape> readLegacy(File file) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            List<ColoredShape> loaded = new ArrayList<>();
+            while (true) {
+                try {
+                    loaded.add((ColoredShape) ois.readObject());
+                } catch (EOFException ex) {
+                    // We've reached the end of the file
+                    return loaded;
+                }
+            }
+        }
+    }
+
+    public static void writeLegacy(File file, List<ColoredShape> shapes) throws IOException {
+        try (ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            for (ColoredShape shape : shapes) {
+                oos.writeObject(shape);
+            }
+        }
+    }
+}
@@ -0,0 +1,638 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+// Write-ahead journal of the board, so a crash loses at most the shapes whose calls had not returned yet.
+//
+// Appends, erases, clears and replaces are queued in board order and written by one thread to the current segment
+// file. That thread fsyncs once for everything that queued up while the previous fsync ran (group commit),
+// so concurrent callers share one fsync instead of paying for one each.
+//
+// Once checkpointEvery shapes have been journaled, the whole board is written to a checkpoint and the
+// journal moves on to a new segment; the segments before the checkpoint are then deleted. Recovery loads
+// the checkpoint and replays the segments after it. A record cut short by a crash ends its segment; a
+// damaged record whose length is intact is skipped and the records after it are still replayed.
+// Checkpoints only hold the live shapes, so shapes erased and compacted away stop taking up disk space.
+//
+// A record that cannot be encoded is left out and a checkpoint is taken soon, which brings the journal
+// level with the board again. If writing or fsyncing the segment fails the journal is failed for good:
+// nothing more is written, awaitDurable() returns false and the flush listener is told.
+//
+// Shapes keep the sequence numbers they were journaled with, which erase records refer to.
+public class BoardJournal {
+
+    // Told how long each group commit and each checkpoint took, and about records it could not keep
+    public interface FlushListener {
+        void flushed(long nanos);
+
+        void checkpointed(long nanos);
+
+        // A record could not be encoded and was left out, or a damaged one was skipped on recovery
+        void skipped();
+
+        // The journal stopped writing
+        void failed(Exception cause);
+    }
+
+    private static final int SEGMENT_MAGIC = 0x57424A4C; // "WBJL"
+    private static final int CHECKPOINT_MAGIC = 0x57424350; // "WBCP"
+    // Version 2 added erase records and the last sequence number in checkpoints; version 1 is still read
+    private static final int FORMAT_VERSION = 2;
+    private static final String CHECKPOINT_FILE = "board.checkpoint";
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    // Larger than any real record, a replace of a board that large is left to the next checkpoint; a
+    // longer length read back is torn
+    private static final int MAX_RECORD_BYTES = 64 << 20;
+
+    private static final int OP_APPEND = 1;
+    private static final int OP_CLEAR = 2;
+    private static final int OP_REPLACE = 3;
+    // Not written; tells the writer to start a new segment for a checkpoint
+    private static final int OP_ROTATE = 4;
+    private static final int OP_STOP = 5;
+    private static final int OP_ERASE = 6;
+
+    private final File directory;
+    private final int checkpointEvery;
+    private final BlockingQueue<Entry> queue = new LinkedBlockingQueue<>();
+    private final ExecutorService checkpointExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "whiteboard-checkpoint");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Tickets are handed out in queue order, guarded by this
+    private long lastTicket = 0;
+    private final Object durableLock = new Object();
+    // Every entry up to this ticket is on disk, guarded by durableLock
+    private long durableTicket = 0;
+    private boolean stopped = false;
+    // Why the journal stopped writing, null while it works; guarded by durableLock
+    private Exception failure;
+
+    private ShapeLog board;
+    private Thread writer;
+    // Only used by the writer thread once started
+    private long segmentId = 1;
+    private FileOutputStream segmentFile;
+    private DataOutputStream segment;
+    private long shapesSinceCheckpoint = 0;
+    // Set by recover() when it had to number the shapes again, so start() checkpoints them before any
+    // record refers to the new numbers
+    private boolean renumbered = false;
+    private volatile boolean checkpointPending = false;
+    private volatile FlushListener flushListener;
+
+    public BoardJournal(File directory, int checkpointEvery) {
+        this.directory = directory;
+        this.checkpointEvery = Math.max(1, checkpointEvery);
+    }
+
+    // RECOVERY
+
+    // Rebuilds the board from the checkpoint and the segments written after it: the live shapes with the
+    // sequence numbers they had, and the last sequence number handed out. Call before start().
+    public BoardSnapshot recover() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create journal directory " + directory);
+        }
+        Replay replay = new Replay();
+        long firstSegment = 1;
+        File checkpoint = new File(directory, CHECKPOINT_FILE);
+        if (checkpoint.exists()) {
+            firstSegment = readCheckpoint(checkpoint, replay);
+        }
+        long lastSegment = firstSegment - 1;
+        for (long id : segmentIds()) {
+            if (id >= firstSegment) {
+                replaySegment(segmentFile(id), replay);
+            }
+            lastSegment = Math.max(lastSegment, id);
+        }
+        // Never append to a recovered segment, its tail may be torn
+        segmentId = lastSegment + 1;
+
+        List<ColoredShape> shapes = replay.liveShapes();
+        long previous = 0;
+        for (ColoredShape shape : shapes) {
+            if (shape.getSequence() <= previous) {
+                // Written before shapes kept their numbers across restarts
+                for (int i = 0; i < shapes.size(); i++) {
+                    shapes.get(i).setSequence(i + 1);
+                }
+                renumbered = true;
+                return new BoardSnapshot(shapes.size(), shapes);
+            }
+            previous = shape.getSequence();
+        }
+        return new BoardSnapshot(replay.lastSequence, shapes);
+    }
+
+    private long readCheckpoint(File file, Replay replay) throws IOException {
+        try (CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(new FileInputStream(file)), new CRC32())) {
+            DataInputStream in = new DataInputStream(checked);
+            int version;
+            if (in.readInt() != CHECKPOINT_MAGIC || (version = in.readUnsignedByte()) < 1 || version > FORMAT_VERSION) {
+                throw new StreamCorruptedException("Not a board checkpoint: " + file);
+            }
+            long nextSegment = in.readLong();
+            if (version >= 2) {
+                replay.lastSequence = in.readLong();
+            }
+            int count = in.readInt();
+            ShapeCodec codec = new ShapeCodec();
+            for (int i = 0; i < count; i++) {
+                replay.add(codec.read(in));
+            }
+            long expected = checked.getChecksum().getValue();
+            if (in.readLong() != expected) {
+                throw new StreamCorruptedException("Checksum mismatch in " + file);
+            }
+            return nextSegment;
+        }
+    }
+
+    private void replaySegment(File file, Replay replay) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            try {
+                int version;
+                if (in.readInt() != SEGMENT_MAGIC || (version = in.readUnsignedByte()) < 1 || version > FORMAT_VERSION) {
+                    throw new StreamCorruptedException("Not a board journal: " + file);
+                }
+            } catch (EOFException e) {
+                // Created but never written to
+                return;
+            }
+            CRC32 crc = new CRC32();
+            while (true) {
+                byte[] payload;
+                int checksum;
+                try {
+                    int length = in.readInt();
+                    checksum = in.readInt();
+                    if (length <= 0 || length > MAX_RECORD_BYTES) {
+                        // Nothing to find the next record by
+                        break;
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                } catch (EOFException e) {
+                    break;
+                }
+                crc.reset();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    skippedRecord(file);
+                    continue;
+                }
+                try {
+                    apply(payload, replay);
+                } catch (IOException | RuntimeException e) {
+                    // Written by a version that wrote something it cannot read back
+                    e.printStackTrace();
+                    skippedRecord(file);
+                }
+            }
+        }
+    }
+
+    private void skippedRecord(File file) {
+        System.out.println("Skipped a damaged record in journal segment " + file);
+        FlushListener listener = flushListener;
+        if (listener != null) {
+            listener.skipped();
+        }
+    }
+
+    private void apply(byte[] payload, Replay replay) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        ShapeCodec codec = new ShapeCodec();
+        int op = in.readUnsignedByte();
+        switch (op) {
+            case OP_APPEND:
+                replay.add(codec.read(in));
+                shapesSinceCheckpoint++;
+                break;
+            case OP_CLEAR:
+                replay.clear();
+                break;
+            case OP_REPLACE: {
+                int count = ShapeCodec.readVarInt(in);
+                replay.clear();
+                for (int i = 0; i < count; i++) {
+                    replay.add(codec.read(in));
+                }
+                shapesSinceCheckpoint += count;
+                break;
+            }
+            case OP_ERASE: {
+                int count = ShapeCodec.readVarInt(in);
+                for (int i = 0; i < count; i++) {
+                    replay.erased.add(ShapeCodec.readVarLong(in));
+                }
+                shapesSinceCheckpoint += count;
+                break;
+            }
+            default:
+                throw new StreamCorruptedException("Unknown journal record " + op);
+        }
+    }
+
+    // WRITING
+
+    public void setFlushListener(FlushListener flushListener) {
+        this.flushListener = flushListener;
+    }
+
+    // Opens a new segment and starts the writer. board is snapshotted for checkpoints.
+    public void start(ShapeLog board) throws IOException {
+        this.board = board;
+        if (renumbered) {
+            writeCheckpoint(board.snapshot(), segmentId);
+            deleteSegmentsBefore(segmentId);
+            renumbered = false;
+        }
+        openSegment();
+        writer = new Thread(this::runWriter, "whiteboard-journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // Each of these queues a record and returns its ticket for awaitDurable(). Call them in board order,
+    // e.g. from the ShapeLog publish callback, so the journal replays in the same order.
+    public long append(ColoredShape shape) {
+        return enqueue(new Entry(OP_APPEND, shape, null, null, null));
+    }
+
+    public long erase(long[] sequences) {
+        return enqueue(new Entry(OP_ERASE, null, null, sequences.clone(), null));
+    }
+
+    public long clear() {
+        return enqueue(new Entry(OP_CLEAR, null, null, null, null));
+    }
+
+    public long replace(List<ColoredShape> shapes) {
+        return enqueue(new Entry(OP_REPLACE, null, new ArrayList<>(shapes), null, null));
+    }
+
+    private synchronized long enqueue(Entry entry) {
+        entry.ticket = ++lastTicket;
+        queue.add(entry);
+        return entry.ticket;
+    }
+
+    // Blocks until the record with this ticket has been fsynced, and returns false if it never will be
+    // because the journal failed or was closed
+    public boolean awaitDurable(long ticket) {
+        synchronized (durableLock) {
+            while (durableTicket < ticket && !stopped && failure == null) {
+                try {
+                    durableLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return durableTicket >= ticket;
+        }
+    }
+
+    // Why the journal stopped writing, null while it works
+    public Exception getFailure() {
+        synchronized (durableLock) {
+            return failure;
+        }
+    }
+
+    // Writes out everything queued so far, stops the writer and checkpoints the whole board, so the
+    // next recover() reads one file instead of replaying segments
+    public void close() {
+        if (writer == null) {
+            return;
+        }
+        long ticket = enqueue(new Entry(OP_STOP, null, null, null, null));
+        awaitDurable(ticket);
+        checkpointExecutor.shutdown();
+        try {
+            writer.join();
+            checkpointExecutor.awaitTermination(1, TimeUnit.MINUTES);
+            long nextSegment = segmentId + 1;
+            writeCheckpoint(board.snapshot(), nextSegment);
+            deleteSegmentsBefore(nextSegment);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // The segments are still there to recover from
+            e.printStackTrace();
+        }
+    }
+
+    // Whatever happens in here, callers waiting in awaitDurable() are let go when the writer ends
+    private void runWriter() {
+        try {
+            writeUntilStopped();
+        } catch (RuntimeException | Error e) {
+            fail(e instanceof Exception ? (Exception) e : new IllegalStateException(e));
+            throw e;
+        } finally {
+            synchronized (durableLock) {
+                stopped = true;
+                durableLock.notifyAll();
+            }
+            try {
+                segment.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void writeUntilStopped() {
+        List<Entry> batch = new ArrayList<>();
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        CRC32 crc = new CRC32();
+        boolean stop = false;
+        while (!stop) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch);
+            long started = System.nanoTime();
+            // Each entry on its own, so one bad record neither loses the rest of the batch nor a stop
+            for (Entry entry : batch) {
+                if (entry.op == OP_STOP) {
+                    stop = true;
+                } else if (getFailure() == null) {
+                    try {
+                        if (entry.op == OP_ROTATE) {
+                            rotate(entry.snapshot);
+                        } else if (encodeRecord(entry, payload)) {
+                            writeRecord(payload, crc);
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        fail(e);
+                    }
+                }
+            }
+            boolean written = getFailure() == null;
+            if (written) {
+                try {
+                    segment.flush();
+                    segmentFile.getChannel().force(false);
+                } catch (IOException e) {
+                    fail(e);
+                    written = false;
+                }
+            }
+            FlushListener listener = flushListener;
+            if (written && listener != null) {
+                listener.flushed(System.nanoTime() - started);
+            }
+            long ticket = batch.get(batch.size() - 1).ticket;
+            batch.clear();
+            synchronized (durableLock) {
+                if (written) {
+                    durableTicket = ticket;
+                }
+                durableLock.notifyAll();
+            }
+            if (written && !stop && !checkpointPending && shapesSinceCheckpoint >= checkpointEvery) {
+                checkpointPending = true;
+                // Snapshot under the board's write lock so the rotate lands exactly between two records
+                checkpointExecutor.execute(() -> board.withSnapshot(
+                        snapshot -> enqueue(new Entry(OP_ROTATE, null, null, null, snapshot))));
+            }
+        }
+    }
+
+    private void fail(Exception cause) {
+        synchronized (durableLock) {
+            if (failure != null) {
+                return;
+            }
+            failure = cause;
+            durableLock.notifyAll();
+        }
+        System.out.println("Board journal failed, changes are no longer durable: " + cause);
+        cause.printStackTrace();
+        FlushListener listener = flushListener;
+        if (listener != null) {
+            listener.failed(cause);
+        }
+    }
+
+    // Encodes the record into payload, or returns false if it cannot be. The record is then left out
+    // and the next checkpoint, taken soon, covers what it changed.
+    private boolean encodeRecord(Entry entry, ByteArrayOutputStream payload) {
+        payload.reset();
+        DataOutputStream out = new DataOutputStream(payload);
+        ShapeCodec codec = new ShapeCodec();
+        int shapes = 0;
+        try {
+            out.writeByte(entry.op);
+            if (entry.op == OP_APPEND) {
+                codec.write(out, entry.shape);
+                shapes = 1;
+            } else if (entry.op == OP_REPLACE) {
+                ShapeCodec.writeVarInt(out, entry.shapes.size());
+                for (ColoredShape shape : entry.shapes) {
+                    codec.write(out, shape);
+                }
+                shapes = entry.shapes.size();
+            } else if (entry.op == OP_ERASE) {
+                ShapeCodec.writeVarInt(out, entry.sequences.length);
+                for (long sequence : entry.sequences) {
+                    ShapeCodec.writeVarLong(out, sequence);
+                }
+                shapes = entry.sequences.length;
+            }
+            out.flush();
+            if (payload.size() > MAX_RECORD_BYTES) {
+                throw new IOException("Journal record of " + payload.size() + " bytes");
+            }
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            shapesSinceCheckpoint = checkpointEvery;
+            FlushListener listener = flushListener;
+            if (listener != null) {
+                listener.skipped();
+            }
+            return false;
+        }
+        shapesSinceCheckpoint += shapes;
+        return true;
+    }
+
+    private void writeRecord(ByteArrayOutputStream payload, CRC32 crc) throws IOException {
+        crc.reset();
+        crc.update(payload.toByteArray());
+        segment.writeInt(payload.size());
+        segment.writeInt((int) crc.getValue());
+        payload.writeTo(segment);
+    }
+
+    private void openSegment() throws IOException {
+        segmentFile = new FileOutputStream(segmentFile(segmentId));
+        segment = new DataOutputStream(new BufferedOutputStream(segmentFile, 1 << 16));
+        segment.writeInt(SEGMENT_MAGIC);
+        segment.writeByte(FORMAT_VERSION);
+    }
+
+    // Everything before this point is in the snapshot, so later records go to a new segment
+    private void rotate(BoardSnapshot snapshot) throws IOException {
+        segment.flush();
+        segmentFile.getChannel().force(false);
+        segment.close();
+        segmentId++;
+        openSegment();
+        shapesSinceCheckpoint = 0;
+        long nextSegment = segmentId;
+        checkpointExecutor.execute(() -> {
+            try {
+                writeCheckpoint(snapshot, nextSegment);
+                deleteSegmentsBefore(nextSegment);
+            } catch (IOException e) {
+                e.printStackTrace();
+            } finally {
+                checkpointPending = false;
+            }
+        });
+    }
+
+    private void writeCheckpoint(BoardSnapshot snapshot, long nextSegment) throws IOException {
+        List<ColoredShape> shapes = snapshot.getShapes();
+        long started = System.nanoTime();
+        File temp = new File(directory, CHECKPOINT_FILE + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(temp)) {
+            CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(file, 1 << 16), new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(CHECKPOINT_MAGIC);
+            out.writeByte(FORMAT_VERSION);
+            out.writeLong(nextSegment);
+            out.writeLong(snapshot.getSequence());
+            out.writeInt(shapes.size());
+            ShapeCodec codec = new ShapeCodec();
+            for (ColoredShape shape : shapes) {
+                codec.write(out, shape);
+            }
+            out.writeLong(checked.getChecksum().getValue());
+            out.flush();
+            file.getChannel().force(true);
+        }
+        // The old checkpoint stays valid until the new one is complete
+        Files.move(temp.toPath(), new File(directory, CHECKPOINT_FILE).toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        FlushListener listener = flushListener;
+        if (listener != null) {
+            listener.checkpointed(System.nanoTime() - started);
+        }
+    }
+
+    private void deleteSegmentsBefore(long id) {
+        for (long existing : segmentIds()) {
+            if (existing < id && !segmentFile(existing).delete()) {
+                System.out.println("Could not delete old journal segment " + segmentFile(existing));
+            }
+        }
+    }
+
+    private File segmentFile(long id) {
+        return new File(directory, String.format("%s%010d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+    }
+
+    private long[] segmentIds() {
+        String[] names = directory.list((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (names == null) {
+            return new long[0];
+        }
+        List<Long> ids = new ArrayList<>();
+        for (String name : names) {
+            try {
+                ids.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+            } catch (NumberFormatException e) {
+                // Not one of ours
+            }
+        }
+        long[] sorted = new long[ids.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = ids.get(i);
+        }
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private static class Entry {
+        final int op;
+        final ColoredShape shape;
+        final List<ColoredShape> shapes;
+        final long[] sequences;
+        final BoardSnapshot snapshot;
+        long ticket;
+
+        Entry(int op, ColoredShape shape, List<ColoredShape> shapes, long[] sequences, BoardSnapshot snapshot) {
+            this.op = op;
+            this.shape = shape;
+            this.shapes = shapes;
+            this.sequences = sequences;
+            this.snapshot = snapshot;
+        }
+    }
+
+    // The board as recovery rebuilds it. Erased shapes are only left out at the end, erase records being
+    // far rarer than appends.
+    private static class Replay {
+        List<ColoredShape> shapes = new ArrayList<>();
+        final Set<Long> erased = new HashSet<>();
+        long lastSequence = 0;
+
+        void add(ColoredShape shape) {
+            shapes.add(shape);
+            lastSequence = Math.max(lastSequence, shape.getSequence());
+        }
+
+        void clear() {
+            shapes = new ArrayList<>();
+            erased.clear();
+        }
+
+        List<ColoredShape> liveShapes() {
+            if (erased.isEmpty()) {
+                return shapes;
+            }
+            List<ColoredShape> live = new ArrayList<>(shapes.size());
+            for (ColoredShape shape : shapes) {
+                if (!erased.contains(shape.getSequence())) {
+                    live.add(shape);
+                }
+            }
+            return live;
+        }
+    }
+}
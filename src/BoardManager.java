@@ -0,0 +1,286 @@
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.rmi.AccessException;
+import java.rmi.RemoteException;
+import java.security.MessageDigest;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+// Hosts many independent boards in one server process. Each board is a WhiteboardServer with its own
+// shape log, chat, clients and journal; all of them share the fan-out, heartbeat and ping threads.
+//
+// A board is loaded from its journal when first asked for, and paged out again (checkpointed to disk
+// and unloaded) once nobody has been on it for WhiteboardConfig.boardIdleMillis().
+//
+// A client joining a board gets its own ClientSession on it, which holds the client to its rate limits.
+//
+// Loading, joining and paging out a board hold only that board's lock, so a slow journal recovery or
+// checkpoint of one board never holds up joins to another.
+//
+// On a cluster follower node every board follows the board with the same id on the leader's manager,
+// so each node fans out to its own clients while the leader alone orders the shapes.
+public class BoardManager extends UnicastRemoteObject implements BoardManagerInterface {
+    public static final String DEFAULT_BOARD = "default";
+    // Board ids name journal directories, so keep them to safe file name characters
+    private static final Pattern BOARD_ID = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+    private static final String BOARDS_DIRECTORY = "boards";
+
+    private final ServerExecutors executors;
+    private final String hostUserName;
+    private final long idleMillis;
+    // Null unless this is a cluster follower
+    private final BoardManagerInterface leader;
+    private final String nodeName;
+    // What follower nodes have to present to addNode, empty if none may
+    private final byte[] clusterSecret = WhiteboardConfig.clusterSecret().getBytes(StandardCharsets.UTF_8);
+    // One per board that is loaded or being loaded, see BoardSlot
+    private final Map<String, BoardSlot> slots = new ConcurrentHashMap<>();
+    // The loaded boards, written under their slot's lock
+    private final Map<String, WhiteboardServer> boards = new ConcurrentHashMap<>();
+    // Boards that are never paged out, e.g. the one shown in the host's own window
+    private final Set<String> pinned = ConcurrentHashMap.newKeySet();
+    // Answers joins on a leader or a single server; a follower passes them on to the leader
+    private final JoinRequests joins;
+    private ScheduledFuture<?> sweeps;
+
+    // Its lock is held while the board is loaded, joined or paged out, so a board is never loaded twice or
+    // paged out while being joined
+    private static class BoardSlot {
+        WhiteboardServer board;
+        // Paged out; whoever was waiting for the lock starts over with a new slot
+        boolean retired;
+    }
+
+    // What is done to a board while it cannot be paged out
+    private interface BoardAction<T> {
+        T apply(WhiteboardServer board) throws RemoteException;
+    }
+
+    public BoardManager(ServerExecutors executors, String hostUserName) throws RemoteException {
+        this(executors, hostUserName, null, null);
+    }
+
+    public BoardManager(ServerExecutors executors, String hostUserName, BoardManagerInterface leader, String nodeName) throws RemoteException {
+        this.executors = executors;
+        this.hostUserName = hostUserName;
+        this.idleMillis = WhiteboardConfig.boardIdleMillis();
+        this.leader = leader;
+        this.nodeName = nodeName;
+        this.joins = new JoinRequests(executors.scheduler(), executors.pings(), hostUserName, JoinPolicy.fromConfig(),
+                WhiteboardConfig.joinTimeoutMillis());
+    }
+
+    public static boolean isValidBoardId(String boardId) {
+        return boardId != null && BOARD_ID.matcher(boardId).matches();
+    }
+
+    // Where a board is journaled, or null when journaling is off. The default board keeps the
+    // journal directory itself, so a journal written by a single-board server is still recovered.
+    public static File journalDirectory(String boardId) {
+        String base = WhiteboardConfig.journalDirectory();
+        if (base.isEmpty()) {
+            return null;
+        }
+        if (DEFAULT_BOARD.equals(boardId)) {
+            return new File(base);
+        }
+        return new File(new File(base, BOARDS_DIRECTORY), boardId);
+    }
+
+    // Hosts an already loaded board and pins it
+    public void host(WhiteboardServer board) {
+        BoardSlot slot = slots.computeIfAbsent(board.getBoardId(), id -> new BoardSlot());
+        synchronized (slot) {
+            board.setHostUserName(hostUserName);
+            board.setJoinRequests(joins);
+            pinned.add(board.getBoardId());
+            slot.board = board;
+            boards.put(board.getBoardId(), board);
+        }
+    }
+
+    public synchronized void start() {
+        if (sweeps != null) {
+            return;
+        }
+        executors.metrics().start(executors.scheduler());
+        if (leader == null) {
+            executors.metrics().add(joins);
+        }
+        long period = Math.max(1000, idleMillis / 4);
+        sweeps = executors.scheduler().scheduleWithFixedDelay(this::pageOutIdleBoards, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    // Pages out every board and stops the shared threads
+    public synchronized void shutdown() {
+        if (sweeps != null) {
+            sweeps.cancel(false);
+        }
+        for (BoardSlot slot : slots.values()) {
+            synchronized (slot) {
+                slot.retired = true;
+                if (slot.board != null) {
+                    slot.board.shutdown();
+                }
+            }
+        }
+        slots.clear();
+        boards.clear();
+        joins.denyAll();
+        executors.shutdown();
+        try {
+            UnicastRemoteObject.unexportObject(this, true);
+        } catch (java.rmi.NoSuchObjectException e) {
+            // Already unexported
+        }
+    }
+
+    // The joins this server answers, e.g. to show them to the host
+    public JoinRequests joinRequests() {
+        return joins;
+    }
+
+    @Override
+    public void requestJoin(JoinListener listener, String userName, String boardId) throws RemoteException {
+        if (!isValidBoardId(boardId)) {
+            throw new IllegalArgumentException("Invalid board id: " + boardId);
+        }
+        if (leader != null) {
+            // The leader answers joins for the whole cluster
+            leader.requestJoin(listener, userName, boardId);
+            return;
+        }
+        joins.request(listener, userName, boardId);
+    }
+
+    // The grant is redeemed before any lock is taken, on a follower that is a call to the leader
+    @Override
+    public WhiteboardServerInterface addClient(WhiteboardClientInterface client, String userName, String boardId, long grant) throws RemoteException {
+        if (!isValidBoardId(boardId)) {
+            throw new IllegalArgumentException("Invalid board id: " + boardId);
+        }
+        boolean granted = leader == null ? joins.redeem(grant, userName, boardId)
+                : leader.redeemJoin(grant, userName, boardId, WhiteboardConfig.clusterSecret());
+        if (!granted) {
+            System.out.println("Refused " + userName + " on board " + boardId + ": no join granted");
+            throw new AccessException("No join granted to " + userName + " on board " + boardId + ", ask with requestJoin first");
+        }
+        return withBoard(boardId, board -> {
+            board.addClient(client, userName);
+            ClientSession session = new ClientSession(board, client);
+            board.setSession(client, session);
+            return session;
+        });
+    }
+
+    // Other cluster nodes relay the calls of all their clients, which their own sessions have limited already
+    @Override
+    public WhiteboardServerInterface addNode(WhiteboardClientInterface relay, String nodeName, String boardId, String secret) throws RemoteException {
+        checkNode(nodeName, secret);
+        return withBoard(boardId, board -> {
+            board.addClient(relay, nodeName);
+            return board;
+        });
+    }
+
+    @Override
+    public boolean redeemJoin(long grant, String userName, String boardId, String secret) throws RemoteException {
+        checkNode("a node redeeming a join", secret);
+        if (leader != null) {
+            return leader.redeemJoin(grant, userName, boardId, WhiteboardConfig.clusterSecret());
+        }
+        return joins.redeem(grant, userName, boardId);
+    }
+
+    private void checkNode(String nodeName, String secret) throws AccessException {
+        if (clusterSecret.length == 0 || secret == null
+                || !MessageDigest.isEqual(clusterSecret, secret.getBytes(StandardCharsets.UTF_8))) {
+            System.out.println("Refused " + nodeName + ": wrong or no cluster secret");
+            throw new AccessException("Not a node of this cluster; set the same -Dwhiteboard.cluster.secret on every node");
+        }
+    }
+
+    @Override
+    public List<String> getBoardIds() throws RemoteException {
+        if (leader != null) {
+            return leader.getBoardIds();
+        }
+        Set<String> ids = new TreeSet<>(boards.keySet());
+        String base = WhiteboardConfig.journalDirectory();
+        if (!base.isEmpty()) {
+            String[] saved = new File(base, BOARDS_DIRECTORY).list((dir, name) -> isValidBoardId(name));
+            if (saved != null) {
+                for (String id : saved) {
+                    ids.add(id);
+                }
+            }
+        }
+        return new ArrayList<>(ids);
+    }
+
+    public int loadedBoards() {
+        return boards.size();
+    }
+
+    // Runs action on the board, loading it first if need be, under the board's own lock
+    private <T> T withBoard(String boardId, BoardAction<T> action) throws RemoteException {
+        if (!isValidBoardId(boardId)) {
+            throw new IllegalArgumentException("Invalid board id: " + boardId);
+        }
+        while (true) {
+            BoardSlot slot = slots.computeIfAbsent(boardId, id -> new BoardSlot());
+            synchronized (slot) {
+                if (slot.retired) {
+                    continue;
+                }
+                if (slot.board == null) {
+                    WhiteboardServer board = leader == null ? new WhiteboardServer(boardId, executors)
+                            : new WhiteboardServer(boardId, executors, leader, nodeName);
+                    board.setHostUserName(hostUserName);
+                    board.setJoinRequests(joins);
+                    board.startHeartbeat();
+                    slot.board = board;
+                    boards.put(boardId, board);
+                    System.out.println("Loaded board " + boardId);
+                }
+                return action.apply(slot.board);
+            }
+        }
+    }
+
+    private void pageOutIdleBoards() {
+        for (WhiteboardServer board : boards.values()) {
+            // A board with nowhere to page out to would be lost
+            if (!pinned.contains(board.getBoardId()) && board.canPageOut() && board.idleMillis() >= idleMillis) {
+                pageOut(board);
+            }
+        }
+    }
+
+    private void pageOut(WhiteboardServer board) {
+        BoardSlot slot = slots.get(board.getBoardId());
+        if (slot == null) {
+            return;
+        }
+        synchronized (slot) {
+            // Checked again under the lock, someone may have joined since
+            if (slot.board != board || board.idleMillis() < idleMillis) {
+                return;
+            }
+            slot.retired = true;
+            slots.remove(board.getBoardId(), slot);
+            boards.remove(board.getBoardId(), board);
+            // Checkpoints the board, the next join recovers it from there
+            board.shutdown();
+        }
+        System.out.println("Paged out board " + board.getBoardId());
+    }
+}
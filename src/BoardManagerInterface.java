@@ -0,0 +1,27 @@
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.util.List;
+
+// Entry point of a server hosting several boards. A client picks a board by id, and once accepted talks
+// to the board it gets back from addClient; a board that does not exist yet is created empty.
+// A client asks to join with requestJoin and waits for its JoinListener to be told it was accepted, with
+// the grant addClient takes.
+public interface BoardManagerInterface extends Remote {
+    // Returns at once; the listener is told later whether userName may join, which may wait for the host
+    void requestJoin(JoinListener listener, String userName, String boardId) throws RemoteException;
+
+    // Uses up the grant; throws AccessException unless requestJoin granted userName this board and the
+    // grant has not been used or expired
+    WhiteboardServerInterface addClient(WhiteboardClientInterface client, String userName, String boardId, long grant) throws RemoteException;
+
+    // How a cluster follower node joins a board on the leader, past the per-client rate limits. Throws
+    // AccessException unless secret is the cluster's secret (WhiteboardConfig.clusterSecret()).
+    WhiteboardServerInterface addNode(WhiteboardClientInterface relay, String nodeName, String boardId, String secret) throws RemoteException;
+
+    // How a follower node uses up a grant the leader issued, for a client joining the follower; takes the
+    // cluster secret like addNode
+    boolean redeemJoin(long grant, String userName, String boardId, String secret) throws RemoteException;
+
+    // Boards that are loaded or have been saved, loaded or not
+    List<String> getBoardIds() throws RemoteException;
+}
@@ -0,0 +1,378 @@
+import java.awt.Shape;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.Rectangle2D;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Counters and latencies of one board, read over JMX and by the Prometheus endpoint of ServerMetrics.
+// Recording is lock-free so it can happen on every call; anything expensive (the heap size, rates)
+// is worked out when read or once a second by tick().
+public class BoardMetrics implements BoardMetricsMXBean, BoardJournal.FlushListener {
+    private final String boardId;
+    private final ShapeLog drawings;
+    private final BroadcastFanOut fanOut;
+    private final Map<String, LongAdder> operations = new ConcurrentHashMap<>();
+    // Operations per second over the last tick, and the counts it started from
+    private volatile Map<String, Double> rates = new TreeMap<>();
+    private final Map<String, Long> lastCounts = new ConcurrentHashMap<>();
+    private long lastTick = System.nanoTime();
+    private final Map<WhiteboardClientInterface, ClientStats> clients = new ConcurrentHashMap<>();
+    private final LatencyHistogram journalFlushes = new LatencyHistogram();
+    private final LatencyHistogram checkpoints = new LatencyHistogram();
+    private final LongAdder journalRecordsSkipped = new LongAdder();
+    private volatile boolean journalFailed = false;
+    // Heap of the board at heapSequence/heapSize/heapErased, so the index is only walked again once it changed
+    private long heapSequence = -1;
+    private int heapSize = -1;
+    private int heapErased = -1;
+    private long heapBytes = 0;
+
+    public BoardMetrics(String boardId, ShapeLog drawings, BroadcastFanOut fanOut) {
+        this.boardId = boardId;
+        this.drawings = drawings;
+        this.fanOut = fanOut;
+    }
+
+    // RECORDING
+
+    public void countOperation(String operation) {
+        operations.computeIfAbsent(operation, name -> new LongAdder()).increment();
+    }
+
+    public void countShape(ColoredShape shape) {
+        countOperation(typeOf(shape.getShape()));
+    }
+
+    public void clientJoined(WhiteboardClientInterface client, String userName) {
+        clients.putIfAbsent(client, new ClientStats(client, userName));
+    }
+
+    public void clientLeft(WhiteboardClientInterface client) {
+        clients.remove(client);
+    }
+
+    // A call reached the client latencyNanos after it was queued for it
+    public void delivered(WhiteboardClientInterface client, long latencyNanos, int payloadBytes) {
+        ClientStats stats = clients.get(client);
+        if (stats != null) {
+            stats.deliveries.record(latencyNanos);
+            stats.bytesSent.add(payloadBytes);
+        }
+    }
+
+    // A call of the client was delayed, held back or refused by the board's AdmissionControl
+    public void throttled(WhiteboardClientInterface client, String action) {
+        ClientStats stats = clients.get(client);
+        if (stats != null) {
+            stats.throttled.computeIfAbsent(action, name -> new LongAdder()).increment();
+        }
+    }
+
+    public void pinged(WhiteboardClientInterface client, long roundTripNanos) {
+        ClientStats stats = clients.get(client);
+        if (stats != null) {
+            stats.pings.record(roundTripNanos);
+        }
+    }
+
+    @Override
+    public void flushed(long nanos) {
+        journalFlushes.record(nanos);
+    }
+
+    @Override
+    public void checkpointed(long nanos) {
+        checkpoints.record(nanos);
+    }
+
+    @Override
+    public void skipped() {
+        journalRecordsSkipped.increment();
+    }
+
+    @Override
+    public void failed(Exception cause) {
+        journalFailed = true;
+    }
+
+    // Works out the operation rates since the last tick
+    synchronized void tick() {
+        long now = System.nanoTime();
+        double seconds = (now - lastTick) / 1e9;
+        lastTick = now;
+        Map<String, Double> newRates = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> entry : operations.entrySet()) {
+            long count = entry.getValue().sum();
+            Long last = lastCounts.put(entry.getKey(), count);
+            newRates.put(entry.getKey(), seconds > 0 ? (count - (last == null ? 0 : last)) / seconds : 0);
+        }
+        rates = newRates;
+    }
+
+    // Payload bytes of a draw call, i.e. the shape as ShapeCodec writes it. RMI or the socket
+    // transport add their own framing on top.
+    public static int encodedSize(ColoredShape shape) {
+        DataOutputStream out = new DataOutputStream(OutputStream.nullOutputStream());
+        try {
+            new ShapeCodec().write(out, shape);
+        } catch (IOException e) {
+            return 0;
+        }
+        return out.size();
+    }
+
+    static String typeOf(Shape shape) {
+        if (shape instanceof Text2D) {
+            return "text";
+        } else if (shape instanceof Polyline2D) {
+            return "stroke";
+        } else if (shape instanceof Line2D) {
+            return "line";
+        } else if (shape instanceof Ellipse2D) {
+            Rectangle2D bounds = shape.getBounds2D();
+            return bounds.getWidth() == bounds.getHeight() ? "circle" : "oval";
+        } else if (shape instanceof Rectangle2D) {
+            return "rectangle";
+        }
+        return "other";
+    }
+
+    // READING
+
+    @Override
+    public String getBoardId() {
+        return boardId;
+    }
+
+    @Override
+    public int getClientCount() {
+        return clients.size();
+    }
+
+    @Override
+    public int getShapeCount() {
+        return drawings.size();
+    }
+
+    @Override
+    public int getErasedShapeCount() {
+        return drawings.getErasedCount();
+    }
+
+    @Override
+    public synchronized long getDrawingsHeapBytes() {
+        long sequence = drawings.getLastSequence();
+        int size = drawings.size();
+        int erased = drawings.getErasedCount();
+        if (sequence != heapSequence || size != heapSize || erased != heapErased) {
+            heapBytes = drawings.heapBytes();
+            heapSequence = sequence;
+            heapSize = size;
+            heapErased = erased;
+        }
+        return heapBytes;
+    }
+
+    @Override
+    public Map<String, Long> getOperationCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> entry : operations.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().sum());
+        }
+        return counts;
+    }
+
+    @Override
+    public Map<String, Double> getOperationsPerSecond() {
+        return rates;
+    }
+
+    @Override
+    public int getQueueDepth() {
+        int depth = 0;
+        for (WhiteboardClientInterface client : clients.keySet()) {
+            depth += fanOut.queueDepth(client);
+        }
+        return depth;
+    }
+
+    @Override
+    public long getBytesSent() {
+        long bytes = 0;
+        for (ClientStats stats : clients.values()) {
+            bytes += stats.bytesSent.sum();
+        }
+        return bytes;
+    }
+
+    @Override
+    public long getJournalFlushes() {
+        return journalFlushes.getCount();
+    }
+
+    @Override
+    public double getJournalFlushMillisP50() {
+        return millis(journalFlushes.percentileNanos(0.5));
+    }
+
+    @Override
+    public double getJournalFlushMillisP99() {
+        return millis(journalFlushes.percentileNanos(0.99));
+    }
+
+    @Override
+    public double getJournalFlushMillisMax() {
+        return millis(journalFlushes.getMaxNanos());
+    }
+
+    @Override
+    public long getCheckpoints() {
+        return checkpoints.getCount();
+    }
+
+    @Override
+    public double getCheckpointMillisMax() {
+        return millis(checkpoints.getMaxNanos());
+    }
+
+    @Override
+    public long getJournalRecordsSkipped() {
+        return journalRecordsSkipped.sum();
+    }
+
+    @Override
+    public boolean isJournalFailed() {
+        return journalFailed;
+    }
+
+    @Override
+    public List<ClientMetrics> getClients() {
+        List<ClientMetrics> result = new ArrayList<>();
+        for (ClientStats stats : clients.values()) {
+            result.add(new ClientMetrics(stats, queueDepth(stats)));
+        }
+        return result;
+    }
+
+    LatencyHistogram journalFlushHistogram() {
+        return journalFlushes;
+    }
+
+    LatencyHistogram checkpointHistogram() {
+        return checkpoints;
+    }
+
+    // The live statistics of every client, for the Prometheus endpoint
+    List<ClientStats> clientStats() {
+        return new ArrayList<>(clients.values());
+    }
+
+    int queueDepth(ClientStats stats) {
+        return fanOut.queueDepth(stats.client);
+    }
+
+    static double millis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    static class ClientStats {
+        final WhiteboardClientInterface client;
+        final String userName;
+        final LatencyHistogram deliveries = new LatencyHistogram();
+        final LatencyHistogram pings = new LatencyHistogram();
+        final LongAdder bytesSent = new LongAdder();
+        final Map<String, LongAdder> throttled = new ConcurrentHashMap<>();
+
+        ClientStats(WhiteboardClientInterface client, String userName) {
+            this.client = client;
+            this.userName = userName;
+        }
+    }
+
+    // One client as JMX shows it
+    public static class ClientMetrics {
+        private final String userName;
+        private final int queueDepth;
+        private final long bytesSent;
+        private final long deliveries;
+        private final double deliveryMillisP50;
+        private final double deliveryMillisP99;
+        private final double deliveryMillisMax;
+        private final long pings;
+        private final double pingMillisP50;
+        private final double pingMillisP99;
+        private final Map<String, Long> throttled = new TreeMap<>();
+
+        ClientMetrics(ClientStats stats, int queueDepth) {
+            this.userName = stats.userName;
+            this.queueDepth = queueDepth;
+            this.bytesSent = stats.bytesSent.sum();
+            this.deliveries = stats.deliveries.getCount();
+            this.deliveryMillisP50 = millis(stats.deliveries.percentileNanos(0.5));
+            this.deliveryMillisP99 = millis(stats.deliveries.percentileNanos(0.99));
+            this.deliveryMillisMax = millis(stats.deliveries.getMaxNanos());
+            this.pings = stats.pings.getCount();
+            this.pingMillisP50 = millis(stats.pings.percentileNanos(0.5));
+            this.pingMillisP99 = millis(stats.pings.percentileNanos(0.99));
+            for (Map.Entry<String, LongAdder> entry : stats.throttled.entrySet()) {
+                throttled.put(entry.getKey(), entry.getValue().sum());
+            }
+        }
+
+        public String getUserName() {
+            return userName;
+        }
+
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+
+        public long getBytesSent() {
+            return bytesSent;
+        }
+
+        public long getDeliveries() {
+            return deliveries;
+        }
+
+        // From being queued for the client until its call returned
+        public double getDeliveryMillisP50() {
+            return deliveryMillisP50;
+        }
+
+        public double getDeliveryMillisP99() {
+            return deliveryMillisP99;
+        }
+
+        public double getDeliveryMillisMax() {
+            return deliveryMillisMax;
+        }
+
+        // Heartbeat pings; a client that keeps receiving broadcasts is not pinged
+        public long getPings() {
+            return pings;
+        }
+
+        public double getPingMillisP50() {
+            return pingMillisP50;
+        }
+
+        public double getPingMillisP99() {
+            return pingMillisP99;
+        }
+
+        // Calls delayed, held back or refused by the rate limits, by what happened to them
+        public Map<String, Long> getThrottled() {
+            return throttled;
+        }
+    }
+}
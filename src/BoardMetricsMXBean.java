@@ -0,0 +1,50 @@
+import java.util.List;
+import java.util.Map;
+
+// What one board reports over JMX, as whiteboard:type=Board,node=<node>,name=<board id>.
+// Durations are in milliseconds; counters count from when the board was loaded.
+public interface BoardMetricsMXBean {
+    String getBoardId();
+
+    int getClientCount();
+
+    int getShapeCount();
+
+    // Erased shapes still held for undo until the compactor drops them
+    int getErasedShapeCount();
+
+    // Heap of the board's shape store and spatial index, worked out from their array sizes
+    long getDrawingsHeapBytes();
+
+    // Board operations by type: a shape type (line, rectangle, oval, circle, stroke, text) or
+    // stroke-points, text-edit, erase, restore, clear, chat or message
+    Map<String, Long> getOperationCounts();
+
+    // Over the last second
+    Map<String, Double> getOperationsPerSecond();
+
+    // Calls queued for all clients together
+    int getQueueDepth();
+
+    long getBytesSent();
+
+    long getJournalFlushes();
+
+    double getJournalFlushMillisP50();
+
+    double getJournalFlushMillisP99();
+
+    double getJournalFlushMillisMax();
+
+    long getCheckpoints();
+
+    double getCheckpointMillisMax();
+
+    // Records the journal could not encode, or found damaged on recovery
+    long getJournalRecordsSkipped();
+
+    // The journal stopped writing, changes since are not durable
+    boolean isJournalFailed();
+
+    List<BoardMetrics.ClientMetrics> getClients();
+}
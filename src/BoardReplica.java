@@ -0,0 +1,114 @@
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.List;
+
+// The client's own copy of the server's drawing log, kept up to date by server pushes. The shapes are
+// kept as primitives in a ShapeStore; query() builds the ones a tile is rendered from. Erased shapes are
+// marked in the store and copied out once they outnumber the live ones.
+public class BoardReplica {
+
+    public enum Result {
+        APPLIED,
+        // Already part of the replica
+        DUPLICATE,
+        // At least one earlier shape is missing, the replica needs a fresh snapshot
+        GAP;
+    }
+
+    // Erased shapes wait for enough company before the store is compacted
+    private static final int COMPACT_MIN_ERASED = 1024;
+
+    private final ShapeStore shapes = new ShapeStore();
+    private long lastSequence = 0;
+    private int erasedCount = 0;
+    private final SpatialIndex index = new SpatialIndex(WhiteboardConfig.indexCellSize());
+
+    public synchronized Result append(ColoredShape shape) {
+        long sequence = shape.getSequence();
+        if (sequence != 0) {
+            if (sequence <= lastSequence) {
+                return Result.DUPLICATE;
+            }
+            if (sequence != lastSequence + 1) {
+                return Result.GAP;
+            }
+        }
+        index.add(shapes.add(shape), SpatialIndex.boundsOf(shape.getShape()));
+        if (sequence != 0) {
+            lastSequence = sequence;
+        }
+        return Result.APPLIED;
+    }
+
+    // A shape from a board chunk. Shapes erased on the server leave gaps in the numbering of a chunk, so
+    // any later sequence number fits.
+    public synchronized Result load(ColoredShape shape) {
+        if (shape.getSequence() <= lastSequence) {
+            return Result.DUPLICATE;
+        }
+        index.add(shapes.add(shape), SpatialIndex.boundsOf(shape.getShape()));
+        lastSequence = shape.getSequence();
+        return Result.APPLIED;
+    }
+
+    // The board chunk that ended a sync was taken at this sequence number
+    public synchronized void advanceTo(long sequence) {
+        lastSequence = Math.max(lastSequence, sequence);
+    }
+
+    // Erases the shapes with these sequence numbers and returns the ones that were here, so the caller
+    // knows which part of the board to paint again
+    public synchronized List<ColoredShape> erase(long[] sequences) {
+        List<ColoredShape> erased = new ArrayList<>();
+        for (long sequence : sequences) {
+            int slot = shapes.find(sequence, shapes.size());
+            if (slot >= 0 && shapes.isLive(slot)) {
+                erased.add(shapes.get(slot));
+                shapes.erase(slot);
+                index.remove(slot);
+                erasedCount++;
+            }
+        }
+        if (erasedCount > COMPACT_MIN_ERASED && erasedCount > shapes.size() - erasedCount) {
+            boolean[] keep = new boolean[shapes.size()];
+            for (int slot = 0; slot < keep.length; slot++) {
+                keep[slot] = shapes.isLive(slot);
+            }
+            index.renumber(shapes.compact(keep));
+            erasedCount = 0;
+        }
+        return erased;
+    }
+
+    public synchronized void reset(BoardSnapshot snapshot) {
+        clear();
+        for (ColoredShape shape : snapshot.getShapes()) {
+            index.add(shapes.add(shape), SpatialIndex.boundsOf(shape.getShape()));
+        }
+        lastSequence = snapshot.getSequence();
+    }
+
+    // Clearing the board does not use up a sequence number, so lastSequence is kept
+    public synchronized void clear() {
+        shapes.clear();
+        index.clear();
+        erasedCount = 0;
+    }
+
+    // Shapes whose bounds intersect the area, in board order
+    public synchronized List<ColoredShape> query(Rectangle2D area) {
+        return shapes.get(index.query(area));
+    }
+
+    public synchronized List<ColoredShape> getShapes() {
+        return shapes.getLive(0, shapes.size());
+    }
+
+    public synchronized int size() {
+        return shapes.size() - erasedCount;
+    }
+
+    public synchronized long getLastSequence() {
+        return lastSequence;
+    }
+}
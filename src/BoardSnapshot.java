@@ -0,0 +1,53 @@
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+public class BoardSnapshot implements Serializable {
+    private static final long serialVersionUID = 2L;
+
+    // Sequence number of the last shape included in this snapshot
+    private long sequence;
+    // Written by writeObject with one ShapeCodec, so fonts are only sent once per snapshot
+    private transient List<ColoredShape> shapes;
+
+    public BoardSnapshot(long sequence, List<ColoredShape> shapes) {
+        this.sequence = sequence;
+        this.shapes = shapes;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public List<ColoredShape> getShapes() {
+        return shapes;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeByte(ShapeCodec.VERSION);
+        out.writeInt(shapes.size());
+        ShapeCodec codec = new ShapeCodec();
+        for (ColoredShape shape : shapes) {
+            codec.write(out, shape);
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int version = in.readUnsignedByte();
+        if (version != ShapeCodec.VERSION) {
+            throw new InvalidObjectException("Unsupported shape encoding version " + version);
+        }
+        int count = in.readInt();
+        ShapeCodec codec = new ShapeCodec();
+        shapes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            shapes.add(codec.read(in));
+        }
+    }
+}
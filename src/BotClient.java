@@ -0,0 +1,471 @@
+import java.awt.Color;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+
+// A client without a window that draws like a person would, for load testing. At the configured rates
+// it draws shapes, freehand strokes (streamed and committed like WhiteboardClient does), text blocks
+// (typed a few characters at a time) and chat messages. Events arrive at random (Poisson) times.
+//
+// Every shape a bot draws has its bot index and a counter in the RGB bits of its color, so whoever
+// receives it can look up when it was sent with sentAt() and work out the end-to-end latency.
+public class BotClient extends UnicastRemoteObject implements WhiteboardClientInterface, JoinListener {
+    public static final int MAX_BOTS = 256;
+    private static final int COUNTER_BITS = 16;
+    private static final int COUNTER_MASK = (1 << COUNTER_BITS) - 1;
+    private static final int BOARD_WIDTH = 1600;
+    private static final int BOARD_HEIGHT = 900;
+    private static final String[] WORDS = {"todo", "idea", "design", "fix this", "why?", "ship it", "v2", "later"};
+    private static final String[] CHATS = {"ok", "looks good", "can you move that left?", "brb", "agreed", "one sec"};
+
+    private static final int SHAPE = 0;
+    private static final int STROKE = 1;
+    private static final int TEXT = 2;
+    private static final int CHAT = 3;
+
+    // Events per second of each kind, for one bot
+    public static class Rates {
+        public double shapes = 5;
+        public double strokes = 1;
+        public double texts = 0.2;
+        public double chats = 0.1;
+        public int pointsPerStroke = 64;
+
+        // Takes "--shapes", "--strokes", "--texts", "--chats" and "--points" with their values out of
+        // the command line arguments; the rest keep their defaults
+        public static Rates fromArgs(List<String> args) {
+            Rates rates = new Rates();
+            rates.shapes = take(args, "--shapes", rates.shapes);
+            rates.strokes = take(args, "--strokes", rates.strokes);
+            rates.texts = take(args, "--texts", rates.texts);
+            rates.chats = take(args, "--chats", rates.chats);
+            rates.pointsPerStroke = (int) take(args, "--points", rates.pointsPerStroke);
+            return rates;
+        }
+
+        private static double take(List<String> args, String option, double fallback) {
+            int index = args.indexOf(option);
+            if (index < 0 || index + 1 >= args.size()) {
+                return fallback;
+            }
+            double value = Double.parseDouble(args.get(index + 1));
+            args.subList(index, index + 2).clear();
+            return value;
+        }
+
+        double of(int kind) {
+            switch (kind) {
+                case SHAPE:
+                    return shapes;
+                case STROKE:
+                    return strokes;
+                case TEXT:
+                    return texts;
+                default:
+                    return chats;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%.1f shapes, %.1f strokes of %d points, %.1f texts, %.1f chats per second",
+                    shapes, strokes, pointsPerStroke, texts, chats);
+        }
+    }
+
+    private final String userName;
+    private final int botIndex;
+    private final Rates rates;
+    private final Random random;
+    // When each counter value was sent, as System.nanoTime()
+    private final AtomicLongArray sentAt = new AtomicLongArray(1 << COUNTER_BITS);
+    private int counter = 0;
+    private volatile WhiteboardServerInterface server;
+    private volatile BiConsumer<BotClient, ColoredShape> drawListener;
+    private volatile boolean running = false;
+    // The grant requestJoin was answered with, 0 if the join was denied
+    private final CompletableFuture<Long> joinAnswer = new CompletableFuture<>();
+    private Thread loop;
+
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder previews = new LongAdder();
+    private final LongAdder resyncs = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    // Events that fired more than a second after they were due, because the calls before them were slow
+    private final LongAdder late = new LongAdder();
+
+    public BotClient(String userName, int botIndex, Rates rates, long seed) throws RemoteException {
+        if (botIndex < 0 || botIndex >= MAX_BOTS) {
+            throw new IllegalArgumentException("Bot index must be below " + MAX_BOTS);
+        }
+        this.userName = userName;
+        this.botIndex = botIndex;
+        this.rates = rates;
+        this.random = new Random(seed);
+    }
+
+    // Told about every shape this bot receives, on the thread that delivered it
+    public void setDrawListener(BiConsumer<BotClient, ColoredShape> drawListener) {
+        this.drawListener = drawListener;
+    }
+
+    // Asks to join and waits for the host's answer, or the join policy's; false if the join was denied
+    public boolean askToJoin(BoardManagerInterface boards, String boardId) throws RemoteException {
+        boards.requestJoin(this, userName, boardId);
+        long grant = joinAnswer.completeOnTimeout(0L, WhiteboardConfig.joinTimeoutMillis() + 10_000, TimeUnit.MILLISECONDS).join();
+        if (grant == 0) {
+            return false;
+        }
+        server = boards.addClient(this, userName, boardId, grant);
+        return true;
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        loop = new Thread(this::run, "bot-" + userName);
+        loop.setDaemon(true);
+        loop.start();
+    }
+
+    // Stops drawing and leaves the board
+    public void stop() {
+        synchronized (this) {
+            running = false;
+            if (loop != null) {
+                loop.interrupt();
+            }
+        }
+        try {
+            if (loop != null) {
+                loop.join();
+            }
+            if (server != null) {
+                server.removeClient(this);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RemoteException e) {
+            // The server is gone already
+        }
+        try {
+            UnicastRemoteObject.unexportObject(this, true);
+        } catch (java.rmi.NoSuchObjectException e) {
+            // Already unexported
+        }
+    }
+
+    public String getUserName() {
+        return userName;
+    }
+
+    public int getBotIndex() {
+        return botIndex;
+    }
+
+    // When the shape tagged with this color was sent, as System.nanoTime()
+    public long sentAt(int color) {
+        return sentAt.get(color & COUNTER_MASK);
+    }
+
+    // Which bot drew a shape with this color
+    public static int botOf(int color) {
+        return (color >>> COUNTER_BITS) & (MAX_BOTS - 1);
+    }
+
+    public long getSent() {
+        return sent.sum();
+    }
+
+    public long getReceived() {
+        return received.sum();
+    }
+
+    public long getPreviews() {
+        return previews.sum();
+    }
+
+    public long getResyncs() {
+        return resyncs.sum();
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    public long getLate() {
+        return late.sum();
+    }
+
+    // TRAFFIC
+
+    private void run() {
+        long[] due = new long[CHAT + 1];
+        long now = System.nanoTime();
+        for (int kind = 0; kind < due.length; kind++) {
+            // A kind with no rate is never due
+            due[kind] = rates.of(kind) > 0 ? now + interval(kind) : Long.MAX_VALUE;
+        }
+        while (running) {
+            int kind = 0;
+            for (int k = 1; k < due.length; k++) {
+                if (due[k] < due[kind]) {
+                    kind = k;
+                }
+            }
+            if (due[kind] == Long.MAX_VALUE) {
+                return;
+            }
+            long wait;
+            while (running && (wait = due[kind] - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            if (!running) {
+                return;
+            }
+            now = System.nanoTime();
+            if (now - due[kind] > 1_000_000_000L) {
+                // Fell behind, skip the backlog instead of bursting through it
+                late.increment();
+                due[kind] = now;
+            }
+            try {
+                perform(kind);
+            } catch (RemoteException | RuntimeException e) {
+                if (!running) {
+                    // Interrupted by stop()
+                    return;
+                }
+                if (errors.sum() == 0) {
+                    e.printStackTrace();
+                }
+                errors.increment();
+            } catch (InterruptedException e) {
+                return;
+            }
+            due[kind] += interval(kind);
+        }
+    }
+
+    // Exponentially distributed time to the next event of this kind
+    private long interval(int kind) {
+        return (long) (-Math.log(1 - random.nextDouble()) / rates.of(kind) * 1e9);
+    }
+
+    private void perform(int kind) throws RemoteException, InterruptedException {
+        switch (kind) {
+            case SHAPE:
+                drawShape();
+                break;
+            case STROKE:
+                drawStroke();
+                break;
+            case TEXT:
+                typeText();
+                break;
+            default:
+                server.addChatMessage(userName, CHATS[random.nextInt(CHATS.length)]);
+                sent.increment();
+                break;
+        }
+    }
+
+    private void drawShape() throws RemoteException {
+        int x = random.nextInt(BOARD_WIDTH), y = random.nextInt(BOARD_HEIGHT);
+        int width = 10 + random.nextInt(150), height = 10 + random.nextInt(150);
+        int color = nextColor();
+        switch (random.nextInt(4)) {
+            case 0:
+                server.broadcastDrawLine(x, y, x + width, y + height, color);
+                break;
+            case 1:
+                server.broadcastDrawRectangle(x, y, width, height, color);
+                break;
+            case 2:
+                server.broadcastDrawOval(x, y, width, height, color);
+                break;
+            default:
+                server.broadcastDrawCircle(x, y, width, color);
+                break;
+        }
+        sent.increment();
+    }
+
+    // Streams a random walk the way WhiteboardClient streams a drag, then commits it
+    private void drawStroke() throws RemoteException, InterruptedException {
+        long strokeId = newPreviewId();
+        int chunkPoints = Math.max(1, WhiteboardConfig.strokeFlushPoints());
+        int x = random.nextInt(BOARD_WIDTH), y = random.nextInt(BOARD_HEIGHT);
+        int color = nextColor();
+        int remaining = Math.max(1, rates.pointsPerStroke);
+        while (remaining > 0) {
+            int count = Math.min(chunkPoints, remaining);
+            int[] points = new int[count * 2];
+            for (int i = 0; i < count; i++) {
+                x += random.nextInt(9) - 4;
+                y += random.nextInt(9) - 4;
+                points[2 * i] = x;
+                points[2 * i + 1] = y;
+            }
+            server.appendStroke(strokeId, points, color);
+            remaining -= count;
+            if (remaining > 0) {
+                Thread.sleep(WhiteboardConfig.strokeFlushMillis());
+            }
+        }
+        markSent(color);
+        server.commitStroke(strokeId);
+        sent.increment();
+    }
+
+    // Types a word a couple of characters per flush, then commits the block
+    private void typeText() throws RemoteException, InterruptedException {
+        long textId = newPreviewId();
+        int color = nextColor();
+        server.openText(textId, random.nextInt(BOARD_WIDTH), random.nextInt(BOARD_HEIGHT), color);
+        String word = WORDS[random.nextInt(WORDS.length)];
+        for (int typed = 0; typed < word.length(); typed += 2) {
+            server.appendText(textId, typed, word.substring(typed, Math.min(word.length(), typed + 2)));
+            Thread.sleep(WhiteboardConfig.textFlushMillis());
+        }
+        markSent(color);
+        server.commitText(textId);
+        sent.increment();
+    }
+
+    // A color carrying this bot's index and the next counter, stamped with the time for a draw call
+    // made right after
+    private int nextColor() {
+        counter = (counter + 1) & COUNTER_MASK;
+        int color = 0xFF000000 | (botIndex << COUNTER_BITS) | counter;
+        markSent(color);
+        return color;
+    }
+
+    private void markSent(int color) {
+        sentAt.set(color & COUNTER_MASK, System.nanoTime());
+    }
+
+    private static long newPreviewId() {
+        long id;
+        do {
+            id = ThreadLocalRandom.current().nextLong();
+        } while (id == 0);
+        return id;
+    }
+
+    // CALLBACKS
+
+    @Override
+    public void draw(ColoredShape shape) {
+        received.increment();
+        BiConsumer<BotClient, ColoredShape> listener = drawListener;
+        if (listener != null) {
+            listener.accept(this, shape);
+        }
+    }
+
+    @Override
+    public void joinAnswered(String boardId, boolean accepted, long grant) {
+        joinAnswer.complete(accepted ? grant : 0L);
+    }
+
+    @Override
+    public void resync() {
+        // A bot does not keep the board, so there is nothing to fetch; counted because it means the
+        // server dropped updates for this bot
+        resyncs.increment();
+    }
+
+    @Override
+    public void erase(long[] sequences) {
+    }
+
+    @Override
+    public void previewStroke(long strokeId, int[] points, int color) {
+        previews.increment();
+    }
+
+    @Override
+    public void previewText(long textId, String text, int x, int y, int color) {
+        previews.increment();
+    }
+
+    @Override
+    public void receiveMessage(String message) {
+    }
+
+    @Override
+    public void clear() {
+    }
+
+    @Override
+    public void closeApplication() {
+        running = false;
+    }
+
+    @Override
+    public void setCurrentColor(Color color) {
+    }
+
+    @Override
+    public boolean ping() {
+        return true;
+    }
+
+    @Override
+    public void receiveChatMessage(ChatMessage message) {
+    }
+
+    // Runs one bot against a server until interrupted, e.g. several of these from different machines
+    public static void main(String[] commandLine) {
+        List<String> options = new ArrayList<>(Arrays.asList(commandLine));
+        Transport transport;
+        Rates rates;
+        try {
+            transport = Transport.fromArgs(options);
+            rates = Rates.fromArgs(options);
+        } catch (IllegalArgumentException e) {
+            System.out.println("Error: " + e.getMessage());
+            return;
+        }
+        String[] args = options.toArray(new String[0]);
+        if (args.length < 3) {
+            System.out.println("Usage: java BotClient <serverIPAddress> <serverPort> <username> [boardId] [--transport rmi|nio]"
+                    + " [--shapes n] [--strokes n] [--texts n] [--chats n] [--points n]");
+            return;
+        }
+        String boardId = args.length > 3 ? args[3] : BoardManager.DEFAULT_BOARD;
+        try {
+            BoardManagerInterface boards = (BoardManagerInterface) transport.lookup(args[0], Integer.parseInt(args[1]), "WhiteboardBoards");
+            BotClient bot = new BotClient(args[2], ThreadLocalRandom.current().nextInt(MAX_BOTS), rates, System.nanoTime());
+            if (!bot.askToJoin(boards, boardId)) {
+                System.out.println("The host did not let " + args[2] + " join");
+                System.exit(1);
+            }
+            bot.start();
+            System.out.println(args[2] + " drawing " + rates);
+            while (true) {
+                Thread.sleep(10_000);
+                System.out.printf("sent %d, received %d shapes and %d previews, %d resyncs, %d errors, %d late%n",
+                        bot.getSent(), bot.getReceived(), bot.getPreviews(), bot.getResyncs(), bot.getErrors(), bot.getLate());
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,220 @@
+import java.rmi.RemoteException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+
+// Delivers server broadcasts to every client through its own bounded queue, so a slow
+// client only delays itself. Calls to one client are always made in the order they were queued.
+public class BroadcastFanOut {
+
+    // Told about the outcome of every call, e.g. so a successful broadcast counts as a heartbeat.
+    // latencyNanos runs from queueing the call until it returned; payloadBytes is what it was queued with.
+    public interface DeliveryListener {
+        void delivered(WhiteboardClientInterface client, long latencyNanos, int payloadBytes);
+
+        void failed(WhiteboardClientInterface client, RemoteException e);
+    }
+
+    private final Map<WhiteboardClientInterface, ClientChannel> channels = new ConcurrentHashMap<>();
+    private final ExecutorService executor;
+    private final int queueSize;
+    private final OverflowPolicy overflowPolicy;
+    // Sent in place of the dropped board updates when coalescing
+    private final ClientCall resyncCall;
+    private final Consumer<WhiteboardClientInterface> evictHandler;
+    private volatile DeliveryListener deliveryListener;
+
+    // The executor may be shared with other fan-outs; shutdown() leaves it running
+    public BroadcastFanOut(ExecutorService executor, int queueSize, OverflowPolicy overflowPolicy,
+                           ClientCall resyncCall, Consumer<WhiteboardClientInterface> evictHandler) {
+        this.executor = executor;
+        this.queueSize = queueSize;
+        this.overflowPolicy = overflowPolicy;
+        this.resyncCall = resyncCall;
+        this.evictHandler = evictHandler;
+    }
+
+    public void setDeliveryListener(DeliveryListener deliveryListener) {
+        this.deliveryListener = deliveryListener;
+    }
+
+    public void register(WhiteboardClientInterface client) {
+        channels.putIfAbsent(client, new ClientChannel(client));
+    }
+
+    public void unregister(WhiteboardClientInterface client) {
+        ClientChannel channel = channels.remove(client);
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    // Queue a call that changes the board (draw, clear, snapshot) for every client
+    public void broadcastBoard(ClientCall call) {
+        broadcastBoard(call, 0);
+    }
+
+    // payloadBytes is only passed on to the delivery listener, e.g. to count bytes sent per client
+    public void broadcastBoard(ClientCall call, int payloadBytes) {
+        for (ClientChannel channel : channels.values()) {
+            channel.enqueue(call, true, false, payloadBytes);
+        }
+    }
+
+    // Queue a stroke or text preview for every client, which a full queue may drop
+    public void broadcastPreview(ClientCall call, int payloadBytes) {
+        for (ClientChannel channel : channels.values()) {
+            channel.enqueue(call, true, true, payloadBytes);
+        }
+    }
+
+    // Queue any other call (chat, messages) for every client
+    public void broadcast(ClientCall call) {
+        broadcast(call, 0);
+    }
+
+    public void broadcast(ClientCall call, int payloadBytes) {
+        for (ClientChannel channel : channels.values()) {
+            channel.enqueue(call, false, false, payloadBytes);
+        }
+    }
+
+    public void send(WhiteboardClientInterface client, ClientCall call) {
+        ClientChannel channel = channels.get(client);
+        if (channel != null) {
+            channel.enqueue(call, false, false, 0);
+        }
+    }
+
+    public int queueDepth(WhiteboardClientInterface client) {
+        ClientChannel channel = channels.get(client);
+        return channel == null ? 0 : channel.depth();
+    }
+
+    // Drops every pending call; calls already running finish on the executor
+    public void shutdown() {
+        for (ClientChannel channel : channels.values()) {
+            channel.close();
+        }
+        channels.clear();
+    }
+
+    private static class PendingCall {
+        final ClientCall call;
+        final boolean board;
+        final int payloadBytes;
+        final long queuedAt = System.nanoTime();
+
+        PendingCall(ClientCall call, boolean board, int payloadBytes) {
+            this.call = call;
+            this.board = board;
+            this.payloadBytes = payloadBytes;
+        }
+    }
+
+    private class ClientChannel implements Runnable {
+        private final WhiteboardClientInterface client;
+        private final ArrayDeque<PendingCall> queue = new ArrayDeque<>();
+        // True while a drain task for this client is queued or running
+        private boolean scheduled = false;
+        private boolean closed = false;
+
+        ClientChannel(WhiteboardClientInterface client) {
+            this.client = client;
+        }
+
+        void enqueue(ClientCall call, boolean board, boolean preview, int payloadBytes) {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                if (queue.size() < queueSize) {
+                    add(new PendingCall(call, board, payloadBytes));
+                    return;
+                }
+                if (overflowPolicy == OverflowPolicy.DROP && preview) {
+                    return;
+                }
+                switch (overflowPolicy) {
+                    case DROP:
+                    case COALESCE:
+                        // Replace every pending board update, and this one, with a single snapshot
+                        if (dropBoardCalls() || board) {
+                            add(new PendingCall(resyncCall, true, 0));
+                        }
+                        if (!board && queue.size() < queueSize) {
+                            add(new PendingCall(call, false, payloadBytes));
+                        }
+                        return;
+                    case EVICT:
+                        closed = true;
+                        queue.clear();
+                        break;
+                }
+            }
+            channels.remove(client, this);
+            evictHandler.accept(client);
+        }
+
+        private void add(PendingCall pending) {
+            queue.add(pending);
+            if (!scheduled) {
+                scheduled = true;
+                executor.execute(this);
+            }
+        }
+
+        private boolean dropBoardCalls() {
+            boolean dropped = false;
+            Iterator<PendingCall> iterator = queue.iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().board) {
+                    iterator.remove();
+                    dropped = true;
+                }
+            }
+            return dropped;
+        }
+
+        synchronized int depth() {
+            return queue.size();
+        }
+
+        synchronized void close() {
+            closed = true;
+            queue.clear();
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                PendingCall pending;
+                synchronized (this) {
+                    pending = queue.poll();
+                    if (pending == null) {
+                        scheduled = false;
+                        return;
+                    }
+                }
+                DeliveryListener listener = deliveryListener;
+                try {
+                    pending.call.deliver(client);
+                    if (listener != null) {
+                        listener.delivered(client, System.nanoTime() - pending.queuedAt, pending.payloadBytes);
+                    }
+                } catch (RemoteException e) {
+                    if (listener != null) {
+                        listener.failed(client, e);
+                    } else {
+                        e.printStackTrace();
+                    }
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+}
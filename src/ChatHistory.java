@@ -0,0 +1,24 @@
+import java.io.Serializable;
+import java.util.List;
+
+// One page of chat messages, oldest first
+public class ChatHistory implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final List<ChatMessage> messages;
+    // True if older messages than this page are still kept by the server
+    private final boolean hasOlder;
+
+    public ChatHistory(List<ChatMessage> messages, boolean hasOlder) {
+        this.messages = messages;
+        this.hasOlder = hasOlder;
+    }
+
+    public List<ChatMessage> getMessages() {
+        return messages;
+    }
+
+    public boolean hasOlder() {
+        return hasOlder;
+    }
+}
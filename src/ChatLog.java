@@ -0,0 +1,37 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Chat messages in a ring buffer that keeps only the most recent ones. Every message gets the next
+// sequence number, so clients can apply them one at a time and page back through what is retained.
+public class ChatLog {
+    private final ChatMessage[] ring;
+    // Sequence number of the last message added, 0 if none
+    private long lastSequence = 0;
+
+    public ChatLog(int retention) {
+        ring = new ChatMessage[Math.max(1, retention)];
+    }
+
+    // onPublish runs in sequence order, so messages can be forwarded to clients in order
+    public synchronized ChatMessage append(String text, Consumer<ChatMessage> onPublish) {
+        ChatMessage message = new ChatMessage(++lastSequence, text);
+        ring[(int) ((lastSequence - 1) % ring.length)] = message;
+        if (onPublish != null) {
+            onPublish.accept(message);
+        }
+        return message;
+    }
+
+    // Up to limit messages older than beforeSequence, oldest first
+    public synchronized ChatHistory page(long beforeSequence, int limit) {
+        long oldest = Math.max(1, lastSequence - ring.length + 1);
+        long end = Math.min(beforeSequence - 1, lastSequence);
+        long start = Math.max(oldest, end - Math.max(0, limit) + 1);
+        List<ChatMessage> messages = new ArrayList<>();
+        for (long sequence = start; sequence <= end; sequence++) {
+            messages.add(ring[(int) ((sequence - 1) % ring.length)]);
+        }
+        return new ChatHistory(messages, start > oldest);
+    }
+}
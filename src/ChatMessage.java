@@ -0,0 +1,21 @@
+import java.io.Serializable;
+
+public class ChatMessage implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final long sequence;
+    private final String text;
+
+    public ChatMessage(long sequence, String text) {
+        this.sequence = sequence;
+        this.text = text;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public String getText() {
+        return text;
+    }
+}
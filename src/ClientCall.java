@@ -0,0 +1,6 @@
+import java.rmi.RemoteException;
+
+// One remote call to be made on a client by the fan-out
+public interface ClientCall {
+    void deliver(WhiteboardClientInterface client) throws RemoteException;
+}
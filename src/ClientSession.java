@@ -0,0 +1,355 @@
+import java.rmi.AccessException;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// What one client talks to after joining a board through the BoardManager. Every draw and chat call goes
+// through the board's AdmissionControl first, with this client's own token buckets, so one client
+// flooding the board slows down only itself.
+//
+// Stroke and text previews over the limit are held here instead of being sent to the peers. The next
+// preview that gets through takes the held points along, simplified, or the whole text typed so far; a
+// commit sends whatever is still held. A one-shot shape over the limit is refused once it has waited
+// WhiteboardConfig.admissionMaxWaitMillis(), and the call returns 0 or no sequence numbers as it does
+// when nothing was added. So is the commit of a stroke or text block none of whose previews got through,
+// which the peers never saw being drawn.
+public class ClientSession extends UnicastRemoteObject implements WhiteboardServerInterface {
+    // Strokes and text blocks one client may have open at once. A person draws one stroke and types one
+    // block at a time, the rest are calls still on their way; past this the oldest is discarded.
+    private static final int MAX_OPEN = 16;
+    private static final long[] NONE = new long[0];
+
+    private final WhiteboardServer board;
+    private final WhiteboardClientInterface client;
+    private final AdmissionControl admission;
+    private final AdmissionControl.Session limits;
+    private final BoardMetrics metrics;
+    // The maps and sets below only hold ids that are in openStrokes or openTexts, so they are capped at
+    // MAX_OPEN entries too, and lose the oldest one with it.
+    // Stroke points not sent to the peers yet, by stroke id
+    private final Map<Long, PendingStroke> heldStrokes = new ConcurrentHashMap<>();
+    // Strokes with at least one preview the peers were sent, whose commit is not charged as a new shape
+    private final Set<Long> previewedStrokes = ConcurrentHashMap.newKeySet();
+    // What this client has typed into each open text block, by text id
+    private final Map<Long, PendingText> texts = new ConcurrentHashMap<>();
+    // Text blocks with edits the peers have not seen yet
+    private final Set<Long> heldTexts = ConcurrentHashMap.newKeySet();
+    // Text blocks with at least one edit the peers were sent
+    private final Set<Long> previewedTexts = ConcurrentHashMap.newKeySet();
+    // Strokes and text blocks this client started and has not committed, oldest first, so the board can
+    // forget them when the client leaves; each guarded by itself
+    private final LinkedHashSet<Long> openStrokes = new LinkedHashSet<>();
+    private final LinkedHashSet<Long> openTexts = new LinkedHashSet<>();
+
+    public ClientSession(WhiteboardServer board, WhiteboardClientInterface client) throws RemoteException {
+        this.board = board;
+        this.client = client;
+        this.admission = board.admission();
+        this.limits = admission.newSession();
+        this.metrics = board.metrics();
+    }
+
+    // Anyone else joins through the BoardManager, which checks their join was granted
+    @Override
+    public void addClient(WhiteboardClientInterface client, String userName) throws RemoteException {
+        throw new AccessException("Join through BoardManagerInterface.addClient");
+    }
+
+    // A session only ever removes its own client; the board then closes the session
+    @Override
+    public void removeClient(WhiteboardClientInterface client) throws RemoteException {
+        heldStrokes.clear();
+        previewedStrokes.clear();
+        texts.clear();
+        heldTexts.clear();
+        previewedTexts.clear();
+        board.removeClient(this.client);
+    }
+
+    // Stops the client reaching the board through this session, and discards what it left unfinished
+    void close() {
+        Transport.unexport(this, client);
+        try {
+            board.discardPreviews(takeAll(openStrokes), takeAll(openTexts));
+        } catch (RemoteException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Only this client's own strokes and text blocks
+    @Override
+    public void discardPreviews(long[] strokeIds, long[] textIds) throws RemoteException {
+        long[] strokes = closedOf(openStrokes, strokeIds);
+        long[] blocks = closedOf(openTexts, textIds);
+        for (long strokeId : strokes) {
+            forgetStroke(strokeId);
+        }
+        for (long textId : blocks) {
+            forgetText(textId);
+        }
+        board.discardPreviews(strokes, blocks);
+    }
+
+    private void forgetStroke(long strokeId) {
+        heldStrokes.remove(strokeId);
+        previewedStrokes.remove(strokeId);
+    }
+
+    private void forgetText(long textId) {
+        texts.remove(textId);
+        heldTexts.remove(textId);
+        previewedTexts.remove(textId);
+    }
+
+    // Records an id as open and returns the oldest one if it had to make room for it, 0 otherwise
+    private static long opened(LinkedHashSet<Long> open, long id) {
+        synchronized (open) {
+            if (!open.add(id) || open.size() <= MAX_OPEN) {
+                return 0;
+            }
+            Iterator<Long> oldest = open.iterator();
+            long dropped = oldest.next();
+            oldest.remove();
+            return dropped;
+        }
+    }
+
+    private static boolean closed(LinkedHashSet<Long> open, long id) {
+        synchronized (open) {
+            return open.remove(id);
+        }
+    }
+
+    // The ids that were open, which are closed now
+    private static long[] closedOf(LinkedHashSet<Long> open, long[] ids) {
+        long[] closed = new long[ids.length];
+        int count = 0;
+        for (long id : ids) {
+            if (closed(open, id)) {
+                closed[count++] = id;
+            }
+        }
+        return Arrays.copyOf(closed, count);
+    }
+
+    private static long[] takeAll(LinkedHashSet<Long> open) {
+        synchronized (open) {
+            long[] ids = new long[open.size()];
+            int i = 0;
+            for (long id : open) {
+                ids[i++] = id;
+            }
+            open.clear();
+            return ids;
+        }
+    }
+
+    // DRAWING
+
+    @Override
+    public long broadcastDrawLine(int x1, int y1, int x2, int y2, int color) throws RemoteException {
+        return admitShape() ? board.broadcastDrawLine(x1, y1, x2, y2, color) : 0;
+    }
+
+    @Override
+    public long broadcastDrawCircle(int x, int y, int diameter, int color) throws RemoteException {
+        return admitShape() ? board.broadcastDrawCircle(x, y, diameter, color) : 0;
+    }
+
+    @Override
+    public long broadcastDrawOval(int x, int y, int width, int height, int color) throws RemoteException {
+        return admitShape() ? board.broadcastDrawOval(x, y, width, height, color) : 0;
+    }
+
+    @Override
+    public long broadcastDrawText(String text, int x, int y, int color) throws RemoteException {
+        return admitShape() ? board.broadcastDrawText(text, x, y, color) : 0;
+    }
+
+    @Override
+    public long broadcastDrawRectangle(int x, int y, int width, int height, int color) throws RemoteException {
+        return admitShape() ? board.broadcastDrawRectangle(x, y, width, height, color) : 0;
+    }
+
+    @Override
+    public void clear() throws RemoteException {
+        if (admitShape()) {
+            board.clear();
+        }
+    }
+
+    @Override
+    public long[] eraseShapes(long[] sequences) throws RemoteException {
+        return admitShape() ? board.eraseShapes(sequences) : new long[0];
+    }
+
+    @Override
+    public long[] restoreShapes(long[] sequences) throws RemoteException {
+        return admitShape() ? board.restoreShapes(sequences) : new long[sequences.length];
+    }
+
+    @Override
+    public void appendStroke(long strokeId, int[] points, int color) throws RemoteException {
+        long dropped = opened(openStrokes, strokeId);
+        if (dropped != 0) {
+            forgetStroke(dropped);
+            board.discardPreviews(new long[] {dropped}, NONE);
+        }
+        if (points.length % 2 != 0) {
+            board.appendStroke(strokeId, points, color);
+            return;
+        }
+        if (admission.admitPreview(limits) == AdmissionControl.Result.HELD) {
+            heldStrokes.computeIfAbsent(strokeId, id -> new PendingStroke(color)).append(points);
+            metrics.throttled(client, "preview-held");
+            return;
+        }
+        PendingStroke held = heldStrokes.remove(strokeId);
+        if (held != null) {
+            // Everything held back goes out as one preview, without the points that add no detail
+            held.append(points);
+            points = StrokeSimplifier.simplify(held.getPoints(), WhiteboardConfig.strokeTolerance());
+        }
+        previewedStrokes.add(strokeId);
+        board.appendStroke(strokeId, points, color);
+    }
+
+    // If the peers already watched the stroke being drawn, its commit is never refused; otherwise it is
+    // admitted like any other new shape
+    @Override
+    public long commitStroke(long strokeId) throws RemoteException {
+        if (!closed(openStrokes, strokeId)) {
+            // Not a stroke this client has open
+            return 0;
+        }
+        boolean previewed = previewedStrokes.remove(strokeId);
+        PendingStroke held = heldStrokes.remove(strokeId);
+        if (previewed) {
+            admission.admitCommit(limits);
+        } else if (!admitShape()) {
+            board.discardPreviews(new long[] {strokeId}, NONE);
+            return 0;
+        }
+        if (held != null) {
+            board.appendStroke(strokeId, StrokeSimplifier.simplify(held.getPoints(), WhiteboardConfig.strokeTolerance()), held.getColor());
+        }
+        return board.commitStroke(strokeId);
+    }
+
+    @Override
+    public void openText(long textId, int x, int y, int color) throws RemoteException {
+        long dropped = opened(openTexts, textId);
+        if (dropped != 0) {
+            forgetText(dropped);
+            board.discardPreviews(NONE, new long[] {dropped});
+        }
+        texts.putIfAbsent(textId, new PendingText(x, y, color));
+        board.openText(textId, x, y, color);
+    }
+
+    @Override
+    public void appendText(long textId, int keep, String text) throws RemoteException {
+        PendingText typed = texts.get(textId);
+        if (typed == null) {
+            // Not a block this client has open
+            return;
+        }
+        String full = typed.edit(keep, text);
+        if (admission.admitPreview(limits) == AdmissionControl.Result.HELD) {
+            heldTexts.add(textId);
+            metrics.throttled(client, "preview-held");
+            return;
+        }
+        previewedTexts.add(textId);
+        if (heldTexts.remove(textId)) {
+            // The board has not seen the held edits, so send it all of the text
+            board.appendText(textId, 0, full);
+        } else {
+            board.appendText(textId, keep, text);
+        }
+    }
+
+    // Admitted as commitStroke() admits a stroke
+    @Override
+    public long commitText(long textId) throws RemoteException {
+        if (!closed(openTexts, textId)) {
+            return 0;
+        }
+        boolean previewed = previewedTexts.remove(textId);
+        PendingText typed = texts.remove(textId);
+        boolean held = heldTexts.remove(textId);
+        if (previewed) {
+            admission.admitCommit(limits);
+        } else if (!admitShape()) {
+            board.discardPreviews(NONE, new long[] {textId});
+            return 0;
+        }
+        if (typed != null && held) {
+            board.appendText(textId, 0, typed.getText());
+        }
+        return board.commitText(textId);
+    }
+
+    private boolean admitShape() {
+        AdmissionControl.Result result = admission.admitShape(limits);
+        if (result == AdmissionControl.Result.DELAYED) {
+            metrics.throttled(client, "delayed");
+        } else if (result == AdmissionControl.Result.REJECTED) {
+            metrics.throttled(client, "rejected");
+        }
+        return result != AdmissionControl.Result.REJECTED;
+    }
+
+    // CHAT
+
+    @Override
+    public void broadcastMessage(String message) throws RemoteException {
+        if (admitChat()) {
+            board.broadcastMessage(message);
+        }
+    }
+
+    @Override
+    public void addChatMessage(String userName, String message) throws RemoteException {
+        if (admitChat()) {
+            board.addChatMessage(userName, message);
+        }
+    }
+
+    private boolean admitChat() {
+        AdmissionControl.Result result = admission.admitChat(limits);
+        if (result == AdmissionControl.Result.DELAYED) {
+            metrics.throttled(client, "chat-delayed");
+        } else if (result == AdmissionControl.Result.REJECTED) {
+            metrics.throttled(client, "chat-dropped");
+        }
+        return result != AdmissionControl.Result.REJECTED;
+    }
+
+    // READING, not limited
+
+    @Override
+    public BoardSnapshot getSnapshot() throws RemoteException {
+        return board.getSnapshot();
+    }
+
+    @Override
+    public BoardChunk getBoardChunk(long afterSequence, int limit) throws RemoteException {
+        return board.getBoardChunk(afterSequence, limit);
+    }
+
+    @Override
+    public ChatHistory getChatHistory(long beforeSequence, int limit) throws RemoteException {
+        return board.getChatHistory(beforeSequence, limit);
+    }
+
+    @Override
+    public boolean requestConnection(String userName) throws RemoteException {
+        return board.requestConnection(userName);
+    }
+}
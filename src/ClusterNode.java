@@ -0,0 +1,38 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// A headless follower node of a cluster. It serves the same boards as the leader (a normal
+// WhiteboardServer) to clients that join it, fanning out to them itself, while every write goes to the
+// leader, which orders it and sends it back to every node. Joins are still approved by the leader's host.
+public class ClusterNode {
+
+    private ClusterNode() {
+    }
+
+    // Starts a follower of the leader at leaderHost:leaderPort and serves it on port, both over transport
+    public static BoardManager startFollower(Transport transport, int port, String leaderHost, int leaderPort, String nodeName) throws Exception {
+        BoardManagerInterface leader = (BoardManagerInterface) transport.lookup(leaderHost, leaderPort, "WhiteboardBoards");
+        BoardManager manager = new BoardManager(new ServerExecutors(nodeName), null, leader, nodeName);
+        transport.bind(port, "WhiteboardBoards", manager);
+        manager.start();
+        return manager;
+    }
+
+    public static void main(String[] commandLine) {
+        List<String> options = new ArrayList<>(Arrays.asList(commandLine));
+        Transport transport = Transport.fromArgs(options);
+        String[] args = options.toArray(new String[0]);
+        if (args.length < 4) {
+            System.out.println("Usage: java -Dwhiteboard.cluster.secret=<secret> ClusterNode <port> <leaderHost> <leaderPort> <nodeName> [--transport rmi|nio]");
+            System.exit(1);
+        }
+        try {
+            startFollower(transport, Integer.parseInt(args[0]), args[1], Integer.parseInt(args[2]), args[3]);
+            System.out.println("Cluster node " + args[3] + " following " + args[1] + ":" + args[2]);
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+import java.awt.Color;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+
+// How a follower node's board listens to the leader's copy of the same board. The leader treats it
+// as one more client, so it gets the leader's ordered, back-pressured fan-out and heartbeats for free;
+// everything it receives is applied to the follower's log and passed on to the follower's own clients.
+public class ClusterRelay extends UnicastRemoteObject implements WhiteboardClientInterface {
+    private final WhiteboardServer board;
+    // Last time the leader called, to notice when the leader has dropped this node
+    private volatile long lastHeard = System.currentTimeMillis();
+
+    public ClusterRelay(WhiteboardServer board) throws RemoteException {
+        this.board = board;
+    }
+
+    public long getLastHeard() {
+        return lastHeard;
+    }
+
+    @Override
+    public void draw(ColoredShape shape) throws RemoteException {
+        lastHeard = System.currentTimeMillis();
+        board.applyReplicated(shape);
+    }
+
+    @Override
+    public void resync() throws RemoteException {
+        lastHeard = System.currentTimeMillis();
+        board.pullBoard();
+    }
+
+    // Erasing a shape twice, or one a pull already left out, does nothing, so these apply as they come
+    @Override
+    public void erase(long[] sequences) throws RemoteException {
+        lastHeard = System.currentTimeMillis();
+        board.applyErased(sequences);
+    }
+
+    // Taken from the leader rather than applied here: a clear that arrives after a pull which already
+    // saw it would otherwise wipe shapes drawn since
+    @Override
+    public void clear() throws RemoteException {
+        lastHeard = System.currentTimeMillis();
+        board.pullBoard();
+    }
+
+    @Override
+    public void previewStroke(long strokeId, int[] points, int color) {
+        lastHeard = System.currentTimeMillis();
+        board.relayPreview(client -> client.previewStroke(strokeId, points, color));
+    }
+
+    @Override
+    public void previewText(long textId, String text, int x, int y, int color) {
+        lastHeard = System.currentTimeMillis();
+        ClientCall call = client -> client.previewText(textId, text, x, y, color);
+        if (text.isEmpty()) {
+            // Takes down a block nothing was typed into, no commit will follow to make up for losing it
+            board.relayBoard(call);
+        } else {
+            board.relayPreview(call);
+        }
+    }
+
+    @Override
+    public void receiveMessage(String message) {
+        lastHeard = System.currentTimeMillis();
+        board.relay(client -> client.receiveMessage(message));
+    }
+
+    @Override
+    public void receiveChatMessage(ChatMessage message) {
+        lastHeard = System.currentTimeMillis();
+        board.relay(client -> client.receiveChatMessage(message));
+    }
+
+    @Override
+    public boolean ping() {
+        lastHeard = System.currentTimeMillis();
+        return true;
+    }
+
+    @Override
+    public void closeApplication() {
+    }
+
+    @Override
+    public void setCurrentColor(Color color) {
+    }
+}
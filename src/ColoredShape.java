@@ -1,5 +1,6 @@
 
 import java.awt.*;
+import java.io.ObjectStreamException;
 import java.io.Serializable;
 
 public class ColoredShape implements Serializable {
@@ -8,6 +9,10 @@ public class ColoredShape implements Serializable {
     private Shape shape;
     private Color color;
     private String text;
+    // Position of this shape in the server's drawing log, 0 if not yet broadcast
+    private long sequence;
+    // Id of the live preview (e.g. an unfinished stroke) this shape replaces, 0 if none
+    private long previewId;
 
     public ColoredShape(Shape shape, Color color, String text) {
         this.shape = shape;
@@ -29,4 +34,25 @@ public class ColoredShape implements Serializable {
     public void setText(String text) {
         this.text = text;
     }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    public long getPreviewId() {
+        return previewId;
+    }
+
+    public void setPreviewId(long previewId) {
+        this.previewId = previewId;
+    }
+
+    // Shapes are written in the compact EncodedShape form; files saved before it still read with the default form
+    private Object writeReplace() throws ObjectStreamException {
+        return new EncodedShape(this);
+    }
 }
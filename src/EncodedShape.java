@@ -0,0 +1,40 @@
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.ObjectStreamException;
+
+// Serialized form of a ColoredShape, written with ShapeCodec instead of default serialization
+public class EncodedShape implements Externalizable {
+    private static final long serialVersionUID = 1L;
+
+    private ColoredShape shape;
+
+    // Required by Externalizable
+    public EncodedShape() {
+    }
+
+    EncodedShape(ColoredShape shape) {
+        this.shape = shape;
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        out.writeByte(ShapeCodec.VERSION);
+        new ShapeCodec().write(out, shape);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        int version = in.readUnsignedByte();
+        if (version != ShapeCodec.VERSION) {
+            throw new InvalidObjectException("Unsupported shape encoding version " + version);
+        }
+        shape = new ShapeCodec().read(in);
+    }
+
+    private Object readResolve() throws ObjectStreamException {
+        return shape;
+    }
+}
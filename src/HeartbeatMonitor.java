@@ -0,0 +1,164 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// Detects dead clients off the Swing thread. Every interval each client that has not been heard from
+// is pinged on its own thread, so a slow client never delays the others. Any successful call to a client
+// (e.g. a broadcast) counts as a heartbeat. A client is evicted after maxMissed heartbeats in a row
+// fail or time out.
+public class HeartbeatMonitor {
+
+    // Told how long every answered ping took
+    public interface PingListener {
+        void answered(WhiteboardClientInterface client, long roundTripNanos);
+    }
+
+    private final Map<WhiteboardClientInterface, ClientState> states = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService pingExecutor;
+    private final long intervalNanos;
+    private final long timeoutNanos;
+    private final int maxMissed;
+    private final Consumer<WhiteboardClientInterface> evictHandler;
+    private ScheduledFuture<?> sweeps;
+    private volatile PingListener pingListener;
+
+    // The executors may be shared with other monitors; stop() leaves them running
+    public HeartbeatMonitor(ScheduledExecutorService scheduler, ExecutorService pingExecutor,
+                            long intervalMillis, long timeoutMillis, int maxMissed, Consumer<WhiteboardClientInterface> evictHandler) {
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        this.maxMissed = maxMissed;
+        this.evictHandler = evictHandler;
+        this.scheduler = scheduler;
+        this.pingExecutor = pingExecutor;
+    }
+
+    public void setPingListener(PingListener pingListener) {
+        this.pingListener = pingListener;
+    }
+
+    public synchronized void start() {
+        if (sweeps != null) {
+            return;
+        }
+        long period = Math.max(1, TimeUnit.NANOSECONDS.toMillis(intervalNanos));
+        sweeps = scheduler.scheduleWithFixedDelay(this::sweep, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (sweeps != null) {
+            sweeps.cancel(false);
+        }
+        states.clear();
+    }
+
+    public void register(WhiteboardClientInterface client) {
+        states.putIfAbsent(client, new ClientState());
+    }
+
+    public void unregister(WhiteboardClientInterface client) {
+        states.remove(client);
+    }
+
+    // The client answered a call, so it is alive
+    public void recordSuccess(WhiteboardClientInterface client) {
+        ClientState state = states.get(client);
+        if (state != null) {
+            state.heard(System.nanoTime());
+        }
+    }
+
+    // A call to the client failed; counts as a missed heartbeat
+    public void recordFailure(WhiteboardClientInterface client) {
+        ClientState state = states.get(client);
+        if (state != null && state.missed() >= maxMissed) {
+            evict(client);
+        }
+    }
+
+    private void sweep() {
+        long now = System.nanoTime();
+        for (Map.Entry<WhiteboardClientInterface, ClientState> entry : states.entrySet()) {
+            WhiteboardClientInterface client = entry.getKey();
+            ClientState state = entry.getValue();
+            synchronized (state) {
+                if (state.pingStarted != 0) {
+                    // A ping that has not answered within the timeout is a miss; keep waiting for it though
+                    if (now - state.pingStarted >= timeoutNanos) {
+                        state.pingStarted = now;
+                        state.missedInRow++;
+                        if (state.missedInRow >= maxMissed) {
+                            evict(client);
+                        }
+                    }
+                    continue;
+                }
+                if (now - state.lastHeard < intervalNanos) {
+                    // Heard from recently through another call, no ping needed
+                    continue;
+                }
+                state.pingStarted = now;
+            }
+            try {
+                pingExecutor.execute(() -> ping(client, state));
+            } catch (RuntimeException e) {
+                // Executor stopped
+                return;
+            }
+        }
+    }
+
+    private void ping(WhiteboardClientInterface client, ClientState state) {
+        boolean alive;
+        long sent = System.nanoTime();
+        try {
+            alive = client.ping();
+        } catch (Exception e) {
+            alive = false;
+        }
+        PingListener listener = pingListener;
+        if (alive && listener != null) {
+            listener.answered(client, System.nanoTime() - sent);
+        }
+        int missed;
+        synchronized (state) {
+            state.pingStarted = 0;
+            if (alive) {
+                state.lastHeard = System.nanoTime();
+                state.missedInRow = 0;
+                return;
+            }
+            missed = ++state.missedInRow;
+        }
+        if (missed >= maxMissed) {
+            evict(client);
+        }
+    }
+
+    private void evict(WhiteboardClientInterface client) {
+        if (states.remove(client) != null) {
+            evictHandler.accept(client);
+        }
+    }
+
+    private static class ClientState {
+        long lastHeard = System.nanoTime();
+        // When the ping in flight was sent (or last counted as missed), 0 if none
+        long pingStarted = 0;
+        int missedInRow = 0;
+
+        synchronized void heard(long now) {
+            lastHeard = now;
+            missedInRow = 0;
+        }
+
+        synchronized int missed() {
+            return ++missedInRow;
+        }
+    }
+}
@@ -0,0 +1,9 @@
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+// Told whether it may join a board it asked for with BoardManagerInterface.requestJoin. The answer can
+// take as long as the host takes to decide; once accepted, the client joins with addClient and the grant,
+// which is good for one join and is 0 if the join was denied.
+public interface JoinListener extends Remote {
+    void joinAnswered(String boardId, boolean accepted, long grant) throws RemoteException;
+}
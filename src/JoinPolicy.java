@@ -0,0 +1,40 @@
+import java.util.Set;
+
+// Decides whether someone may join a board: straight away, never, or once the host or an admin has
+// approved it. The BoardManager queues the joins that have to be approved in its JoinRequests.
+public interface JoinPolicy {
+
+    enum Decision {
+        ACCEPT,
+        REJECT,
+        ASK;
+    }
+
+    Decision decide(String userName, String boardId);
+
+    static JoinPolicy acceptAll() {
+        return (userName, boardId) -> Decision.ACCEPT;
+    }
+
+    // Accepts the listed user names, everyone else gets otherwise
+    static JoinPolicy allowlist(Set<String> userNames, Decision otherwise) {
+        return (userName, boardId) -> userNames.contains(userName) ? Decision.ACCEPT : otherwise;
+    }
+
+    // ask: the listed users join straight away, the host or an admin approves everyone else
+    // accept: anyone joins
+    // allowlist: only the listed users join
+    static JoinPolicy fromConfig() {
+        Set<String> allowed = WhiteboardConfig.joinAllowlist();
+        switch (WhiteboardConfig.joinPolicy().trim().toLowerCase()) {
+            case "ask":
+                return allowlist(allowed, Decision.ASK);
+            case "accept":
+                return acceptAll();
+            case "allowlist":
+                return allowlist(allowed, Decision.REJECT);
+            default:
+                throw new IllegalArgumentException("Unknown join policy " + WhiteboardConfig.joinPolicy() + ", expected ask, accept or allowlist");
+        }
+    }
+}
@@ -0,0 +1,206 @@
+import java.rmi.RemoteException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// The joins of one server process, and those waiting for the host or an admin to approve them.
+//
+// A join is answered by calling the client's JoinListener back from a thread of this process, never by
+// holding the call that asked, so a host taking their time ties up no transport thread. A request nobody
+// answers within WhiteboardConfig.joinTimeoutMillis() is denied.
+//
+// An accepted join is told a random grant, which the BoardManager's addClient redeems once, for the same
+// user and board. A grant that is not used within the join timeout expires.
+public class JoinRequests implements JoinRequestsMXBean {
+
+    // Shows a waiting join to whoever approves it; must not block
+    public interface Approver {
+        void ask(Pending request);
+    }
+
+    public static class Pending {
+        private final long id;
+        private final String userName;
+        private final String boardId;
+        private final long requestedAt = System.nanoTime();
+        final JoinListener listener;
+        ScheduledFuture<?> timeout;
+
+        Pending(long id, String userName, String boardId, JoinListener listener) {
+            this.id = id;
+            this.userName = userName;
+            this.boardId = boardId;
+            this.listener = listener;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getUserName() {
+            return userName;
+        }
+
+        public String getBoardId() {
+            return boardId;
+        }
+
+        public long getWaitingMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - requestedAt);
+        }
+    }
+
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService answers;
+    private final String hostUserName;
+    private final long timeoutMillis;
+    private volatile JoinPolicy policy;
+    // Null leaves approving to the JMX operations
+    private volatile Approver approver;
+    // In the order asked
+    private final Map<Long, Pending> pending = new ConcurrentSkipListMap<>();
+    private final AtomicLong ids = new AtomicLong();
+    // Grants handed out and not redeemed yet
+    private final Map<Long, Grant> grants = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+
+    private static class Grant {
+        final String userName;
+        final String boardId;
+
+        Grant(String userName, String boardId) {
+            this.userName = userName;
+            this.boardId = boardId;
+        }
+    }
+
+    public JoinRequests(ScheduledExecutorService scheduler, ExecutorService answers, String hostUserName, JoinPolicy policy, long timeoutMillis) {
+        this.scheduler = scheduler;
+        this.answers = answers;
+        this.hostUserName = hostUserName;
+        this.policy = policy;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public void setPolicy(JoinPolicy policy) {
+        this.policy = policy;
+    }
+
+    public void setApprover(Approver approver) {
+        this.approver = approver;
+    }
+
+    // Answers now if the policy can, otherwise queues the request for approval
+    public void request(JoinListener listener, String userName, String boardId) {
+        JoinPolicy.Decision decision = decide(userName, boardId);
+        if (decision != JoinPolicy.Decision.ASK) {
+            answer(listener, userName, boardId, decision == JoinPolicy.Decision.ACCEPT);
+            return;
+        }
+        Pending request = new Pending(ids.incrementAndGet(), userName, boardId, listener);
+        request.timeout = scheduler.schedule(() -> {
+            if (pending.remove(request.getId(), request)) {
+                System.out.println("Join request " + request.getId() + " from " + userName + " timed out");
+                answer(listener, userName, boardId, false);
+            }
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+        pending.put(request.getId(), request);
+        Approver current = approver;
+        if (current != null) {
+            current.ask(request);
+        } else {
+            System.out.println("Join request " + request.getId() + ": " + userName + " wants to join board " + boardId
+                    + ", approve or deny it over JMX (whiteboard:type=JoinRequests)");
+        }
+    }
+
+    // For callers that cannot wait: whether the join is accepted without asking anyone
+    public boolean acceptsNow(String userName, String boardId) {
+        return decide(userName, boardId) == JoinPolicy.Decision.ACCEPT;
+    }
+
+    // Uses up a grant; false unless it was issued to userName for boardId and has not been used or expired
+    public boolean redeem(long grant, String userName, String boardId) {
+        Grant issued = grants.get(grant);
+        return issued != null && issued.userName.equals(userName) && issued.boardId.equals(boardId)
+                && grants.remove(grant, issued);
+    }
+
+    @Override
+    public List<Pending> getPending() {
+        return new ArrayList<>(pending.values());
+    }
+
+    @Override
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    @Override
+    public boolean approve(long id) {
+        return close(id, true);
+    }
+
+    @Override
+    public boolean deny(long id) {
+        return close(id, false);
+    }
+
+    // Denies everything still waiting, e.g. when the server shuts down
+    public void denyAll() {
+        for (Long id : new ArrayList<>(pending.keySet())) {
+            deny(id);
+        }
+    }
+
+    // The host's own window joins without asking. A headless server has no window and no approver, so
+    // there anyone using the host's name is only let in by the policy, e.g. an allowlist entry.
+    private JoinPolicy.Decision decide(String userName, String boardId) {
+        if (approver != null && userName.equals(hostUserName)) {
+            return JoinPolicy.Decision.ACCEPT;
+        }
+        return policy.decide(userName, boardId);
+    }
+
+    private boolean close(long id, boolean accepted) {
+        Pending request = pending.remove(id);
+        if (request == null) {
+            return false;
+        }
+        request.timeout.cancel(false);
+        System.out.println("Join request " + id + " from " + request.getUserName() + (accepted ? " approved" : " denied"));
+        answer(request.listener, request.getUserName(), request.getBoardId(), accepted);
+        return true;
+    }
+
+    private void answer(JoinListener listener, String userName, String boardId, boolean accepted) {
+        long grant = accepted ? grant(userName, boardId) : 0;
+        answers.execute(() -> {
+            try {
+                listener.joinAnswered(boardId, accepted, grant);
+            } catch (RemoteException e) {
+                // The client gave up or went away
+                e.printStackTrace();
+            }
+        });
+    }
+
+    private long grant(String userName, String boardId) {
+        Grant issued = new Grant(userName, boardId);
+        long grant;
+        do {
+            grant = random.nextLong();
+        } while (grant == 0 || grants.putIfAbsent(grant, issued) != null);
+        long key = grant;
+        scheduler.schedule(() -> grants.remove(key, issued), timeoutMillis, TimeUnit.MILLISECONDS);
+        return grant;
+    }
+}
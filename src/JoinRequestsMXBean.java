@@ -0,0 +1,14 @@
+import java.util.List;
+
+// Joins waiting for approval, as whiteboard:type=JoinRequests,node=<node>. A headless server has nobody
+// to click a dialog, so an admin answers them here, e.g. from jconsole's Operations tab.
+public interface JoinRequestsMXBean {
+    List<JoinRequests.Pending> getPending();
+
+    int getPendingCount();
+
+    // False if there is no such request, e.g. it was answered or timed out already
+    boolean approve(long id);
+
+    boolean deny(long id);
+}
@@ -0,0 +1,10 @@
+// How the fan-out treats a client that cannot keep up with the board
+public enum OverflowPolicy {
+    // Discard new stroke and text previews, which the commit that follows makes good; any other call is
+    // handled as COALESCE does, since losing it would leave the client out of step without knowing
+    DROP,
+    // Replace the pending board updates with a single snapshot
+    COALESCE,
+    // Disconnect the client
+    EVICT;
+}
@@ -0,0 +1,34 @@
+import java.util.Arrays;
+
+// Points of a freehand stroke that is still being drawn
+public class PendingStroke {
+    // Coordinates a stroke may hold, x and y counted separately; the rest of a runaway stroke is dropped
+    static final int MAX_COORDINATES = 1 << 17;
+
+    private final int color;
+    private int[] points = new int[64];
+    private int size = 0;
+
+    public PendingStroke(int color) {
+        this.color = color;
+    }
+
+    // Returns how many of the coordinates fit, an even number
+    public synchronized int append(int[] morePoints) {
+        int count = Math.min(morePoints.length, MAX_COORDINATES - size) & ~1;
+        if (size + count > points.length) {
+            points = Arrays.copyOf(points, Math.min(MAX_COORDINATES, Math.max(points.length * 2, size + count)));
+        }
+        System.arraycopy(morePoints, 0, points, size, count);
+        size += count;
+        return count;
+    }
+
+    public synchronized int[] getPoints() {
+        return Arrays.copyOf(points, size);
+    }
+
+    public int getColor() {
+        return color;
+    }
+}
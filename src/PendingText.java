@@ -0,0 +1,35 @@
+// Text block that is still being typed
+public class PendingText {
+    private final int x, y;
+    private final int color;
+    private final StringBuilder text = new StringBuilder();
+
+    public PendingText(int x, int y, int color) {
+        this.x = x;
+        this.y = y;
+        this.color = color;
+    }
+
+    // Keeps the first keep characters and appends more, so a backspace arrives as a shorter keep
+    public synchronized String edit(int keep, String more) {
+        text.setLength(Math.max(0, Math.min(keep, text.length())));
+        text.append(more, 0, Math.min(more.length(), ShapeCodec.MAX_TEXT_LENGTH - text.length()));
+        return text.toString();
+    }
+
+    public synchronized String getText() {
+        return text.toString();
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    public int getColor() {
+        return color;
+    }
+}
@@ -0,0 +1,95 @@
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.io.Serializable;
+
+// A freehand stroke stored as one shape instead of one Line2D per mouse event
+public class Polyline2D implements Shape, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    // x0, y0, x1, y1, ...
+    private final int[] points;
+    // Built on first use; Path2D subclasses cannot be deserialized, so the points are what gets stored
+    private transient Path2D path;
+
+    public Polyline2D(int[] points) {
+        this.points = points;
+    }
+
+    public int[] getPoints() {
+        return points.clone();
+    }
+
+    public int getPointCount() {
+        return points.length / 2;
+    }
+
+    private Path2D path() {
+        if (path == null) {
+            Path2D.Double newPath = new Path2D.Double(Path2D.WIND_NON_ZERO, points.length / 2);
+            for (int i = 0; i + 1 < points.length; i += 2) {
+                if (i == 0) {
+                    newPath.moveTo(points[i], points[i + 1]);
+                } else {
+                    newPath.lineTo(points[i], points[i + 1]);
+                }
+            }
+            path = newPath;
+        }
+        return path;
+    }
+
+    @Override
+    public Rectangle getBounds() {
+        return path().getBounds();
+    }
+
+    @Override
+    public Rectangle2D getBounds2D() {
+        return path().getBounds2D();
+    }
+
+    @Override
+    public boolean contains(double x, double y) {
+        return path().contains(x, y);
+    }
+
+    @Override
+    public boolean contains(Point2D p) {
+        return path().contains(p);
+    }
+
+    @Override
+    public boolean intersects(double x, double y, double w, double h) {
+        return path().intersects(x, y, w, h);
+    }
+
+    @Override
+    public boolean intersects(Rectangle2D r) {
+        return path().intersects(r);
+    }
+
+    @Override
+    public boolean contains(double x, double y, double w, double h) {
+        return path().contains(x, y, w, h);
+    }
+
+    @Override
+    public boolean contains(Rectangle2D r) {
+        return path().contains(r);
+    }
+
+    @Override
+    public PathIterator getPathIterator(AffineTransform at) {
+        return path().getPathIterator(at);
+    }
+
+    @Override
+    public PathIterator getPathIterator(AffineTransform at, double flatness) {
+        return path().getPathIterator(at, flatness);
+    }
+}
@@ -0,0 +1,47 @@
+import java.rmi.NoSuchObjectException;
+import java.rmi.Remote;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Java RMI: one registry per port, and a connection from the server back to every client for callbacks
+public class RmiTransport implements Transport {
+    // RMI waits for a reply forever unless told otherwise. The property is read once, when RMI opens its
+    // first connection, and every connection opens through this class.
+    static {
+        if (System.getProperty("sun.rmi.transport.tcp.responseTimeout") == null) {
+            System.setProperty("sun.rmi.transport.tcp.responseTimeout", Long.toString(WhiteboardConfig.callTimeoutMillis()));
+        }
+    }
+
+    private final Map<Integer, Registry> registries = new ConcurrentHashMap<>();
+
+    @Override
+    public void bind(int port, String name, Remote object) throws Exception {
+        Registry registry = registries.get(port);
+        if (registry == null) {
+            registry = LocateRegistry.createRegistry(port);
+            registries.put(port, registry);
+        }
+        registry.bind(name, object);
+    }
+
+    @Override
+    public Remote lookup(String host, int port, String name) throws Exception {
+        return LocateRegistry.getRegistry(host, port).lookup(name);
+    }
+
+    @Override
+    public void close() {
+        for (Registry registry : registries.values()) {
+            try {
+                UnicastRemoteObject.unexportObject(registry, true);
+            } catch (NoSuchObjectException e) {
+                // Already unexported
+            }
+        }
+        registries.clear();
+    }
+}
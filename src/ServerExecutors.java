@@ -0,0 +1,63 @@
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Threads shared by every board hosted in one process, so the thread count does not grow with the
+// number of boards. Each board only queues work on them and never shuts them down itself.
+// The boards also report to the same metrics.
+public class ServerExecutors {
+    private final ExecutorService fanOut;
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService pings;
+    private final ServerMetrics metrics;
+
+    public ServerExecutors() {
+        this("server");
+    }
+
+    // node tells the metrics of this process apart from those of other nodes, e.g. in a cluster
+    public ServerExecutors(String node) {
+        this.fanOut = Executors.newFixedThreadPool(WhiteboardConfig.fanOutThreads(), daemon("whiteboard-fanout-"));
+        // Heartbeat sweeps and idle board checks; the work they start runs elsewhere
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(daemon("whiteboard-scheduler-"));
+        // At most one ping per client is in flight, so this grows to the number of clients at most,
+        // plus a thread per join being answered
+        this.pings = Executors.newCachedThreadPool(daemon("whiteboard-ping-"));
+        this.metrics = new ServerMetrics(node);
+    }
+
+    // Runs the per-client senders of every board's fan-out
+    public ExecutorService fanOut() {
+        return fanOut;
+    }
+
+    public ScheduledExecutorService scheduler() {
+        return scheduler;
+    }
+
+    public ExecutorService pings() {
+        return pings;
+    }
+
+    public ServerMetrics metrics() {
+        return metrics;
+    }
+
+    public void shutdown() {
+        metrics.stop();
+        scheduler.shutdownNow();
+        pings.shutdownNow();
+        fanOut.shutdown();
+    }
+
+    private static ThreadFactory daemon(String prefix) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,254 @@
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+// The metrics of every board in one server process. Each board is registered with the platform
+// MBeanServer as whiteboard:type=Board,node=<node>,name=<board id>, so jconsole or any JMX client
+// can watch it. With -Dwhiteboard.metrics.port set, the same numbers are also served in the Prometheus
+// text format at http://localhost:<port>/metrics. The joins waiting for approval are registered too, as
+// whiteboard:type=JoinRequests,node=<node>.
+public class ServerMetrics {
+    // Node names taken in this JVM, so several nodes started in one process get their own MBeans
+    private static final Set<String> NODES = ConcurrentHashMap.newKeySet();
+
+    private final String node;
+    private final Map<String, BoardMetrics> boards = new ConcurrentHashMap<>();
+    private final MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+    private ScheduledFuture<?> ticks;
+    private HttpServer http;
+    private JoinRequests joins;
+
+    public ServerMetrics(String node) {
+        String name = node;
+        for (int i = 2; !NODES.add(name); i++) {
+            name = node + "-" + i;
+        }
+        this.node = name;
+    }
+
+    // Starts working out rates once a second and, if a port is configured, serving /metrics
+    public synchronized void start(ScheduledExecutorService scheduler) {
+        if (ticks != null) {
+            return;
+        }
+        ticks = scheduler.scheduleWithFixedDelay(this::tick, 1, 1, TimeUnit.SECONDS);
+        int port = WhiteboardConfig.metricsPort();
+        if (port <= 0) {
+            return;
+        }
+        try {
+            // Only served locally, the numbers include user names
+            http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+            http.createContext("/metrics", exchange -> {
+                byte[] body = prometheus().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            });
+            http.start();
+            System.out.println("Metrics at http://localhost:" + port + "/metrics");
+        } catch (IOException e) {
+            System.out.println("Metrics endpoint disabled, cannot listen on port " + port);
+            e.printStackTrace();
+        }
+    }
+
+    public synchronized void stop() {
+        if (ticks != null) {
+            ticks.cancel(false);
+        }
+        if (http != null) {
+            http.stop(0);
+        }
+        for (BoardMetrics board : boards.values()) {
+            remove(board);
+        }
+        if (joins != null) {
+            try {
+                mbeanServer.unregisterMBean(joinsName());
+            } catch (JMException e) {
+                // Not registered
+            }
+            joins = null;
+        }
+        NODES.remove(node);
+    }
+
+    public void add(BoardMetrics board) {
+        boards.put(board.getBoardId(), board);
+        try {
+            mbeanServer.registerMBean(board, objectName(board));
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // The joins waiting for approval, as whiteboard:type=JoinRequests,node=<node>
+    public synchronized void add(JoinRequests joins) {
+        if (this.joins != null) {
+            return;
+        }
+        try {
+            mbeanServer.registerMBean(joins, joinsName());
+            this.joins = joins;
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public void remove(BoardMetrics board) {
+        if (!boards.remove(board.getBoardId(), board)) {
+            return;
+        }
+        try {
+            mbeanServer.unregisterMBean(objectName(board));
+        } catch (JMException e) {
+            // Not registered
+        }
+    }
+
+    private ObjectName objectName(BoardMetrics board) throws JMException {
+        return new ObjectName("whiteboard:type=Board,node=" + ObjectName.quote(node) + ",name=" + ObjectName.quote(board.getBoardId()));
+    }
+
+    private ObjectName joinsName() throws JMException {
+        return new ObjectName("whiteboard:type=JoinRequests,node=" + ObjectName.quote(node));
+    }
+
+    private void tick() {
+        for (BoardMetrics board : boards.values()) {
+            board.tick();
+        }
+    }
+
+    // PROMETHEUS
+
+    // Every board in the text exposition format, one metric family at a time
+    String prometheus() {
+        StringBuilder out = new StringBuilder();
+        family(out, "whiteboard_operations_total", "counter", "Board operations by type");
+        for (BoardMetrics board : boards.values()) {
+            for (Map.Entry<String, Long> entry : board.getOperationCounts().entrySet()) {
+                sample(out, "whiteboard_operations_total", labels(board, "operation", entry.getKey()), entry.getValue());
+            }
+        }
+        family(out, "whiteboard_shapes", "gauge", "Shapes on the board");
+        for (BoardMetrics board : boards.values()) {
+            sample(out, "whiteboard_shapes", labels(board), board.getShapeCount());
+        }
+        family(out, "whiteboard_erased_shapes", "gauge", "Erased shapes kept for undo until compacted");
+        for (BoardMetrics board : boards.values()) {
+            sample(out, "whiteboard_erased_shapes", labels(board), board.getErasedShapeCount());
+        }
+        family(out, "whiteboard_drawings_heap_bytes", "gauge", "Heap used by the shapes on the board and their spatial index");
+        for (BoardMetrics board : boards.values()) {
+            sample(out, "whiteboard_drawings_heap_bytes", labels(board), board.getDrawingsHeapBytes());
+        }
+        family(out, "whiteboard_clients", "gauge", "Clients on the board");
+        for (BoardMetrics board : boards.values()) {
+            sample(out, "whiteboard_clients", labels(board), board.getClientCount());
+        }
+        family(out, "whiteboard_client_queue_depth", "gauge", "Calls queued for the client");
+        for (BoardMetrics board : boards.values()) {
+            for (BoardMetrics.ClientStats client : board.clientStats()) {
+                sample(out, "whiteboard_client_queue_depth", labels(board, "client", client.userName), board.queueDepth(client));
+            }
+        }
+        family(out, "whiteboard_client_sent_bytes_total", "counter", "Payload bytes sent to the client, before transport framing");
+        for (BoardMetrics board : boards.values()) {
+            for (BoardMetrics.ClientStats client : board.clientStats()) {
+                sample(out, "whiteboard_client_sent_bytes_total", labels(board, "client", client.userName), client.bytesSent.sum());
+            }
+        }
+        family(out, "whiteboard_client_throttled_total", "counter", "Calls of the client delayed, held back or refused by the rate limits");
+        for (BoardMetrics board : boards.values()) {
+            for (BoardMetrics.ClientStats client : board.clientStats()) {
+                for (Map.Entry<String, LongAdder> entry : client.throttled.entrySet()) {
+                    sample(out, "whiteboard_client_throttled_total", labels(board, "client", client.userName)
+                            + ",action=\"" + escape(entry.getKey()) + "\"", entry.getValue().sum());
+                }
+            }
+        }
+        family(out, "whiteboard_client_delivery_seconds", "summary", "From queueing a call for the client until it returned");
+        for (BoardMetrics board : boards.values()) {
+            for (BoardMetrics.ClientStats client : board.clientStats()) {
+                summary(out, "whiteboard_client_delivery_seconds", labels(board, "client", client.userName), client.deliveries);
+            }
+        }
+        family(out, "whiteboard_client_ping_seconds", "summary", "Heartbeat ping round trips");
+        for (BoardMetrics board : boards.values()) {
+            for (BoardMetrics.ClientStats client : board.clientStats()) {
+                summary(out, "whiteboard_client_ping_seconds", labels(board, "client", client.userName), client.pings);
+            }
+        }
+        family(out, "whiteboard_journal_flush_seconds", "summary", "Writing and fsyncing one batch of journal records");
+        for (BoardMetrics board : boards.values()) {
+            summary(out, "whiteboard_journal_flush_seconds", labels(board), board.journalFlushHistogram());
+        }
+        family(out, "whiteboard_journal_records_skipped_total", "counter", "Journal records that could not be encoded or were found damaged on recovery");
+        for (BoardMetrics board : boards.values()) {
+            sample(out, "whiteboard_journal_records_skipped_total", labels(board), board.getJournalRecordsSkipped());
+        }
+        family(out, "whiteboard_journal_failed", "gauge", "1 once the journal has stopped writing");
+        for (BoardMetrics board : boards.values()) {
+            sample(out, "whiteboard_journal_failed", labels(board), board.isJournalFailed() ? 1 : 0);
+        }
+        family(out, "whiteboard_checkpoint_seconds", "summary", "Writing a checkpoint of the whole board");
+        for (BoardMetrics board : boards.values()) {
+            summary(out, "whiteboard_checkpoint_seconds", labels(board), board.checkpointHistogram());
+        }
+        return out.toString();
+    }
+
+    private static void family(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, double value) {
+        out.append(name).append('{').append(labels).append("} ");
+        if (value == Math.rint(value) && !Double.isInfinite(value)) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+    }
+
+    private static void summary(StringBuilder out, String name, String labels, LatencyHistogram histogram) {
+        for (double quantile : new double[] {0.5, 0.99, 0.999}) {
+            sample(out, name, labels + ",quantile=\"" + quantile + "\"", histogram.percentileNanos(quantile) / 1e9);
+        }
+        sample(out, name + "_sum", labels, histogram.getSumNanos() / 1e9);
+        sample(out, name + "_count", labels, histogram.getCount());
+    }
+
+    private String labels(BoardMetrics board) {
+        return "node=\"" + escape(node) + "\",board=\"" + escape(board.getBoardId()) + "\"";
+    }
+
+    private String labels(BoardMetrics board, String name, String value) {
+        return labels(board) + "," + name + "=\"" + escape(value) + "\"";
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
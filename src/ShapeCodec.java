@@ -0,0 +1,295 @@
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Shape;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.Rectangle2D;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Compact binary encoding of ColoredShape, used instead of default Java serialization of the AWT classes.
+//
+// Each shape is: type tag, flags, sequence and preview id (varints), packed ARGB color (4 bytes),
+// then the coordinates as zigzag varints (relative to the previous point for lines and strokes).
+// A text shape's label is the text itself and is not written again; other labels are written in full.
+// Text shapes refer to their font by id; a font is written in full only the first time this codec sees it.
+// A codec keeps its font table between shapes, so use one codec per stream and the same order on both ends.
+public class ShapeCodec {
+    public static final int VERSION = 1;
+
+    static final int TAG_LINE = 1;
+    static final int TAG_ELLIPSE = 2;
+    static final int TAG_RECTANGLE = 3;
+    static final int TAG_TEXT = 4;
+    static final int TAG_POLYLINE = 5;
+
+    private static final int FLAG_TEXT = 1;
+    private static final int FLAG_PREVIEW = 2;
+    // The label is the text of the Text2D, read back from there
+    private static final int FLAG_LABEL_IS_TEXT = 4;
+
+    // Longest text a shape may hold, so it always fits writeUTF's 65535 bytes at up to three per char
+    public static final int MAX_TEXT_LENGTH = 4096;
+    // Most points a stroke may have, as PendingStroke caps them; a longer count is a corrupt stream
+    static final int MAX_POINTS = PendingStroke.MAX_COORDINATES / 2;
+
+    // Fonts every codec knows without sending them, ids start at 1
+    private static final Font[] WELL_KNOWN_FONTS = {
+            new Font("Arial", Font.PLAIN, 20)
+    };
+
+    private final Map<Font, Integer> fontIds = new HashMap<>();
+    private final List<Font> fonts = new ArrayList<>();
+
+    public ShapeCodec() {
+        for (Font font : WELL_KNOWN_FONTS) {
+            internFont(font);
+        }
+    }
+
+    public void write(DataOutput out, ColoredShape coloredShape) throws IOException {
+        Shape shape = coloredShape.getShape();
+        int tag = tagOf(shape);
+        int flags = 0;
+        String label = coloredShape.getText();
+        if (label != null && shape instanceof Text2D && label.equals(((Text2D) shape).getText())) {
+            flags |= FLAG_LABEL_IS_TEXT;
+        } else if (label != null) {
+            flags |= FLAG_TEXT;
+        }
+        if (coloredShape.getPreviewId() != 0) {
+            flags |= FLAG_PREVIEW;
+        }
+        out.writeByte(tag);
+        out.writeByte(flags);
+        writeVarLong(out, coloredShape.getSequence());
+        if ((flags & FLAG_PREVIEW) != 0) {
+            writeVarLong(out, zigzag(coloredShape.getPreviewId()));
+        }
+        out.writeInt(coloredShape.getColor().getRGB());
+        if ((flags & FLAG_TEXT) != 0) {
+            out.writeUTF(label);
+        }
+
+        switch (tag) {
+            case TAG_LINE: {
+                Line2D line = (Line2D) shape;
+                int x1 = (int) Math.round(line.getX1());
+                int y1 = (int) Math.round(line.getY1());
+                writeVarInt(out, zigzag(x1));
+                writeVarInt(out, zigzag(y1));
+                writeVarInt(out, zigzag((int) Math.round(line.getX2()) - x1));
+                writeVarInt(out, zigzag((int) Math.round(line.getY2()) - y1));
+                break;
+            }
+            case TAG_ELLIPSE:
+            case TAG_RECTANGLE: {
+                Rectangle2D bounds = shape instanceof Ellipse2D ? ((Ellipse2D) shape).getFrame() : (Rectangle2D) shape;
+                writeVarInt(out, zigzag((int) Math.round(bounds.getX())));
+                writeVarInt(out, zigzag((int) Math.round(bounds.getY())));
+                writeVarInt(out, zigzag((int) Math.round(bounds.getWidth())));
+                writeVarInt(out, zigzag((int) Math.round(bounds.getHeight())));
+                break;
+            }
+            case TAG_TEXT: {
+                Text2D text = (Text2D) shape;
+                writeVarInt(out, zigzag((int) Math.round(text.getX())));
+                writeVarInt(out, zigzag((int) Math.round(text.getY())));
+                writeFont(out, text.getFont());
+                out.writeUTF(text.getText());
+                break;
+            }
+            case TAG_POLYLINE: {
+                int[] points = ((Polyline2D) shape).getPoints();
+                writeVarInt(out, points.length / 2);
+                int lastX = 0, lastY = 0;
+                for (int i = 0; i < points.length; i += 2) {
+                    writeVarInt(out, zigzag(points[i] - lastX));
+                    writeVarInt(out, zigzag(points[i + 1] - lastY));
+                    lastX = points[i];
+                    lastY = points[i + 1];
+                }
+                break;
+            }
+        }
+    }
+
+    public ColoredShape read(DataInput in) throws IOException {
+        int tag = in.readUnsignedByte();
+        int flags = in.readUnsignedByte();
+        long sequence = readVarLong(in);
+        long previewId = (flags & FLAG_PREVIEW) != 0 ? unzigzag(readVarLong(in)) : 0;
+        Color color = new Color(in.readInt(), true);
+        String text = (flags & FLAG_TEXT) != 0 ? in.readUTF() : null;
+
+        Shape shape;
+        switch (tag) {
+            case TAG_LINE: {
+                int x1 = unzigzag(readVarInt(in));
+                int y1 = unzigzag(readVarInt(in));
+                int x2 = x1 + unzigzag(readVarInt(in));
+                int y2 = y1 + unzigzag(readVarInt(in));
+                shape = new Line2D.Double(x1, y1, x2, y2);
+                break;
+            }
+            case TAG_ELLIPSE:
+            case TAG_RECTANGLE: {
+                int x = unzigzag(readVarInt(in));
+                int y = unzigzag(readVarInt(in));
+                int width = unzigzag(readVarInt(in));
+                int height = unzigzag(readVarInt(in));
+                shape = tag == TAG_ELLIPSE ? new Ellipse2D.Double(x, y, width, height) : new Rectangle2D.Double(x, y, width, height);
+                break;
+            }
+            case TAG_TEXT: {
+                int x = unzigzag(readVarInt(in));
+                int y = unzigzag(readVarInt(in));
+                Font font = readFont(in);
+                shape = new Text2D(in.readUTF(), x, y, color, font);
+                break;
+            }
+            case TAG_POLYLINE: {
+                int count = readVarInt(in);
+                if (count < 0 || count > MAX_POINTS) {
+                    throw new StreamCorruptedException("Stroke of " + count + " points");
+                }
+                int[] points = new int[count * 2];
+                int lastX = 0, lastY = 0;
+                for (int i = 0; i < points.length; i += 2) {
+                    lastX += unzigzag(readVarInt(in));
+                    lastY += unzigzag(readVarInt(in));
+                    points[i] = lastX;
+                    points[i + 1] = lastY;
+                }
+                shape = new Polyline2D(points);
+                break;
+            }
+            default:
+                throw new StreamCorruptedException("Unknown shape tag " + tag);
+        }
+
+        if ((flags & FLAG_LABEL_IS_TEXT) != 0) {
+            if (!(shape instanceof Text2D)) {
+                throw new StreamCorruptedException("Text label on shape tag " + tag);
+            }
+            text = ((Text2D) shape).getText();
+        }
+        ColoredShape coloredShape = new ColoredShape(shape, color, text);
+        coloredShape.setSequence(sequence);
+        coloredShape.setPreviewId(previewId);
+        return coloredShape;
+    }
+
+    private static int tagOf(Shape shape) throws IOException {
+        if (shape instanceof Line2D) {
+            return TAG_LINE;
+        } else if (shape instanceof Ellipse2D) {
+            return TAG_ELLIPSE;
+        } else if (shape instanceof Text2D) {
+            // Checked before Rectangle2D, which Text2D extends
+            return TAG_TEXT;
+        } else if (shape instanceof Rectangle2D) {
+            return TAG_RECTANGLE;
+        } else if (shape instanceof Polyline2D) {
+            return TAG_POLYLINE;
+        }
+        throw new IOException("Cannot encode shape of type " + shape.getClass().getName());
+    }
+
+    // FONTS
+    private int internFont(Font font) {
+        fonts.add(font);
+        fontIds.put(font, fonts.size());
+        return fonts.size();
+    }
+
+    // Known fonts are written as their id, new ones as 0 followed by the font, which then gets the next id
+    private void writeFont(DataOutput out, Font font) throws IOException {
+        Integer id = fontIds.get(font);
+        if (id != null) {
+            writeVarInt(out, id);
+            return;
+        }
+        writeVarInt(out, 0);
+        out.writeUTF(font.getName());
+        out.writeByte(font.getStyle());
+        writeVarInt(out, font.getSize());
+        internFont(font);
+    }
+
+    private Font readFont(DataInput in) throws IOException {
+        int id = readVarInt(in);
+        if (id == 0) {
+            Font font = new Font(in.readUTF(), in.readUnsignedByte(), readVarInt(in));
+            internFont(font);
+            return font;
+        }
+        if (id > fonts.size()) {
+            throw new StreamCorruptedException("Unknown font id " + id);
+        }
+        return fonts.get(id - 1);
+    }
+
+    // VARINTS
+    static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    static int readVarInt(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new StreamCorruptedException("Malformed varint");
+    }
+
+    static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new StreamCorruptedException("Malformed varint");
+    }
+}
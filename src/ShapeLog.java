@@ -0,0 +1,329 @@
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+// Log of the shapes on the board, kept as primitives in a ShapeStore; the ColoredShapes handed out by
+// snapshot(), range(), chunk() and query() are built from it on the way out. Every entry gets the next
+// sequence number; sequence numbers keep increasing across clear() and replace().
+//
+// Appenders take turns on a plain lock and publish their slot in sequence order, so readers always see a
+// gap-free prefix of the log. A shape that could not be stored is published erased; one that was stored
+// stays even if onPublish threw, since onPublish may already have journaled it. clear() and replace() wait
+// for appenders to finish.
+//
+// erase() only marks entries, which keep their slot and sequence number so they can be revived for a
+// while. compact() later drops the erased entries; sequence numbers never change, so the live entries'
+// numbers have gaps but stay in order.
+public class ShapeLog {
+    // Appends and reads hold the read lock; clear(), replace(), erase(), revive() and compact() take the
+    // write lock
+    private final ReentrantReadWriteLock structureLock = new ReentrantReadWriteLock();
+    // Held by the appender whose turn it is, inside the read lock
+    private final ReentrantLock appendLock = new ReentrantLock();
+    // Written only in sequence order, by the appender holding appendLock
+    private final ShapeStore store = new ShapeStore();
+    // Slots [0, published) are complete and visible to readers
+    private volatile int published = 0;
+    // Sequence number before the first entry of the current board, changed only by clear() and replace()
+    private volatile long baseSequence = 0;
+    // An entry appended in slot s gets sequence number appendBase + s + 1
+    private volatile long appendBase = 0;
+    // Published entries that are erased but not compacted away yet
+    private volatile int erasedCount = 0;
+    // Erased entries revive() can still bring back, by sequence number, with the System.nanoTime() they
+    // were erased at
+    private final Map<Long, Long> restorable = new HashMap<>();
+    // Bounds of the live shapes by slot, for region queries
+    private final SpatialIndex spatialIndex = new SpatialIndex(WhiteboardConfig.indexCellSize());
+
+    // Adds the shape and stamps it with its sequence number. onPublish, if given, runs in sequence order
+    // before any later shape becomes visible, so it can forward shapes in order without a lock of its own.
+    public long append(ColoredShape shape, Consumer<ColoredShape> onPublish) {
+        structureLock.readLock().lock();
+        try {
+            // Rejected before taking a slot, a slot that is never published would stall every later append
+            ShapeStore.checkStorable(shape.getShape());
+            Rectangle2D bounds = SpatialIndex.boundsOf(shape.getShape());
+            appendLock.lock();
+            try {
+                return publish(shape, bounds, onPublish);
+            } finally {
+                appendLock.unlock();
+            }
+        } finally {
+            structureLock.readLock().unlock();
+        }
+    }
+
+    // Stores the shape in the next slot and publishes it after onPublish has run; the caller holds
+    // appendLock or the write lock. The slot is published even if this throws, so later slots still line
+    // up with their sequence numbers.
+    private long publish(ColoredShape shape, Rectangle2D bounds, Consumer<ColoredShape> onPublish) {
+        int index = published;
+        long sequence = appendBase + index + 1;
+        shape.setSequence(sequence);
+        boolean stored = false;
+        try {
+            store.add(shape);
+            spatialIndex.add(index, bounds);
+            stored = true;
+            if (onPublish != null) {
+                onPublish.accept(shape);
+            }
+        } finally {
+            try {
+                if (!stored) {
+                    skip(index, sequence);
+                }
+            } finally {
+                published = index + 1;
+            }
+        }
+        return sequence;
+    }
+
+    // Leaves the slot of a shape that could not be stored erased
+    private void skip(int index, long sequence) {
+        if (store.size() == index) {
+            store.addErased(sequence);
+        } else {
+            store.erase(index);
+        }
+        spatialIndex.remove(index);
+        erasedCount++;
+    }
+
+    // Removes every shape. onCleared runs while no append can happen, e.g. to queue the clear for clients.
+    public void clear(Runnable onCleared) {
+        replace(new ArrayList<>(), snapshot -> {
+            if (onCleared != null) {
+                onCleared.run();
+            }
+        });
+    }
+
+    // Replaces the whole board with the given shapes, which get new sequence numbers.
+    // onReplaced receives the new board while no append can happen.
+    public void replace(List<ColoredShape> shapes, Consumer<BoardSnapshot> onReplaced) {
+        structureLock.writeLock().lock();
+        try {
+            long base = appendBase + published;
+            for (int i = 0; i < shapes.size(); i++) {
+                shapes.get(i).setSequence(base + i + 1);
+            }
+            restore(base, base + shapes.size(), shapes, onReplaced);
+        } finally {
+            structureLock.writeLock().unlock();
+        }
+    }
+
+    // Replaces the whole board with shapes that already carry their sequence numbers, in increasing order
+    // after base and up to lastSequence, e.g. when a cluster follower takes over the leader's log
+    public void restore(long base, long lastSequence, List<ColoredShape> shapes, Consumer<BoardSnapshot> onRestored) {
+        structureLock.writeLock().lock();
+        try {
+            store.clear();
+            spatialIndex.clear();
+            restorable.clear();
+            for (ColoredShape shape : shapes) {
+                spatialIndex.add(store.add(shape), SpatialIndex.boundsOf(shape.getShape()));
+            }
+            baseSequence = base;
+            appendBase = lastSequence - shapes.size();
+            erasedCount = 0;
+            published = shapes.size();
+            if (onRestored != null) {
+                onRestored.accept(new BoardSnapshot(lastSequence, new ArrayList<>(shapes)));
+            }
+        } finally {
+            structureLock.writeLock().unlock();
+        }
+    }
+
+    // Erases the live entries with the given sequence numbers and returns the sequence numbers it erased.
+    // onErased, if anything was erased, receives them while no append can happen.
+    public long[] erase(long[] sequences, Consumer<long[]> onErased) {
+        structureLock.writeLock().lock();
+        try {
+            long now = System.nanoTime();
+            long[] erased = new long[sequences.length];
+            int count = 0;
+            for (long sequence : sequences) {
+                int slot = store.find(sequence, published);
+                if (slot >= 0 && store.isLive(slot)) {
+                    store.erase(slot);
+                    spatialIndex.remove(slot);
+                    restorable.put(sequence, now);
+                    erased[count++] = sequence;
+                }
+            }
+            erasedCount += count;
+            erased = Arrays.copyOf(erased, count);
+            if (count > 0 && onErased != null) {
+                onErased.accept(erased);
+            }
+            return erased;
+        } finally {
+            structureLock.writeLock().unlock();
+        }
+    }
+
+    // Appends again, with new sequence numbers, the erased entries that are still restorable. Returns the
+    // new sequence number for each one asked for, 0 where it could not be revived. onPublish runs for each
+    // revived shape as for append().
+    public long[] revive(long[] sequences, Consumer<ColoredShape> onPublish) {
+        structureLock.writeLock().lock();
+        try {
+            long[] revived = new long[sequences.length];
+            for (int i = 0; i < sequences.length; i++) {
+                if (restorable.remove(sequences[i]) == null) {
+                    continue;
+                }
+                int slot = store.find(sequences[i], published);
+                if (slot < 0 || store.isLive(slot)) {
+                    continue;
+                }
+                ColoredShape shape = store.get(slot);
+                // The preview it replaced is long gone
+                shape.setPreviewId(0);
+                revived[i] = publish(shape, SpatialIndex.boundsOf(shape.getShape()), onPublish);
+            }
+            return revived;
+        } finally {
+            structureLock.writeLock().unlock();
+        }
+    }
+
+    // Drops the erased entries that were erased more than retainNanos ago, and returns how many it dropped
+    public int compact(long retainNanos) {
+        structureLock.writeLock().lock();
+        try {
+            if (erasedCount == 0) {
+                return 0;
+            }
+            long now = System.nanoTime();
+            restorable.values().removeIf(erasedAt -> now - erasedAt >= retainNanos);
+            int end = published;
+            boolean[] keep = new boolean[end];
+            int kept = 0;
+            for (int slot = 0; slot < end; slot++) {
+                keep[slot] = store.isLive(slot) || restorable.containsKey(store.getSequence(slot));
+                if (keep[slot]) {
+                    kept++;
+                }
+            }
+            if (kept == end) {
+                return 0;
+            }
+            long lastSequence = appendBase + end;
+            spatialIndex.renumber(store.compact(keep));
+            appendBase = lastSequence - kept;
+            published = kept;
+            erasedCount -= end - kept;
+            return end - kept;
+        } finally {
+            structureLock.writeLock().unlock();
+        }
+    }
+
+    // Runs action while no append, clear or replace can happen, e.g. to queue a snapshot in order
+    public void withSnapshot(Consumer<BoardSnapshot> action) {
+        structureLock.writeLock().lock();
+        try {
+            action.accept(snapshot());
+        } finally {
+            structureLock.writeLock().unlock();
+        }
+    }
+
+    public BoardSnapshot snapshot() {
+        structureLock.readLock().lock();
+        try {
+            int end = published;
+            return new BoardSnapshot(appendBase + end, store.getLive(0, end));
+        } finally {
+            structureLock.readLock().unlock();
+        }
+    }
+
+    // Up to limit live shapes with a sequence number greater than afterSequence, in order
+    public List<ColoredShape> range(long afterSequence, int limit) {
+        structureLock.readLock().lock();
+        try {
+            int end = published;
+            return copy(slotAfter(afterSequence, end), end, limit);
+        } finally {
+            structureLock.readLock().unlock();
+        }
+    }
+
+    // Up to limit shapes after afterSequence, or from the start of the board if afterSequence is not on it
+    public BoardChunk chunk(long afterSequence, int limit) {
+        structureLock.readLock().lock();
+        try {
+            long base = baseSequence;
+            int end = published;
+            int first = afterSequence > base ? slotAfter(afterSequence, end) : 0;
+            return new BoardChunk(base, appendBase + end, copy(first, end, limit));
+        } finally {
+            structureLock.readLock().unlock();
+        }
+    }
+
+    // Shapes whose bounds intersect the area, in sequence order
+    public List<ColoredShape> query(Rectangle2D area) {
+        structureLock.readLock().lock();
+        try {
+            return store.get(spatialIndex.query(area));
+        } finally {
+            structureLock.readLock().unlock();
+        }
+    }
+
+    // First slot below end whose sequence number is greater than the given one
+    private int slotAfter(long sequence, int end) {
+        int slot = store.find(sequence, end);
+        return slot >= 0 ? slot + 1 : -slot - 1;
+    }
+
+    // Up to limit live shapes from slots [from, to)
+    private List<ColoredShape> copy(int from, int to, int limit) {
+        List<ColoredShape> shapes = new ArrayList<>(Math.max(0, Math.min(to - from, limit)));
+        for (int slot = from; slot < to && shapes.size() < limit; slot++) {
+            if (store.isLive(slot)) {
+                shapes.add(store.get(slot));
+            }
+        }
+        return shapes;
+    }
+
+    public long getLastSequence() {
+        structureLock.readLock().lock();
+        try {
+            return appendBase + published;
+        } finally {
+            structureLock.readLock().unlock();
+        }
+    }
+
+    // Live shapes
+    public int size() {
+        return published - erasedCount;
+    }
+
+    // Erased shapes compact() has not dropped yet
+    public int getErasedCount() {
+        return erasedCount;
+    }
+
+    // Heap held by the stored shapes and their spatial index
+    public long heapBytes() {
+        return store.heapBytes() + spatialIndex.heapBytes();
+    }
+}
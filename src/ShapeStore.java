@@ -0,0 +1,411 @@
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Shape;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// The shapes of a board as columns of primitives instead of one ColoredShape, Color and AWT geometry
+// object each. Every slot has a kind byte, an ARGB colour, its sequence number and an offset into the
+// chunk's int pool, which holds the coordinates:
+//
+//   line       x1 y1 x2 y2
+//   ellipse    x y width height      (also rectangle)
+//   text       x y fontId stringId
+//   polyline   pointCount x0 y0 x1 y1 ...
+//
+// preceded by the preview id (two ints) and the label's string id when the kind says so. Strings and fonts
+// are kept once each in tables shared by the whole store. Coordinates are rounded to ints as ShapeCodec
+// does. get() builds the ColoredShape again, so only the shapes being sent or painted exist as objects.
+//
+// Slots are added in sequence order. An erased slot is only marked, so sequence lookups keep working,
+// until compact() copies the slots worth keeping into fresh chunks.
+//
+// One writer at a time, readers may run alongside it: slots [0, size()) are complete and only ever
+// change by being marked erased.
+public class ShapeStore {
+    private static final int CHUNK_SHIFT = 12;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private static final int KIND_LINE = ShapeCodec.TAG_LINE;
+    private static final int KIND_ELLIPSE = ShapeCodec.TAG_ELLIPSE;
+    private static final int KIND_RECTANGLE = ShapeCodec.TAG_RECTANGLE;
+    private static final int KIND_TEXT = ShapeCodec.TAG_TEXT;
+    private static final int KIND_POLYLINE = ShapeCodec.TAG_POLYLINE;
+    private static final int KIND_MASK = 0x0F;
+    private static final int HAS_PREVIEW = 0x10;
+    private static final int HAS_LABEL = 0x20;
+    private static final int ERASED = 0x40;
+
+    private volatile Chunk[] chunks = new Chunk[16];
+    private volatile int size = 0;
+    private Strings strings = new Strings();
+    // Read by any thread, only the writer adds to it
+    private final List<Font> fonts = new CopyOnWriteArrayList<>();
+    private final Map<Font, Integer> fontIds = new HashMap<>();
+
+    // Stores the shape in the next slot and returns the slot. The shape object is not kept.
+    public int add(ColoredShape coloredShape) {
+        Shape shape = coloredShape.getShape();
+        int kind = kindOf(shape);
+        int slot = size;
+        Chunk chunk = chunkFor(slot);
+        int offset = chunk.dataSize;
+        if (coloredShape.getPreviewId() != 0) {
+            kind |= HAS_PREVIEW;
+            chunk.write((int) (coloredShape.getPreviewId() >>> 32));
+            chunk.write((int) coloredShape.getPreviewId());
+        }
+        if (coloredShape.getText() != null) {
+            kind |= HAS_LABEL;
+            chunk.write(strings.intern(coloredShape.getText()));
+        }
+        switch (kind & KIND_MASK) {
+            case KIND_LINE: {
+                Line2D line = (Line2D) shape;
+                chunk.write(round(line.getX1()));
+                chunk.write(round(line.getY1()));
+                chunk.write(round(line.getX2()));
+                chunk.write(round(line.getY2()));
+                break;
+            }
+            case KIND_ELLIPSE:
+            case KIND_RECTANGLE: {
+                Rectangle2D bounds = shape instanceof Ellipse2D ? ((Ellipse2D) shape).getFrame() : (Rectangle2D) shape;
+                chunk.write(round(bounds.getX()));
+                chunk.write(round(bounds.getY()));
+                chunk.write(round(bounds.getWidth()));
+                chunk.write(round(bounds.getHeight()));
+                break;
+            }
+            case KIND_TEXT: {
+                Text2D text = (Text2D) shape;
+                chunk.write(round(text.getX()));
+                chunk.write(round(text.getY()));
+                chunk.write(fontId(text.getFont()));
+                chunk.write(strings.intern(text.getText()));
+                break;
+            }
+            default: {
+                int[] points = ((Polyline2D) shape).getPoints();
+                chunk.write(points.length / 2);
+                chunk.write(points, 0, points.length & ~1);
+                break;
+            }
+        }
+        return finish(chunk, slot, kind, coloredShape.getColor().getRGB(), coloredShape.getSequence(), offset);
+    }
+
+    // Takes the next slot, already erased and with nothing in it, for an append that failed halfway
+    public int addErased(long sequence) {
+        int slot = size;
+        Chunk chunk = chunkFor(slot);
+        return finish(chunk, slot, KIND_LINE | ERASED, 0, sequence, chunk.dataSize);
+    }
+
+    private int finish(Chunk chunk, int slot, int kind, int color, long sequence, int offset) {
+        int index = slot & CHUNK_MASK;
+        chunk.kinds[index] = (byte) kind;
+        chunk.colors[index] = color;
+        chunk.sequences[index] = sequence;
+        chunk.offsets[index] = offset;
+        if (index == CHUNK_MASK) {
+            // The chunk is full, give back the pool's spare room
+            chunk.trim();
+        }
+        size = slot + 1;
+        return slot;
+    }
+
+    private static int kindOf(Shape shape) {
+        if (shape instanceof Line2D) {
+            return KIND_LINE;
+        } else if (shape instanceof Ellipse2D) {
+            return KIND_ELLIPSE;
+        } else if (shape instanceof Text2D) {
+            // Checked before Rectangle2D, which Text2D extends
+            return KIND_TEXT;
+        } else if (shape instanceof Rectangle2D) {
+            return KIND_RECTANGLE;
+        } else if (shape instanceof Polyline2D) {
+            return KIND_POLYLINE;
+        }
+        throw new IllegalArgumentException("Cannot store shape of type " + shape.getClass().getName());
+    }
+
+    // Throws IllegalArgumentException unless add() can store the shape
+    public static void checkStorable(Shape shape) {
+        kindOf(shape);
+    }
+
+    private static int round(double coordinate) {
+        return (int) Math.round(coordinate);
+    }
+
+    private int fontId(Font font) {
+        Integer id = fontIds.get(font);
+        if (id == null) {
+            id = fonts.size();
+            fonts.add(font);
+            fontIds.put(font, id);
+        }
+        return id;
+    }
+
+    private Chunk chunkFor(int slot) {
+        int chunkIndex = slot >>> CHUNK_SHIFT;
+        Chunk[] current = chunks;
+        if (chunkIndex >= current.length) {
+            // Only the directory of chunks is copied, never the shapes
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        if (current[chunkIndex] == null) {
+            current[chunkIndex] = new Chunk();
+            chunks = current;
+        }
+        return current[chunkIndex];
+    }
+
+    // Builds the shape in the slot, which must be below size()
+    public ColoredShape get(int slot) {
+        Chunk chunk = chunks[slot >>> CHUNK_SHIFT];
+        int index = slot & CHUNK_MASK;
+        int kind = chunk.kinds[index];
+        int[] data = chunk.data;
+        int at = chunk.offsets[index];
+        Color color = new Color(chunk.colors[index], true);
+
+        long previewId = 0;
+        if ((kind & HAS_PREVIEW) != 0) {
+            previewId = ((long) data[at] << 32) | (data[at + 1] & 0xFFFFFFFFL);
+            at += 2;
+        }
+        String label = null;
+        if ((kind & HAS_LABEL) != 0) {
+            label = strings.get(data[at++]);
+        }
+        Shape shape;
+        switch (kind & KIND_MASK) {
+            case KIND_LINE:
+                shape = new Line2D.Double(data[at], data[at + 1], data[at + 2], data[at + 3]);
+                break;
+            case KIND_ELLIPSE:
+                shape = new Ellipse2D.Double(data[at], data[at + 1], data[at + 2], data[at + 3]);
+                break;
+            case KIND_RECTANGLE:
+                shape = new Rectangle2D.Double(data[at], data[at + 1], data[at + 2], data[at + 3]);
+                break;
+            case KIND_TEXT:
+                shape = new Text2D(strings.get(data[at + 3]), data[at], data[at + 1], color, fonts.get(data[at + 2]));
+                break;
+            default:
+                int count = data[at];
+                shape = new Polyline2D(Arrays.copyOfRange(data, at + 1, at + 1 + count * 2));
+                break;
+        }
+        ColoredShape coloredShape = new ColoredShape(shape, color, label);
+        coloredShape.setSequence(chunk.sequences[index]);
+        coloredShape.setPreviewId(previewId);
+        return coloredShape;
+    }
+
+    // Builds the shapes in slots [from, to) that are not erased
+    public List<ColoredShape> getLive(int from, int to) {
+        List<ColoredShape> result = new ArrayList<>(Math.max(0, to - from));
+        for (int slot = from; slot < to; slot++) {
+            if (isLive(slot)) {
+                result.add(get(slot));
+            }
+        }
+        return result;
+    }
+
+    // Builds the shapes in the given slots, in that order
+    public List<ColoredShape> get(int[] slots) {
+        List<ColoredShape> result = new ArrayList<>(slots.length);
+        for (int slot : slots) {
+            result.add(get(slot));
+        }
+        return result;
+    }
+
+    public long getSequence(int slot) {
+        return chunks[slot >>> CHUNK_SHIFT].sequences[slot & CHUNK_MASK];
+    }
+
+    // Slot of the sequence number among the first count slots, or -(slot it would go in) - 1 as
+    // Arrays.binarySearch does
+    public int find(long sequence, int count) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long found = getSequence(middle);
+            if (found < sequence) {
+                low = middle + 1;
+            } else if (found > sequence) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    public boolean isLive(int slot) {
+        return (chunks[slot >>> CHUNK_SHIFT].kinds[slot & CHUNK_MASK] & ERASED) == 0;
+    }
+
+    // Marks the slot erased; the writer's job like add()
+    public void erase(int slot) {
+        chunks[slot >>> CHUNK_SHIFT].kinds[slot & CHUNK_MASK] |= ERASED;
+    }
+
+    // Keeps only the slots marked in keep, in order, and returns the new slot of every old one (-1 if
+    // dropped). Strings and fonts only the dropped slots used are dropped too. Not safe against concurrent
+    // readers, the owner must keep them out.
+    public int[] compact(boolean[] keep) {
+        int oldSize = size;
+        Chunk[] oldChunks = chunks;
+        Strings oldStrings = strings;
+        List<Font> oldFonts = new ArrayList<>(fonts);
+        clear();
+        int[] moved = new int[oldSize];
+        for (int slot = 0; slot < oldSize; slot++) {
+            moved[slot] = keep[slot] ? copy(oldChunks[slot >>> CHUNK_SHIFT], slot & CHUNK_MASK, oldStrings, oldFonts) : -1;
+        }
+        return moved;
+    }
+
+    // Appends a slot of another store's chunk, with its string and font ids looked up again
+    private int copy(Chunk from, int index, Strings oldStrings, List<Font> oldFonts) {
+        int kind = from.kinds[index];
+        int[] data = from.data;
+        int at = from.offsets[index];
+        int slot = size;
+        Chunk chunk = chunkFor(slot);
+        int offset = chunk.dataSize;
+        if ((kind & HAS_PREVIEW) != 0) {
+            chunk.write(data, at, 2);
+            at += 2;
+        }
+        if ((kind & HAS_LABEL) != 0) {
+            chunk.write(strings.intern(oldStrings.get(data[at++])));
+        }
+        switch (kind & KIND_MASK) {
+            case KIND_TEXT:
+                chunk.write(data, at, 2);
+                chunk.write(fontId(oldFonts.get(data[at + 2])));
+                chunk.write(strings.intern(oldStrings.get(data[at + 3])));
+                break;
+            case KIND_POLYLINE:
+                chunk.write(data, at, 1 + data[at] * 2);
+                break;
+            default:
+                chunk.write(data, at, 4);
+                break;
+        }
+        return finish(chunk, slot, kind, from.colors[index], from.sequences[index], offset);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Drops every shape. Not safe against concurrent readers, the owner must keep them out.
+    public void clear() {
+        chunks = new Chunk[16];
+        strings = new Strings();
+        fonts.clear();
+        fontIds.clear();
+        size = 0;
+    }
+
+    // Heap taken by the columns, pools and tables, without the JVM's own per-object overhead
+    public long heapBytes() {
+        long bytes = strings.heapBytes() + 4L * chunks.length;
+        for (Chunk chunk : chunks) {
+            if (chunk != null) {
+                bytes += (1 + 4 + 8 + 4) * (long) CHUNK_SIZE + 4L * chunk.data.length;
+            }
+        }
+        return bytes;
+    }
+
+    private static class Chunk {
+        final byte[] kinds = new byte[CHUNK_SIZE];
+        final int[] colors = new int[CHUNK_SIZE];
+        final long[] sequences = new long[CHUNK_SIZE];
+        final int[] offsets = new int[CHUNK_SIZE];
+        // Replaced, never changed below dataSize, when it grows; readers of older slots may hold the old one
+        volatile int[] data = new int[CHUNK_SIZE * 4];
+        int dataSize = 0;
+
+        void write(int value) {
+            ensure(1);
+            data[dataSize++] = value;
+        }
+
+        void write(int[] values, int from, int count) {
+            ensure(count);
+            System.arraycopy(values, from, data, dataSize, count);
+            dataSize += count;
+        }
+
+        private void ensure(int count) {
+            if (dataSize + count > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, dataSize + count));
+            }
+        }
+
+        void trim() {
+            if (dataSize < data.length) {
+                data = Arrays.copyOf(data, dataSize);
+            }
+        }
+    }
+
+    // Every distinct text and label once, numbered in the order first seen
+    private static class Strings {
+        private volatile String[][] chunks = new String[16][];
+        private final Map<String, Integer> ids = new HashMap<>();
+        private long chars = 0;
+
+        int intern(String value) {
+            Integer id = ids.get(value);
+            if (id != null) {
+                return id;
+            }
+            int next = ids.size();
+            int chunkIndex = next >>> CHUNK_SHIFT;
+            String[][] current = chunks;
+            if (chunkIndex >= current.length) {
+                current = Arrays.copyOf(current, current.length * 2);
+            }
+            if (current[chunkIndex] == null) {
+                current[chunkIndex] = new String[CHUNK_SIZE];
+            }
+            current[chunkIndex][next & CHUNK_MASK] = value;
+            chunks = current;
+            ids.put(value, next);
+            chars += value.length();
+            return next;
+        }
+
+        String get(int id) {
+            return chunks[id >>> CHUNK_SHIFT][id & CHUNK_MASK];
+        }
+
+        // Roughly: Latin-1 characters, and the String, its array and the map entry that finds it
+        long heapBytes() {
+            return chars + 100L * ids.size();
+        }
+    }
+}
@@ -0,0 +1,674 @@
+import java.awt.Color;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
+import java.net.SocketTimeoutException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.rmi.NoSuchObjectException;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.rmi.ServerException;
+import java.rmi.UnmarshalException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// One socket of a SocketTransport. Every frame is [int length][payload]; a payload is a call
+// (call id, object id, method) followed by its arguments, or a reply or failure for a call id followed by
+// one value. Values are tagged: primitives, strings, int and long arrays are written directly, shapes with
+// ShapeCodec, Remote objects as references, and anything else with Java serialization restricted to the
+// protocol's value types and exceptions.
+//
+// A Remote object passed to the other end is exported on this connection under a new id; the other end
+// gets a proxy that sends its calls back here. A proxy passed back to the end that exported it turns
+// into the original object again.
+class SocketConnection {
+    static final int NAMING_ID = 0;
+    // Anything larger is a corrupt or hostile length
+    private static final int MAX_FRAME = 1 << 28;
+    // Replies up to this size are read on the selector thread
+    private static final int INLINE_REPLY_BYTES = 4096;
+
+    private static final int CALL = 1;
+    private static final int REPLY = 2;
+    private static final int FAILURE = 3;
+
+    private static final int VALUE_NULL = 0;
+    private static final int VALUE_TRUE = 1;
+    private static final int VALUE_FALSE = 2;
+    private static final int VALUE_INT = 3;
+    private static final int VALUE_LONG = 4;
+    private static final int VALUE_STRING = 5;
+    private static final int VALUE_INTS = 6;
+    private static final int VALUE_SHAPE = 7;
+    // Exported by the sender of the frame
+    private static final int VALUE_REMOTE = 8;
+    // Exported by the receiver of the frame, which gets its own object back
+    private static final int VALUE_RETURNED = 9;
+    private static final int VALUE_OBJECT = 10;
+    private static final int VALUE_LONGS = 11;
+
+    private static final Object[] NO_ARGUMENTS = new Object[0];
+    private static final Map<Class<?>, Map<String, Method>> REMOTE_METHODS = new ConcurrentHashMap<>();
+    private static final ObjectInputFilter CLASS_FILTER = SocketConnection::checkClass;
+    // See checkClass; ArrayList also builds an Object[], and a Throwable's suppressed list starts out empty
+    private static final Set<Class<?>> SERIAL_CLASSES = Set.of(BoardSnapshot.class, BoardChunk.class,
+            ChatHistory.class, ChatMessage.class, EncodedShape.class, Color.class, String.class,
+            ArrayList.class, Collections.emptyList().getClass(), StackTraceElement.class);
+    // Limits on one Java-serialized value, well above what the protocol's values need
+    private static final int MAX_OBJECT_DEPTH = 16;
+    private static final int MAX_OBJECT_REFERENCES = 100_000;
+    private static final int MAX_OBJECT_ARRAY = 100_000;
+    private static final int MAX_OBJECT_BYTES = 1 << 26;
+
+    private final SocketTransport transport;
+    private final SocketChannel channel;
+    // Only used by the selector thread
+    private ByteBuffer readBuffer = ByteBuffer.allocate(1 << 16);
+    // Guarded by this
+    private final ArrayDeque<ByteBuffer> writeQueue = new ArrayDeque<>();
+    private SelectionKey key;
+    private volatile boolean open = true;
+
+    private final AtomicLong callIds = new AtomicLong();
+    private final Map<Long, CompletableFuture<Object>> pendingCalls = new ConcurrentHashMap<>();
+    // The object each pending call went to, by call id
+    private final Map<Long, Integer> callTargets = new ConcurrentHashMap<>();
+    // Objects of the other end this end has given up on, see drop()
+    private final Set<Integer> dropped = ConcurrentHashMap.newKeySet();
+    private final Map<Integer, Remote> exports = new ConcurrentHashMap<>();
+    private final Map<Remote, Integer> exportIds = Collections.synchronizedMap(new IdentityHashMap<>());
+    private final AtomicInteger exportCount = new AtomicInteger(NAMING_ID);
+    private final Map<Integer, Remote> imports = new ConcurrentHashMap<>();
+    private final long callTimeoutMillis = WhiteboardConfig.callTimeoutMillis();
+
+    SocketConnection(SocketTransport transport, SocketChannel channel, SocketTransport.Naming naming) {
+        this.transport = transport;
+        this.channel = channel;
+        if (naming != null) {
+            exports.put(NAMING_ID, naming);
+        }
+    }
+
+    boolean isOpen() {
+        return open;
+    }
+
+    // Fails the calls waiting on a proxy's object, and every later call to it, while the connection and
+    // the other objects reached over it carry on; false for anything that is not a proxy of a
+    // SocketConnection. The object is used again if the other end passes it over again.
+    static boolean drop(Remote object) {
+        if (object == null || !Proxy.isProxyClass(object.getClass())) {
+            return false;
+        }
+        InvocationHandler handler = Proxy.getInvocationHandler(object);
+        if (!(handler instanceof RemoteHandler)) {
+            return false;
+        }
+        RemoteHandler remote = (RemoteHandler) handler;
+        remote.connection().drop(remote.id);
+        return true;
+    }
+
+    private void drop(int objectId) {
+        // Added first, so a call either sees it or is already in callTargets
+        dropped.add(objectId);
+        imports.remove(objectId);
+        for (Map.Entry<Long, Integer> target : callTargets.entrySet()) {
+            CompletableFuture<Object> reply = target.getValue() == objectId ? pendingCalls.get(target.getKey()) : null;
+            if (reply != null) {
+                reply.completeExceptionally(new java.rmi.ConnectException("Remote object " + objectId + " was dropped"));
+            }
+        }
+    }
+
+    // Forgets object on the connection peer is a proxy on, so the other end can no longer call it
+    static void unexport(Remote object, Remote peer) {
+        if (peer == null || !Proxy.isProxyClass(peer.getClass())) {
+            return;
+        }
+        InvocationHandler handler = Proxy.getInvocationHandler(peer);
+        if (handler instanceof RemoteHandler) {
+            ((RemoteHandler) handler).connection().forget(object);
+        }
+    }
+
+    private void forget(Remote object) {
+        synchronized (exportIds) {
+            Integer id = exportIds.remove(object);
+            if (id != null) {
+                exports.remove(id);
+            }
+        }
+    }
+
+    // A proxy for an object the other end exported
+    Remote proxy(int id, Class<?>[] interfaces) {
+        dropped.remove(id);
+        return imports.computeIfAbsent(id, key -> (Remote) Proxy.newProxyInstance(
+                SocketConnection.class.getClassLoader(), interfaces, new RemoteHandler(id)));
+    }
+
+    // CALLS
+
+    private Object call(int objectId, Method method, Object[] arguments) throws Throwable {
+        long callId = callIds.incrementAndGet();
+        CompletableFuture<Object> reply = new CompletableFuture<>();
+        pendingCalls.put(callId, reply);
+        callTargets.put(callId, objectId);
+        try {
+            if (dropped.contains(objectId)) {
+                throw new java.rmi.ConnectException("Remote object " + objectId + " was dropped");
+            }
+            Frame frame = new Frame();
+            frame.out.writeByte(CALL);
+            frame.out.writeLong(callId);
+            frame.out.writeInt(objectId);
+            frame.out.writeUTF(methodKey(method));
+            ShapeCodec codec = new ShapeCodec();
+            for (Object argument : arguments == null ? NO_ARGUMENTS : arguments) {
+                writeValue(frame.out, argument, codec);
+            }
+            send(frame);
+            return reply.get(callTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new RemoteException("No reply to " + method.getName() + " within " + callTimeoutMillis + " ms",
+                    new SocketTimeoutException());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RemoteException || cause instanceof RuntimeException || cause instanceof Error) {
+                throw cause;
+            }
+            for (Class<?> declared : method.getExceptionTypes()) {
+                if (declared.isInstance(cause)) {
+                    throw cause;
+                }
+            }
+            throw new ServerException("Remote call failed", (Exception) cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Interrupted waiting for " + method.getName());
+        } finally {
+            pendingCalls.remove(callId);
+            callTargets.remove(callId);
+        }
+    }
+
+    // Runs on a worker thread
+    private void handle(byte[] payload) {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        try {
+            int type = in.readUnsignedByte();
+            if (type == CALL) {
+                handleCall(in);
+                return;
+            }
+            long callId = in.readLong();
+            CompletableFuture<Object> reply = pendingCalls.get(callId);
+            if (reply == null) {
+                return;
+            }
+            try {
+                Object value = readValue(in, new ShapeCodec());
+                if (type == FAILURE) {
+                    reply.completeExceptionally((Throwable) value);
+                } else {
+                    reply.complete(value);
+                }
+            } catch (IOException | ClassCastException e) {
+                reply.completeExceptionally(new UnmarshalException("Cannot read reply", e));
+            }
+        } catch (java.rmi.ConnectException e) {
+            // The other end is gone, nobody to reply to
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void handleCall(DataInputStream in) throws IOException {
+        long callId = in.readLong();
+        int objectId = in.readInt();
+        String methodKey = in.readUTF();
+        Object result;
+        boolean failed = false;
+        try {
+            Remote target = exports.get(objectId);
+            if (target == null) {
+                throw new NoSuchObjectException("No object " + objectId + " on this connection");
+            }
+            Method method = remoteMethods(target.getClass()).get(methodKey);
+            if (method == null) {
+                throw new UnmarshalException("No remote method " + methodKey);
+            }
+            ShapeCodec codec = new ShapeCodec();
+            Object[] arguments = new Object[method.getParameterCount()];
+            for (int i = 0; i < arguments.length; i++) {
+                arguments[i] = readValue(in, codec);
+            }
+            result = method.invoke(target, arguments);
+        } catch (InvocationTargetException e) {
+            result = e.getCause();
+            failed = true;
+        } catch (IOException | ReflectiveOperationException | RuntimeException e) {
+            result = e instanceof RemoteException ? e : new UnmarshalException("Cannot make call " + methodKey, e);
+            failed = true;
+        }
+        Frame frame = new Frame();
+        try {
+            frame.out.writeByte(failed ? FAILURE : REPLY);
+            frame.out.writeLong(callId);
+            writeValue(frame.out, result, new ShapeCodec());
+        } catch (IOException e) {
+            frame = new Frame();
+            frame.out.writeByte(FAILURE);
+            frame.out.writeLong(callId);
+            writeValue(frame.out, new RemoteException("Cannot send the result of " + methodKey + ": " + e), new ShapeCodec());
+        }
+        send(frame);
+    }
+
+    // VALUES
+
+    private void writeValue(DataOutputStream out, Object value, ShapeCodec codec) throws IOException {
+        if (value == null) {
+            out.writeByte(VALUE_NULL);
+        } else if (value instanceof Boolean) {
+            out.writeByte((Boolean) value ? VALUE_TRUE : VALUE_FALSE);
+        } else if (value instanceof Integer) {
+            out.writeByte(VALUE_INT);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(VALUE_LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof String) {
+            byte[] bytes = ((String) value).getBytes(StandardCharsets.UTF_8);
+            out.writeByte(VALUE_STRING);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        } else if (value instanceof int[]) {
+            int[] ints = (int[]) value;
+            out.writeByte(VALUE_INTS);
+            out.writeInt(ints.length);
+            for (int i : ints) {
+                out.writeInt(i);
+            }
+        } else if (value instanceof long[]) {
+            long[] longs = (long[]) value;
+            out.writeByte(VALUE_LONGS);
+            out.writeInt(longs.length);
+            for (long l : longs) {
+                out.writeLong(l);
+            }
+        } else if (value instanceof ColoredShape) {
+            out.writeByte(VALUE_SHAPE);
+            codec.write(out, (ColoredShape) value);
+        } else if (value instanceof Remote) {
+            writeRemote(out, (Remote) value);
+        } else {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream objects = new ObjectOutputStream(bytes)) {
+                objects.writeObject(value);
+            }
+            out.writeByte(VALUE_OBJECT);
+            out.writeInt(bytes.size());
+            bytes.writeTo(out);
+        }
+    }
+
+    private void writeRemote(DataOutputStream out, Remote value) throws IOException {
+        if (Proxy.isProxyClass(value.getClass())) {
+            InvocationHandler handler = Proxy.getInvocationHandler(value);
+            if (handler instanceof RemoteHandler && ((RemoteHandler) handler).connection() == this) {
+                out.writeByte(VALUE_RETURNED);
+                out.writeInt(((RemoteHandler) handler).id);
+                return;
+            }
+        }
+        int id;
+        synchronized (exportIds) {
+            Integer existing = exportIds.get(value);
+            if (existing == null) {
+                existing = exportCount.incrementAndGet();
+                exportIds.put(value, existing);
+                exports.put(existing, value);
+            }
+            id = existing;
+        }
+        List<Class<?>> interfaces = remoteInterfaces(value.getClass());
+        out.writeByte(VALUE_REMOTE);
+        out.writeInt(id);
+        out.writeByte(interfaces.size());
+        for (Class<?> type : interfaces) {
+            out.writeUTF(type.getName());
+        }
+    }
+
+    private Object readValue(DataInputStream in, ShapeCodec codec) throws IOException {
+        int tag = in.readUnsignedByte();
+        switch (tag) {
+            case VALUE_NULL:
+                return null;
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+            case VALUE_INT:
+                return in.readInt();
+            case VALUE_LONG:
+                return in.readLong();
+            case VALUE_STRING: {
+                byte[] bytes = new byte[checkedLength(in.readInt(), 1, in)];
+                in.readFully(bytes);
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+            case VALUE_INTS: {
+                int[] ints = new int[checkedLength(in.readInt(), 4, in)];
+                for (int i = 0; i < ints.length; i++) {
+                    ints[i] = in.readInt();
+                }
+                return ints;
+            }
+            case VALUE_LONGS: {
+                long[] longs = new long[checkedLength(in.readInt(), 8, in)];
+                for (int i = 0; i < longs.length; i++) {
+                    longs[i] = in.readLong();
+                }
+                return longs;
+            }
+            case VALUE_SHAPE:
+                return codec.read(in);
+            case VALUE_REMOTE: {
+                int id = in.readInt();
+                int count = in.readUnsignedByte();
+                Class<?>[] interfaces = new Class<?>[count];
+                for (int i = 0; i < count; i++) {
+                    interfaces[i] = remoteInterface(in.readUTF());
+                }
+                return proxy(id, interfaces);
+            }
+            case VALUE_RETURNED: {
+                int id = in.readInt();
+                Remote object = exports.get(id);
+                if (object == null) {
+                    throw new NoSuchObjectException("No object " + id + " on this connection");
+                }
+                return object;
+            }
+            case VALUE_OBJECT: {
+                byte[] bytes = new byte[checkedLength(in.readInt(), 1, in)];
+                in.readFully(bytes);
+                try (ObjectInputStream objects = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                    objects.setObjectInputFilter(CLASS_FILTER);
+                    return objects.readObject();
+                } catch (ClassNotFoundException e) {
+                    throw new UnmarshalException("Unknown class in call", e);
+                }
+            }
+            default:
+                throw new StreamCorruptedException("Unknown value tag " + tag);
+        }
+    }
+
+    private static int checkedLength(int length, int elementSize, DataInputStream in) throws IOException {
+        if (length < 0 || (long) length * elementSize > in.available()) {
+            throw new StreamCorruptedException("Bad length " + length);
+        }
+        return length;
+    }
+
+    // The only classes a call or reply may carry with Java serialization: the protocol's value types and
+    // the JDK classes they and a thrown exception are made of. Any other class, e.g. one of the server's
+    // own Remote objects, is rejected before it is built.
+    private static ObjectInputFilter.Status checkClass(ObjectInputFilter.FilterInfo info) {
+        if (info.depth() > MAX_OBJECT_DEPTH || info.references() > MAX_OBJECT_REFERENCES
+                || info.arrayLength() > MAX_OBJECT_ARRAY || info.streamBytes() > MAX_OBJECT_BYTES) {
+            return ObjectInputFilter.Status.REJECTED;
+        }
+        Class<?> type = info.serialClass();
+        if (type == null) {
+            return ObjectInputFilter.Status.UNDECIDED;
+        }
+        boolean array = type.isArray();
+        while (type.isArray()) {
+            type = type.getComponentType();
+        }
+        if (type.isPrimitive() || SERIAL_CLASSES.contains(type) || (array && type == Object.class)
+                || (Throwable.class.isAssignableFrom(type) && type.getName().startsWith("java."))) {
+            return ObjectInputFilter.Status.ALLOWED;
+        }
+        return ObjectInputFilter.Status.REJECTED;
+    }
+
+    private static Class<?> remoteInterface(String name) throws IOException {
+        try {
+            Class<?> type = Class.forName(name, false, SocketConnection.class.getClassLoader());
+            if (!type.isInterface() || !Remote.class.isAssignableFrom(type)) {
+                throw new UnmarshalException(name + " is not a remote interface");
+            }
+            return type;
+        } catch (ClassNotFoundException e) {
+            throw new UnmarshalException("Unknown remote interface " + name, e);
+        }
+    }
+
+    private static List<Class<?>> remoteInterfaces(Class<?> type) {
+        List<Class<?>> interfaces = new ArrayList<>();
+        for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+            for (Class<?> candidate : current.getInterfaces()) {
+                if (candidate != Remote.class && Remote.class.isAssignableFrom(candidate) && !interfaces.contains(candidate)) {
+                    interfaces.add(candidate);
+                }
+            }
+        }
+        return interfaces;
+    }
+
+    // Only the methods of an object's Remote interfaces can be called, by name and parameter types
+    private static Map<String, Method> remoteMethods(Class<?> type) {
+        return REMOTE_METHODS.computeIfAbsent(type, t -> {
+            Map<String, Method> methods = new HashMap<>();
+            for (Class<?> remote : remoteInterfaces(t)) {
+                for (Method method : remote.getMethods()) {
+                    methods.put(methodKey(method), method);
+                }
+            }
+            return methods;
+        });
+    }
+
+    private static String methodKey(Method method) {
+        StringBuilder key = new StringBuilder(method.getName()).append('(');
+        Class<?>[] parameters = method.getParameterTypes();
+        for (int i = 0; i < parameters.length; i++) {
+            if (i > 0) {
+                key.append(',');
+            }
+            key.append(parameters[i].getTypeName());
+        }
+        return key.append(')').toString();
+    }
+
+    // BYTES
+
+    private void send(Frame frame) throws IOException {
+        ByteBuffer buffer = frame.toBuffer();
+        synchronized (this) {
+            if (!open) {
+                throw new java.rmi.ConnectException("Connection closed");
+            }
+            try {
+                if (writeQueue.isEmpty()) {
+                    channel.write(buffer);
+                    if (!buffer.hasRemaining()) {
+                        return;
+                    }
+                }
+                writeQueue.add(buffer);
+                if (key != null) {
+                    key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    transport.wakeup();
+                }
+            } catch (IOException e) {
+                close();
+                throw new java.rmi.ConnectException("Connection lost", e);
+            }
+        }
+    }
+
+    synchronized void setKey(SelectionKey key) {
+        this.key = key;
+        if (!writeQueue.isEmpty()) {
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+
+    // Called by the selector thread
+    synchronized void onWritable() {
+        try {
+            while (!writeQueue.isEmpty()) {
+                ByteBuffer head = writeQueue.peek();
+                channel.write(head);
+                if (head.hasRemaining()) {
+                    return;
+                }
+                writeQueue.poll();
+            }
+            key.interestOps(SelectionKey.OP_READ);
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    // Called by the selector thread
+    void onReadable() {
+        int read;
+        try {
+            read = channel.read(readBuffer);
+        } catch (IOException e) {
+            close();
+            return;
+        }
+        if (read < 0) {
+            close();
+            return;
+        }
+        readBuffer.flip();
+        while (readBuffer.remaining() >= 4) {
+            int length = readBuffer.getInt(readBuffer.position());
+            if (length < 0 || length > MAX_FRAME) {
+                close();
+                return;
+            }
+            if (readBuffer.remaining() < 4 + length) {
+                break;
+            }
+            readBuffer.getInt();
+            byte[] payload = new byte[length];
+            readBuffer.get(payload);
+            if (payload.length > 0 && payload[0] != CALL && payload.length <= INLINE_REPLY_BYTES) {
+                // Cheap to decode, and saves waking a worker just to wake the caller
+                handle(payload);
+            } else {
+                transport.dispatch(() -> handle(payload));
+            }
+        }
+        readBuffer.compact();
+        if (readBuffer.position() >= 4) {
+            int needed = 4 + readBuffer.getInt(0);
+            if (needed > readBuffer.capacity()) {
+                // Grow to fit the frame being read
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(needed, readBuffer.capacity() * 2));
+                readBuffer.flip();
+                larger.put(readBuffer);
+                readBuffer = larger;
+            }
+        }
+    }
+
+    void close() {
+        synchronized (this) {
+            if (!open) {
+                return;
+            }
+            open = false;
+            writeQueue.clear();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        transport.removed(this);
+        for (CompletableFuture<Object> reply : pendingCalls.values()) {
+            reply.completeExceptionally(new java.rmi.ConnectException("Connection closed"));
+        }
+    }
+
+    // A frame being written, with room for its length in front
+    private static class Frame extends ByteArrayOutputStream {
+        final DataOutputStream out = new DataOutputStream(this);
+
+        Frame() {
+            super(256);
+            count = 4;
+        }
+
+        ByteBuffer toBuffer() {
+            ByteBuffer buffer = ByteBuffer.wrap(buf, 0, count);
+            buffer.putInt(0, count - 4);
+            return buffer;
+        }
+    }
+
+    private class RemoteHandler implements InvocationHandler {
+        final int id;
+
+        RemoteHandler(int id) {
+            this.id = id;
+        }
+
+        SocketConnection connection() {
+            return SocketConnection.this;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] arguments) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                    case "equals":
+                        return proxy == arguments[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    default:
+                        return "Remote object " + id + " on " + channel;
+                }
+            }
+            return call(id, method, arguments);
+        }
+    }
+}
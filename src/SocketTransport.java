@@ -0,0 +1,229 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.rmi.AlreadyBoundException;
+import java.rmi.NotBoundException;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Remote calls as length-prefixed frames over non-blocking sockets. One selector thread moves the bytes
+// of every connection and the calls themselves run on a worker pool, so a slow call never holds up the
+// others. Calls from the server to a client go back over the connection the client opened, so a client
+// behind NAT or a firewall still gets its callbacks.
+//
+// Either end of a connection can pass its own Remote objects to the other, which calls them through a
+// proxy of their Remote interfaces; see SocketConnection for the wire format.
+public class SocketTransport implements Transport {
+
+    // Served as object 0 on every accepted connection, to look up the objects bound to its port
+    public interface Naming extends Remote {
+        Remote lookup(String name) throws RemoteException;
+    }
+
+    private final Selector selector;
+    private final Thread loop;
+    private final ExecutorService workers;
+    // Run on the selector thread, which is the only one allowed to register channels
+    private final Queue<Runnable> loopTasks = new ConcurrentLinkedQueue<>();
+    // Bound objects by port, then name
+    private final Map<Integer, Map<String, Remote>> bound = new ConcurrentHashMap<>();
+    private final Map<Integer, ServerSocketChannel> servers = new ConcurrentHashMap<>();
+    // Connections this end opened, by host:port, reused by every lookup on the same server
+    private final Map<String, SocketConnection> outgoing = new ConcurrentHashMap<>();
+    private final Set<SocketConnection> connections = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed = false;
+
+    public SocketTransport() {
+        try {
+            selector = Selector.open();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        // Like RMI, one thread per call in progress
+        workers = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "whiteboard-rpc-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Not a daemon: a headless server stays up while its transport is open, as it would with RMI
+        loop = new Thread(this::run, "whiteboard-selector");
+        loop.start();
+    }
+
+    @Override
+    public void bind(int port, String name, Remote object) throws Exception {
+        Map<String, Remote> names = bound.computeIfAbsent(port, p -> new ConcurrentHashMap<>());
+        if (names.putIfAbsent(name, object) != null) {
+            throw new AlreadyBoundException(name);
+        }
+        synchronized (servers) {
+            if (servers.containsKey(port)) {
+                return;
+            }
+            ServerSocketChannel server = ServerSocketChannel.open();
+            server.bind(new InetSocketAddress(port));
+            server.configureBlocking(false);
+            servers.put(port, server);
+            onLoop(() -> {
+                try {
+                    server.register(selector, SelectionKey.OP_ACCEPT, names);
+                } catch (ClosedChannelException e) {
+                    // Closed before it got going
+                }
+            });
+        }
+    }
+
+    @Override
+    public Remote lookup(String host, int port, String name) throws Exception {
+        SocketConnection connection = connect(host, port);
+        Naming naming = (Naming) connection.proxy(SocketConnection.NAMING_ID, new Class<?>[] {Naming.class});
+        Remote object = naming.lookup(name);
+        if (object == null) {
+            throw new NotBoundException(name);
+        }
+        return object;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (ServerSocketChannel server : servers.values()) {
+            try {
+                server.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        servers.clear();
+        for (SocketConnection connection : connections) {
+            connection.close();
+        }
+        selector.wakeup();
+        workers.shutdown();
+    }
+
+    private SocketConnection connect(String host, int port) throws RemoteException {
+        String address = host + ":" + port;
+        synchronized (outgoing) {
+            SocketConnection connection = outgoing.get(address);
+            if (connection != null && connection.isOpen()) {
+                return connection;
+            }
+            try {
+                SocketChannel channel = SocketChannel.open(new InetSocketAddress(host, port));
+                connection = open(channel, null);
+                outgoing.put(address, connection);
+                return connection;
+            } catch (IOException e) {
+                throw new java.rmi.ConnectException("Cannot connect to " + address, e);
+            }
+        }
+    }
+
+    private SocketConnection open(SocketChannel channel, Map<String, Remote> names) throws IOException {
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        SocketConnection connection = new SocketConnection(this, channel, names == null ? null : names::get);
+        connections.add(connection);
+        onLoop(() -> {
+            try {
+                connection.setKey(channel.register(selector, SelectionKey.OP_READ, connection));
+            } catch (ClosedChannelException e) {
+                connection.close();
+            }
+        });
+        return connection;
+    }
+
+    void onLoop(Runnable task) {
+        loopTasks.add(task);
+        selector.wakeup();
+    }
+
+    void wakeup() {
+        selector.wakeup();
+    }
+
+    void dispatch(Runnable task) {
+        try {
+            workers.execute(task);
+        } catch (RuntimeException e) {
+            // Transport closed
+        }
+    }
+
+    void removed(SocketConnection connection) {
+        connections.remove(connection);
+        outgoing.values().remove(connection);
+    }
+
+    private void run() {
+        while (!closed) {
+            try {
+                selector.select();
+            } catch (IOException e) {
+                e.printStackTrace();
+                break;
+            }
+            Runnable task;
+            while ((task = loopTasks.poll()) != null) {
+                task.run();
+            }
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                try {
+                    if (key.isAcceptable()) {
+                        accept(key);
+                        continue;
+                    }
+                    SocketConnection connection = (SocketConnection) key.attachment();
+                    if (key.isReadable()) {
+                        connection.onReadable();
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        connection.onWritable();
+                    }
+                } catch (CancelledKeyException e) {
+                    // Closed by another thread meanwhile
+                }
+            }
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void accept(SelectionKey key) {
+        try {
+            SocketChannel channel = ((ServerSocketChannel) key.channel()).accept();
+            if (channel != null) {
+                open(channel, (Map<String, Remote>) key.attachment());
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
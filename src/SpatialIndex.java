@@ -0,0 +1,339 @@
+import java.awt.Shape;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Uniform grid over the bounding boxes of the shapes on a board, so region and point queries only look
+// at the shapes near the area asked for instead of scanning the whole board.
+//
+// Shapes are known by an int id, their slot in the board's ShapeStore, so ids in id order are in board
+// order. The index keeps each shape's bounds as four floats, exact for coordinates up to 2^24.
+//
+// The grid has levels, each with cells LEVEL_FACTOR times wider than the level below. A shape goes in the
+// lowest level where it spans at most MAX_CELLS cells, and there in every cell its bounds overlap, so a
+// large shape takes a few coarse cells instead of a list every query scans. A query looks at each level
+// that has shapes and reports a shape only from the cell that holds the top-left corner of the overlap
+// between the shape and the query, so nothing is reported twice. Only shapes too large even for the top
+// level, e.g. with infinite bounds, are kept in a list that every query scans.
+public class SpatialIndex {
+    private static final int MAX_CELLS = 64;
+    private static final int LEVEL_FACTOR = 8;
+    private static final int LEVELS = 12;
+    private static final int CHUNK_SHIFT = 12;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final double[] cellSizes = new double[LEVELS];
+    // The cells of each level by key(cx, cy)
+    private final List<Map<Long, IdList>> levels = new ArrayList<>();
+    private final IdList oversized = new IdList();
+    // minX, minY, maxX, maxY of every id, CHUNK_SIZE ids per chunk
+    private float[][] bounds = new float[16][];
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private int size = 0;
+
+    public SpatialIndex(int cellSize) {
+        double size = Math.max(1, cellSize);
+        for (int level = 0; level < LEVELS; level++) {
+            cellSizes[level] = size;
+            levels.add(new HashMap<>());
+            size *= LEVEL_FACTOR;
+        }
+    }
+
+    // Bounds used for indexing. Text2D has no size of its own, so it gets one em per character above
+    // its baseline, which is generous enough for culling and hit-testing.
+    public static Rectangle2D boundsOf(Shape shape) {
+        if (shape instanceof Text2D) {
+            Text2D text = (Text2D) shape;
+            int size = text.getFont().getSize();
+            return new Rectangle2D.Double(text.getX(), text.getY() - size,
+                    (double) size * text.getText().length(), size + size / 4);
+        }
+        return shape.getBounds2D();
+    }
+
+    public void add(int id, Rectangle2D shapeBounds) {
+        lock.writeLock().lock();
+        try {
+            int chunkIndex = id >>> CHUNK_SHIFT;
+            if (chunkIndex >= bounds.length) {
+                bounds = Arrays.copyOf(bounds, Math.max(bounds.length * 2, chunkIndex + 1));
+            }
+            if (bounds[chunkIndex] == null) {
+                bounds[chunkIndex] = new float[CHUNK_SIZE * 4];
+            }
+            float[] chunk = bounds[chunkIndex];
+            int at = (id & CHUNK_MASK) * 4;
+            chunk[at] = (float) shapeBounds.getMinX();
+            chunk[at + 1] = (float) shapeBounds.getMinY();
+            chunk[at + 2] = (float) shapeBounds.getMaxX();
+            chunk[at + 3] = (float) shapeBounds.getMaxY();
+
+            int level = levelOf(chunk, at);
+            if (level < 0) {
+                oversized.add(id);
+            } else {
+                Map<Long, IdList> cells = levels.get(level);
+                double cellSize = cellSizes[level];
+                for (long cx = cell(chunk[at], cellSize); cx <= cell(chunk[at + 2], cellSize); cx++) {
+                    for (long cy = cell(chunk[at + 1], cellSize); cy <= cell(chunk[at + 3], cellSize); cy++) {
+                        cells.computeIfAbsent(key(cx, cy), k -> new IdList()).add(id);
+                    }
+                }
+            }
+            size++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean remove(int id) {
+        lock.writeLock().lock();
+        try {
+            if (id < 0 || id >>> CHUNK_SHIFT >= bounds.length || bounds[id >>> CHUNK_SHIFT] == null) {
+                return false;
+            }
+            float[] chunk = bounds[id >>> CHUNK_SHIFT];
+            int at = (id & CHUNK_MASK) * 4;
+            boolean removed = false;
+            int level = levelOf(chunk, at);
+            if (level < 0) {
+                removed = oversized.remove(id);
+            } else {
+                Map<Long, IdList> cells = levels.get(level);
+                double cellSize = cellSizes[level];
+                for (long cx = cell(chunk[at], cellSize); cx <= cell(chunk[at + 2], cellSize); cx++) {
+                    for (long cy = cell(chunk[at + 1], cellSize); cy <= cell(chunk[at + 3], cellSize); cy++) {
+                        long key = key(cx, cy);
+                        IdList cell = cells.get(key);
+                        if (cell != null && cell.remove(id)) {
+                            removed = true;
+                            if (cell.size == 0) {
+                                cells.remove(key);
+                            }
+                        }
+                    }
+                }
+            }
+            if (removed) {
+                size--;
+            }
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            for (Map<Long, IdList> cells : levels) {
+                cells.clear();
+            }
+            oversized.size = 0;
+            bounds = new float[16][];
+            size = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Gives every id its new id after the store compacted, newIds[old] being the new one. Ids the store
+    // dropped must have been removed already.
+    public void renumber(int[] newIds) {
+        lock.writeLock().lock();
+        try {
+            float[][] renumbered = new float[bounds.length][];
+            for (int id = 0; id < newIds.length; id++) {
+                int moved = newIds[id];
+                if (moved < 0) {
+                    continue;
+                }
+                if (renumbered[moved >>> CHUNK_SHIFT] == null) {
+                    renumbered[moved >>> CHUNK_SHIFT] = new float[CHUNK_SIZE * 4];
+                }
+                System.arraycopy(bounds[id >>> CHUNK_SHIFT], (id & CHUNK_MASK) * 4,
+                        renumbered[moved >>> CHUNK_SHIFT], (moved & CHUNK_MASK) * 4, 4);
+            }
+            bounds = renumbered;
+            // Ids keep their order, so every list stays sorted the way add() left it
+            for (Map<Long, IdList> cells : levels) {
+                for (IdList cell : cells.values()) {
+                    cell.renumber(newIds);
+                }
+            }
+            oversized.renumber(newIds);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Roughly: the bounds, and per occupied cell its map entry, boxed key and id list
+    public long heapBytes() {
+        lock.readLock().lock();
+        try {
+            long bytes = 4L * bounds.length + 4L * oversized.ids.length;
+            for (float[] chunk : bounds) {
+                if (chunk != null) {
+                    bytes += 4L * chunk.length;
+                }
+            }
+            for (Map<Long, IdList> cells : levels) {
+                bytes += 8L * cells.size() * 4 / 3;
+                for (IdList cell : cells.values()) {
+                    bytes += 32 + 16 + 24 + 16 + 4L * cell.ids.length;
+                }
+            }
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Ids of the shapes whose bounds intersect the area, touching edges included, in board order
+    public int[] query(Rectangle2D area) {
+        double minX = area.getMinX(), minY = area.getMinY(), maxX = area.getMaxX(), maxY = area.getMaxY();
+        IdList result = new IdList();
+        lock.readLock().lock();
+        try {
+            for (int level = 0; level < LEVELS; level++) {
+                Map<Long, IdList> cells = levels.get(level);
+                if (cells.isEmpty()) {
+                    continue;
+                }
+                double cellSize = cellSizes[level];
+                long fromX = cell(minX, cellSize), toX = cell(maxX, cellSize);
+                long fromY = cell(minY, cellSize), toY = cell(maxY, cellSize);
+                if (((double) toX - fromX + 1) * ((double) toY - fromY + 1) > cells.size()) {
+                    // Larger than the occupied part of the level, visiting the occupied cells is cheaper
+                    for (Map.Entry<Long, IdList> cell : cells.entrySet()) {
+                        long key = cell.getKey();
+                        long cx = key >> 32, cy = (int) key;
+                        if (cx >= fromX && cx <= toX && cy >= fromY && cy <= toY) {
+                            collect(cell.getValue(), cx, cy, cellSize, minX, minY, maxX, maxY, result);
+                        }
+                    }
+                } else {
+                    for (long cx = fromX; cx <= toX; cx++) {
+                        for (long cy = fromY; cy <= toY; cy++) {
+                            IdList cell = cells.get(key(cx, cy));
+                            if (cell != null) {
+                                collect(cell, cx, cy, cellSize, minX, minY, maxX, maxY, result);
+                            }
+                        }
+                    }
+                }
+            }
+            for (int i = 0; i < oversized.size; i++) {
+                int id = oversized.ids[i];
+                float[] chunk = bounds[id >>> CHUNK_SHIFT];
+                if (intersects(chunk, (id & CHUNK_MASK) * 4, minX, minY, maxX, maxY)) {
+                    result.add(id);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        int[] ids = Arrays.copyOf(result.ids, result.size);
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    // Ids of the shapes whose bounds are within tolerance of the point, in board order. Callers that need
+    // an exact hit test check the shapes' outlines themselves.
+    public int[] queryPoint(double x, double y, double tolerance) {
+        return query(new Rectangle2D.Double(x - tolerance, y - tolerance, tolerance * 2, tolerance * 2));
+    }
+
+    private void collect(IdList cell, long cx, long cy, double cellSize, double minX, double minY, double maxX, double maxY,
+            IdList result) {
+        for (int i = 0; i < cell.size; i++) {
+            int id = cell.ids[i];
+            float[] chunk = bounds[id >>> CHUNK_SHIFT];
+            int at = (id & CHUNK_MASK) * 4;
+            if (intersects(chunk, at, minX, minY, maxX, maxY)
+                    && cell(Math.max(chunk[at], minX), cellSize) == cx && cell(Math.max(chunk[at + 1], minY), cellSize) == cy) {
+                result.add(id);
+            }
+        }
+    }
+
+    private static boolean intersects(float[] chunk, int at, double minX, double minY, double maxX, double maxY) {
+        return chunk[at] <= maxX && chunk[at + 2] >= minX && chunk[at + 1] <= maxY && chunk[at + 3] >= minY;
+    }
+
+    // The lowest level where the bounds span at most MAX_CELLS cells whose numbers fit a key, -1 if none.
+    // Worked out in doubles, so huge or NaN bounds fall through instead of overflowing.
+    private int levelOf(float[] chunk, int at) {
+        for (int level = 0; level < LEVELS; level++) {
+            double cellSize = cellSizes[level];
+            double fromX = Math.floor(chunk[at] / cellSize), toX = Math.floor(chunk[at + 2] / cellSize);
+            double fromY = Math.floor(chunk[at + 1] / cellSize), toY = Math.floor(chunk[at + 3] / cellSize);
+            if ((toX - fromX + 1) * (toY - fromY + 1) <= MAX_CELLS
+                    && fromX >= Integer.MIN_VALUE && toX <= Integer.MAX_VALUE
+                    && fromY >= Integer.MIN_VALUE && toY <= Integer.MAX_VALUE) {
+                return level;
+            }
+        }
+        return -1;
+    }
+
+    private static long cell(double coordinate, double cellSize) {
+        return (long) Math.floor(coordinate / cellSize);
+    }
+
+    private static long key(long cx, long cy) {
+        return (cx << 32) | (cy & 0xFFFFFFFFL);
+    }
+
+    // The ids in one cell, sorted; new shapes have the highest id, so adding is an append
+    private static class IdList {
+        int[] ids = new int[4];
+        int size = 0;
+
+        void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            int at = size == 0 || ids[size - 1] < id ? size : insertionPoint(id);
+            System.arraycopy(ids, at, ids, at + 1, size - at);
+            ids[at] = id;
+            size++;
+        }
+
+        boolean remove(int id) {
+            int at = Arrays.binarySearch(ids, 0, size, id);
+            if (at < 0) {
+                return false;
+            }
+            System.arraycopy(ids, at + 1, ids, at, size - at - 1);
+            size--;
+            return true;
+        }
+
+        private int insertionPoint(int id) {
+            int at = Arrays.binarySearch(ids, 0, size, id);
+            return at >= 0 ? at : -at - 1;
+        }
+
+        void renumber(int[] newIds) {
+            for (int i = 0; i < size; i++) {
+                ids[i] = newIds[ids[i]];
+            }
+        }
+    }
+}
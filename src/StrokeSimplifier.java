@@ -0,0 +1,78 @@
+// Ramer-Douglas-Peucker simplification of freehand strokes
+public final class StrokeSimplifier {
+
+    private StrokeSimplifier() {
+    }
+
+    // points holds x0, y0, x1, y1, ...; points closer than tolerance pixels to the simplified line are dropped.
+    // The first and last points are always kept.
+    public static int[] simplify(int[] points, double tolerance) {
+        int count = points.length / 2;
+        if (count <= 2 || tolerance <= 0) {
+            return points;
+        }
+        boolean[] keep = new boolean[count];
+        keep[0] = true;
+        keep[count - 1] = true;
+        markPoints(points, 0, count - 1, tolerance * tolerance, keep);
+
+        int kept = 0;
+        for (boolean k : keep) {
+            if (k) {
+                kept++;
+            }
+        }
+        int[] result = new int[kept * 2];
+        int j = 0;
+        for (int i = 0; i < count; i++) {
+            if (keep[i]) {
+                result[j++] = points[i * 2];
+                result[j++] = points[i * 2 + 1];
+            }
+        }
+        return result;
+    }
+
+    private static void markPoints(int[] points, int first, int last, double toleranceSquared, boolean[] keep) {
+        // Iterative to avoid deep recursion on very long strokes
+        int[] stack = new int[Math.max(2, (last - first + 1) * 2)];
+        int top = 0;
+        stack[top++] = first;
+        stack[top++] = last;
+        while (top > 0) {
+            int end = stack[--top];
+            int start = stack[--top];
+            double maxDistance = 0;
+            int index = -1;
+            for (int i = start + 1; i < end; i++) {
+                double distance = distanceSquared(points, i, start, end);
+                if (distance > maxDistance) {
+                    maxDistance = distance;
+                    index = i;
+                }
+            }
+            if (index != -1 && maxDistance > toleranceSquared) {
+                keep[index] = true;
+                stack[top++] = start;
+                stack[top++] = index;
+                stack[top++] = index;
+                stack[top++] = end;
+            }
+        }
+    }
+
+    // Squared distance from point i to the segment between points start and end
+    private static double distanceSquared(int[] points, int i, int start, int end) {
+        double px = points[i * 2], py = points[i * 2 + 1];
+        double ax = points[start * 2], ay = points[start * 2 + 1];
+        double bx = points[end * 2], by = points[end * 2 + 1];
+        double dx = bx - ax, dy = by - ay;
+        double lengthSquared = dx * dx + dy * dy;
+        if (lengthSquared == 0) {
+            return (px - ax) * (px - ax) + (py - ay) * (py - ay);
+        }
+        double t = Math.max(0, Math.min(1, ((px - ax) * dx + (py - ay) * dy) / lengthSquared));
+        double cx = ax + t * dx, cy = ay + t * dy;
+        return (px - cx) * (px - cx) + (py - cy) * (py - cy);
+    }
+}
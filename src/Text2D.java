@@ -4,6 +4,9 @@ import java.awt.Graphics2D;
 import java.awt.geom.Rectangle2D;
 
 public class Text2D extends Rectangle2D.Double {
+    // Font of everything typed on the board
+    public static final Font DEFAULT_FONT = new Font("Arial", Font.PLAIN, 20);
+
     private String text;
     private Color color;
     private Font font;
@@ -0,0 +1,142 @@
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+// The board as fixed-size raster tiles, rendered when first shown and kept in an LRU cache, so memory
+// stays bounded however large the board is or however far it is panned.
+//
+// Tiles are cut in view pixels at a given zoom, so one tile at zoom z covers TILE_SIZE / z board pixels.
+// A tile is rendered from the shapes the replica's spatial index finds in it; shapes added later are
+// painted onto the cached tiles they touch, and tiles that are not cached are left for the next render.
+// Erasing a shape drops the tiles it touches, which are rendered again without it.
+public class TileCache {
+    public static final int TILE_SIZE = 256;
+    // Board pixels around a tile whose shapes are still drawn, for line width and antialiasing
+    private static final int MARGIN = 2;
+
+    // Draws one shape onto a tile, in board coordinates
+    public interface Painter {
+        void paint(Graphics2D graphics, ColoredShape shape);
+    }
+
+    private final BoardReplica replica;
+    private final Painter painter;
+    private final LinkedHashMap<TileKey, BufferedImage> tiles;
+
+    public TileCache(BoardReplica replica, int maxTiles, Painter painter) {
+        this.replica = replica;
+        this.painter = painter;
+        // Access order, so the eldest entry is the least recently shown tile
+        this.tiles = new LinkedHashMap<TileKey, BufferedImage>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<TileKey, BufferedImage> eldest) {
+                return size() > Math.max(1, maxTiles);
+            }
+        };
+    }
+
+    // Draws the tiles covering a width x height view whose top-left corner is at (viewX, viewY) in view pixels
+    public synchronized void paint(Graphics2D g, int viewX, int viewY, double zoom, int width, int height) {
+        int firstX = Math.floorDiv(viewX, TILE_SIZE);
+        int firstY = Math.floorDiv(viewY, TILE_SIZE);
+        int lastX = Math.floorDiv(viewX + width - 1, TILE_SIZE);
+        int lastY = Math.floorDiv(viewY + height - 1, TILE_SIZE);
+        for (int ty = firstY; ty <= lastY; ty++) {
+            for (int tx = firstX; tx <= lastX; tx++) {
+                TileKey key = new TileKey(zoom, tx, ty);
+                BufferedImage tile = tiles.get(key);
+                if (tile == null) {
+                    tile = render(key);
+                    tiles.put(key, tile);
+                }
+                g.drawImage(tile, tx * TILE_SIZE - viewX, ty * TILE_SIZE - viewY, null);
+            }
+        }
+    }
+
+    // A shape was added on top of the board: paint it onto the cached tiles it touches
+    public synchronized void add(ColoredShape shape, Rectangle boardBounds) {
+        for (Map.Entry<TileKey, BufferedImage> entry : tiles.entrySet()) {
+            TileKey key = entry.getKey();
+            if (key.boardArea(MARGIN).intersects(boardBounds)) {
+                Graphics2D g = graphicsFor(entry.getValue(), key);
+                painter.paint(g, shape);
+                g.dispose();
+            }
+        }
+    }
+
+    // The board was cleared or replaced; every tile is rendered again when next shown
+    public synchronized void invalidate() {
+        tiles.clear();
+    }
+
+    // Shapes were erased from this part of the board; only the tiles it touches are rendered again
+    public synchronized void invalidate(Rectangle boardBounds) {
+        tiles.keySet().removeIf(key -> key.boardArea(MARGIN).intersects(boardBounds));
+    }
+
+    public synchronized int size() {
+        return tiles.size();
+    }
+
+    private BufferedImage render(TileKey key) {
+        BufferedImage tile = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = tile.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, TILE_SIZE, TILE_SIZE);
+        g.dispose();
+        g = graphicsFor(tile, key);
+        // Only the shapes in this tile, in board order so later shapes are drawn on top
+        for (ColoredShape shape : replica.query(key.boardArea(MARGIN))) {
+            painter.paint(g, shape);
+        }
+        g.dispose();
+        return tile;
+    }
+
+    private static Graphics2D graphicsFor(BufferedImage tile, TileKey key) {
+        Graphics2D g = tile.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.translate(-key.x * TILE_SIZE, -key.y * TILE_SIZE);
+        g.scale(key.zoom, key.zoom);
+        return g;
+    }
+
+    private static class TileKey {
+        final double zoom;
+        final int x, y;
+
+        TileKey(double zoom, int x, int y) {
+            this.zoom = zoom;
+            this.x = x;
+            this.y = y;
+        }
+
+        // Part of the board this tile shows, grown by margin board pixels
+        Rectangle2D boardArea(int margin) {
+            double size = TILE_SIZE / zoom;
+            return new Rectangle2D.Double(x * size - margin, y * size - margin, size + margin * 2, size + margin * 2);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof TileKey)) {
+                return false;
+            }
+            TileKey key = (TileKey) other;
+            return zoom == key.zoom && x == key.x && y == key.y;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(zoom, x, y);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+// Tokens refill continuously up to burst; a call takes one. The rate is passed in on every use, so the
+// owner can change it, e.g. to give each client a fair share of a rate they all share.
+public class TokenBucket {
+    private final double burst;
+    private double tokens;
+    private long refilledAt = System.nanoTime();
+
+    public TokenBucket(double burst) {
+        this.burst = Math.max(1, burst);
+        this.tokens = this.burst;
+    }
+
+    // Takes a token if at least reserve tokens are left afterwards
+    public synchronized boolean tryTake(double ratePerSecond, double reserve) {
+        refill(ratePerSecond);
+        if (tokens - 1 < reserve) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+
+    // Takes a token even if there is none; the debt, at most one burst, is paid off before the next
+    // tryTake() succeeds
+    public synchronized void take(double ratePerSecond) {
+        refill(ratePerSecond);
+        tokens = Math.max(tokens - 1, -burst);
+    }
+
+    // How long until tryTake() with no reserve succeeds at this rate, if nobody else takes one meanwhile
+    public synchronized long nanosUntilAvailable(double ratePerSecond) {
+        refill(ratePerSecond);
+        if (tokens >= 1) {
+            return 0;
+        }
+        return (long) Math.ceil((1 - tokens) / ratePerSecond * 1e9);
+    }
+
+    public double getBurst() {
+        return burst;
+    }
+
+    private void refill(double ratePerSecond) {
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - refilledAt) / 1e9 * ratePerSecond);
+        refilledAt = now;
+    }
+}
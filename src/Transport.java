@@ -0,0 +1,58 @@
+import java.rmi.NoSuchObjectException;
+import java.rmi.Remote;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.List;
+
+// How clients and servers reach each other's remote objects: Java RMI, or length-prefixed frames over
+// non-blocking sockets. Either way the objects are used through the same Remote interfaces.
+public interface Transport {
+
+    // Makes object reachable under name on port
+    void bind(int port, String name, Remote object) throws Exception;
+
+    Remote lookup(String host, int port, String name) throws Exception;
+
+    // Stops listening and drops every connection
+    void close();
+
+    // Gives up on a remote object, so calls stuck on it fail now rather than at the call timeout, and
+    // later calls fail at once. Other objects reached over the same connection are not affected. Only a
+    // SocketTransport proxy can be dropped this way; a stuck RMI call still ends at the response timeout
+    // RmiTransport sets.
+    static void drop(Remote object) {
+        SocketConnection.drop(object);
+    }
+
+    // Stops object from being reachable: by RMI, and by peer if peer is reached over a SocketTransport
+    // connection, which is where that transport exported object to
+    static void unexport(Remote object, Remote peer) {
+        try {
+            UnicastRemoteObject.unexportObject(object, true);
+        } catch (NoSuchObjectException e) {
+            // Not exported over RMI
+        }
+        SocketConnection.unexport(object, peer);
+    }
+
+    static Transport named(String name) {
+        switch (name.trim().toLowerCase()) {
+            case "rmi":
+                return new RmiTransport();
+            case "nio":
+                return new SocketTransport();
+            default:
+                throw new IllegalArgumentException("Unknown transport " + name + ", expected rmi or nio");
+        }
+    }
+
+    // Takes "--transport <rmi|nio>" out of the command line arguments, falling back to WhiteboardConfig
+    static Transport fromArgs(List<String> args) {
+        int index = args.indexOf("--transport");
+        if (index >= 0 && index + 1 < args.size()) {
+            String name = args.get(index + 1);
+            args.subList(index, index + 2).clear();
+            return named(name);
+        }
+        return named(WhiteboardConfig.transport());
+    }
+}
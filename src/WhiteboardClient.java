@@ -1,27 +1,49 @@
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.geom.Ellipse2D;
 import java.awt.image.BufferedImage;
 import java.rmi.RemoteException;
-import java.rmi.registry.LocateRegistry;
-import java.rmi.registry.Registry;
 import java.rmi.server.UnicastRemoteObject;
 import java.net.ConnectException;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 
-public class WhiteboardClient extends UnicastRemoteObject implements WhiteboardClientInterface {
+public class WhiteboardClient extends UnicastRemoteObject implements WhiteboardClientInterface, JoinListener {
     private JFrame frame;
     private JPanel panel;
     private JLabel statusLabel;
     private JLabel textModeLabel;
-    private BufferedImage image;
-    private Graphics2D graphics;
+    // The board is drawn from cached tiles; the view is panned and zoomed over it
+    private TileCache tiles;
+    // Top-left corner of the view, in view pixels (board pixels times the zoom)
+    private int viewX = 0, viewY = 0;
+    private int zoomLevel = DEFAULT_ZOOM_LEVEL;
+    // Start of a pan, in view pixels
+    private int panStartX, panStartY;
+    private boolean panning = false;
+    // Only used to measure text
+    private Graphics2D measureGraphics;
     private WhiteboardServerInterface server;
     private int startX, startY;
     private Shape tempShape = null;
@@ -31,9 +53,70 @@ public class WhiteboardClient extends UnicastRemoteObject implements WhiteboardC
     private JTextArea chatArea;
     private JTextField chatField;
     private JPanel chatPanel;
+    private JButton olderChatButton;
+    // Chat state, only touched on the EDT
+    private long lastChatSequence = 0;
+    private long oldestChatSequence = 0;
+    private boolean chatLoaded = false;
+    // Messages that arrive while the latest page of history is being fetched
+    private final List<ChatMessage> pendingChat = new ArrayList<>();
     private String userName;
+    private final String boardId;
+    // Completed with the grant when the server answers requestJoin, 0 if the join was denied
+    private final CompletableFuture<Long> joinAnswer = new CompletableFuture<>();
+    private final Transport transport;
     private boolean textInputMode = false;
     private boolean serverRunning = true;
+    // Local copy of the board, painting never asks the server
+    private final BoardReplica replica = new BoardReplica();
+    // Strokes that are still being drawn, ours and our peers', by stroke id
+    private final Map<Long, ColoredShape> previews = new LinkedHashMap<>();
+    // Ids of our own strokes and text blocks that the server has not committed yet
+    private final Set<Long> ownPreviews = new HashSet<>();
+    // Freehand points not yet sent to the server
+    private long currentStrokeId;
+    private int[] strokeBuffer = new int[64];
+    private int strokeBufferSize = 0;
+    private long lastStrokeFlush;
+    private boolean strokeFlushed;
+    private int lastFlushedX, lastFlushedY;
+    // Text block being typed, 0 if none; what was typed and what the server has of it
+    private long currentTextId = 0;
+    private final StringBuilder typedText = new StringBuilder();
+    private String sentText = "";
+    private int textX, textY;
+    private Color textColor;
+    // Sends what was typed at most once per interval
+    private javax.swing.Timer textFlushTimer;
+    // True while the board is being streamed from the server; guarded by this
+    private boolean syncing = true;
+    private boolean syncAgain = false;
+    // Shapes pushed by the server while syncing, applied once the stream has caught up
+    private final List<ColoredShape> liveDuringSync = new ArrayList<>();
+    // Erases pushed while syncing, applied after those shapes
+    private final List<long[]> erasedDuringSync = new ArrayList<>();
+    // Our own edits, newest first, for undo and redo; only touched on the EDT
+    private final Deque<Edit> undoHistory = new ArrayDeque<>();
+    private final Deque<Edit> redoHistory = new ArrayDeque<>();
+    // Erases and undo/redo go to the server from here, in order, so the EDT never waits on the network
+    private final ExecutorService edits = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "board-edits");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Shapes the eraser has hit since the mouse was pressed; only touched on the EDT
+    private final Set<Long> hitByDrag = new HashSet<>();
+    // Hits not yet sent to the server, flushed on the same budget as stroke points
+    private final List<Long> pendingErase = new ArrayList<>();
+    private long lastEraseFlush;
+    // What the server erased for the current drag; a new list per drag, filled in on the edits thread only
+    private List<Long> erasedByDrag = new ArrayList<>();
+    // How close to a shape the eraser has to come, in view pixels
+    private static final double ERASER_RADIUS = 6;
+    // Pixels added around a damaged area for the line width and antialiasing
+    private static final int DAMAGE_MARGIN = 2;
+    private static final double[] ZOOM_LEVELS = {0.25, 0.5, 0.75, 1, 1.5, 2, 3, 4};
+    private static final int DEFAULT_ZOOM_LEVEL = 3;
     // private String currentText = "";
     
 
@@ -42,31 +125,56 @@ public class WhiteboardClient extends UnicastRemoteObject implements WhiteboardC
         LINE,
         CIRCLE,
         OVAL,
-        RECTANGLE;
+        RECTANGLE,
+        ERASER;
+    }
+
+    // Shapes this client drew, or erased; undoing one erases or restores them and gives the edit that
+    // redoes it
+    private static class Edit {
+        final long[] sequences;
+        final boolean erased;
+
+        Edit(long[] sequences, boolean erased) {
+            this.sequences = sequences;
+            this.erased = erased;
+        }
     }
 
     public WhiteboardClient(String serverIPAddress, int serverPort, String userName) throws RemoteException {
+        this(serverIPAddress, serverPort, userName, BoardManager.DEFAULT_BOARD);
+    }
+
+    public WhiteboardClient(String serverIPAddress, int serverPort, String userName, String boardId) throws RemoteException {
+        this(serverIPAddress, serverPort, userName, boardId, new RmiTransport());
+    }
+
+    public WhiteboardClient(String serverIPAddress, int serverPort, String userName, String boardId, Transport transport) throws RemoteException {
         super();
         this.userName = userName;
+        this.boardId = boardId;
+        this.transport = transport;
 
-        image = new BufferedImage(850, 400, BufferedImage.TYPE_INT_RGB);
-        graphics = (Graphics2D) image.getGraphics();
-        graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-        graphics.setColor(Color.WHITE);
-        graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+        tiles = new TileCache(replica, WhiteboardConfig.tileCacheSize(), this::paintShape);
+        measureGraphics = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB).createGraphics();
+        textFlushTimer = new javax.swing.Timer(WhiteboardConfig.textFlushMillis(), e -> flushText());
+        textFlushTimer.setRepeats(false);
     }
 
     public void start(String serverIPAddress, int serverPort) {
         try {
-            Registry registry = LocateRegistry.getRegistry(serverIPAddress, serverPort);
-            server = (WhiteboardServerInterface) registry.lookup("WhiteboardServer");
+            BoardManagerInterface boards = (BoardManagerInterface) transport.lookup(serverIPAddress, serverPort, "WhiteboardBoards");
             
             System.out.print("Trying to connect to server... \n");
-            boolean connectionAllowed = server.requestConnection(userName);
+            boards.requestJoin(this, userName, boardId);
+            // The host may take a while; the server denies the join itself once it has waited too long
+            long grant = joinAnswer
+                    .completeOnTimeout(0L, WhiteboardConfig.joinTimeoutMillis() + 10_000, TimeUnit.MILLISECONDS)
+                    .get();
 
-            if (connectionAllowed) {
+            if (grant != 0) {
                 System.out.println("Connection allowed");
-                server.addClient(this, userName);
+                server = boards.addClient(this, userName, boardId, grant);
             } else {
                 JOptionPane.showMessageDialog(null, "Connection not allowed");
                 System.exit(0);
@@ -86,7 +194,7 @@ public class WhiteboardClient extends UnicastRemoteObject implements WhiteboardC
             System.exit(0);
         } 
 
-        frame = new JFrame("Whiteboard Client");
+        frame = new JFrame("Whiteboard Client - " + boardId);
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 
         JToolBar toolbar = CreateToolbar();
@@ -96,35 +204,31 @@ public class WhiteboardClient extends UnicastRemoteObject implements WhiteboardC
             @Override
             protected void paintComponent(Graphics g) {
                 super.paintComponent(g);
-                Graphics2D g2d = (Graphics2D) g;
-                g2d.drawImage(image, 0, 0, null);
+                // Only the tiles in view are drawn, and only those not cached yet are rendered
+                tiles.paint((Graphics2D) g, viewX, viewY, zoom(), getWidth(), getHeight());
+
+                // Previews are in board coordinates too
+                Graphics2D g2d = (Graphics2D) g.create();
+                g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+                g2d.translate(-viewX, -viewY);
+                g2d.scale(zoom(), zoom());
+
+                synchronized (previews) {
+                    for (ColoredShape preview : previews.values()) {
+                        paintShape(g2d, preview);
+                    }
+                }
 
                 if (drawing && tempShape != null) {
                     g2d.setColor(currentColor);
                     g2d.draw(tempShape);
                 }
+                g2d.dispose();
 
                 // if (textInputMode && !currentText.isEmpty()) {
                 //     g2d.setColor(currentColor);
                 //     g2d.drawString(currentText, startX, startY);
                 // }
-
-
-                try {
-                    for (ColoredShape shape : server.getDrawings()) {
-                        g2d.setColor(shape.getColor());
-        
-                        if (shape.getShape() instanceof Text2D) {
-                            Text2D text2D = (Text2D) shape.getShape();
-                            g2d.setFont(text2D.getFont());
-                            g2d.drawString(text2D.getText(), (float)text2D.getX(), (float)text2D.getY());
-                        } else {
-                            g2d.draw(shape.getShape());
-                        }
-                    }
-                } catch (RemoteException e) {
-                    e.printStackTrace();
-                }
             }
         };
         panel.setPreferredSize(new java.awt.Dimension(1000, 400));
@@ -144,17 +248,10 @@ public class WhiteboardClient extends UnicastRemoteObject implements WhiteboardC
         frame.pack();
         frame.setVisible(true);
 
-        try {
-            renderDrawings(server.getDrawings());
-        } catch (RemoteException e) {
-            e.printStackTrace();
-        }
+        // Shapes pushed before the frame existed were held back, the first sync applies them
+        new Thread(this::runSync, "board-sync").start();
 
-        try {
-            renderChatMessages(server.getChat());
-        } catch (RemoteException e) {
-            e.printStackTrace();
-        }
+        reloadChat();
 
         
         panel.setFocusable(true);
@@ -165,22 +262,41 @@ public class WhiteboardClient extends UnicastRemoteObject implements WhiteboardC
             public void mousePressed(MouseEvent e) {
                 panel.requestFocusInWindow();
 
+                if (SwingUtilities.isRightMouseButton(e) || SwingUtilities.isMiddleMouseButton(e)) {
+                    // Drag with the right or middle button to pan
+                    panning = true;
+                    panStartX = e.getX() + viewX;
+                    panStartY = e.getY() + viewY;
+                    return;
+                }
+
                 if (!serverRunning) {
                     return;
                 }
             
-                startX = e.getX();
-                startY = e.getY();
+                startX = boardX(e);
+                startY = boardY(e);
                 drawing = true;
+
+                if (currentShape == DrawingShape.LINE && !textInputMode) {
+                    beginStroke(startX, startY);
+                } else if (currentShape == DrawingShape.ERASER && !textInputMode) {
+                    hitByDrag.clear();
+                    erasedByDrag = new ArrayList<>();
+                    lastEraseFlush = System.currentTimeMillis();
+                    eraseAt(startX, startY);
+                }
             }
 
             @Override
             public void mouseClicked(MouseEvent e) {
                 panel.requestFocusInWindow();
 
-                if (textInputMode) {                    
-                    startX = e.getX();
-                    startY = e.getY();
+                if (textInputMode && SwingUtilities.isLeftMouseButton(e)) {
+                    // Clicking somewhere else finishes the block being typed
+                    commitText();
+                    startX = boardX(e);
+                    startY = boardY(e);
                     drawing = true;
                 }
             }
@@ -188,66 +304,95 @@ public class WhiteboardClient extends UnicastRemoteObject implements WhiteboardC
 
             @Override
             public void mouseReleased(MouseEvent e) {
+                if (panning) {
+                    panning = false;
+                    return;
+                }
 
-                if (!serverRunning || currentShape == null || textInputMode) {
+                if (!serverRunning || currentShape == null || textInputMode || !drawing) {
                     return;
                 }
 
                 drawing = false;
-                int x = e.getX();
-                int y = e.getY();
+                int x = boardX(e);
+                int y = boardY(e);
                 int width = Math.abs(x - startX);
                 int height = Math.abs(y - startY);
                 int topLeftX = Math.min(startX, x);
                 int topLeftY = Math.min(startY, y);
+                int color = currentColor.getRGB();
 
-                try {
-                    switch (currentShape) {
-                        case LINE:
-                            server.broadcastDrawLine(startX, startY, x, y, currentColor.getRGB());
-                            break;
-                        case CIRCLE:
-                            int diameter = Math.max(width, height);
-                            topLeftX = startX < x ? startX : startX - diameter;
-                            topLeftY = startY < y ? startY : startY - diameter;
-                            server.broadcastDrawCircle(topLeftX, topLeftY, diameter, currentColor.getRGB());
-                            break;
-                        case RECTANGLE:
-                            server.broadcastDrawRectangle(topLeftX, topLeftY, width, height, currentColor.getRGB());
-                            break;
-                        case OVAL:
-                            server.broadcastDrawOval(topLeftX, topLeftY, width, height, currentColor.getRGB());
-                            break;
-                        default:
-                            break;
+                // Sent on the edits thread, after the previews of the same shape
+                switch (currentShape) {
+                    case LINE: {
+                        if (x != startX || y != startY) {
+                            addStrokePoint(x, y);
+                        }
+                        flushStroke();
+                        long strokeId = currentStrokeId;
+                        addOnEdits(() -> server.commitStroke(strokeId));
+                        break;
                     }
-                } catch (RemoteException remoteException) {
-                    remoteException.printStackTrace();
+                    case CIRCLE: {
+                        int diameter = Math.max(width, height);
+                        int left = startX < x ? startX : startX - diameter;
+                        int top = startY < y ? startY : startY - diameter;
+                        addOnEdits(() -> server.broadcastDrawCircle(left, top, diameter, color));
+                        break;
+                    }
+                    case RECTANGLE:
+                        addOnEdits(() -> server.broadcastDrawRectangle(topLeftX, topLeftY, width, height, color));
+                        break;
+                    case OVAL:
+                        addOnEdits(() -> server.broadcastDrawOval(topLeftX, topLeftY, width, height, color));
+                        break;
+                    case ERASER:
+                        flushErase();
+                        recordErased(erasedByDrag);
+                        break;
+                    default:
+                        break;
                 }
 
-                tempShape = null;
-                panel.repaint();
+                if (tempShape != null) {
+                    repaintArea(tempShape.getBounds());
+                    tempShape = null;
+                }
             }
         });
 
         panel.addKeyListener(new KeyAdapter() {
             @Override
             public void keyTyped(KeyEvent e) {
-                if (textInputMode) {
-                    String text = Character.toString(e.getKeyChar());
-                    Font currentFont = new Font("Arial", Font.PLAIN, 20);
-                    
-                    // System.out.println("Text: " + text);
-                    // System.out.println("startX: " + startX);
-                    // System.out.println("startY: " + startY);
-                    // System.out.println("Color: " + currentColor.getRGB());
-
-                    try {
-                        server.broadcastDrawText(text, startX, startY, currentColor.getRGB());
-                        startX += graphics.getFontMetrics(currentFont).stringWidth(text);
-                    } catch (RemoteException remoteException) {
-                        remoteException.printStackTrace();
+                if (!textInputMode || !serverRunning) {
+                    return;
+                }
+                char c = e.getKeyChar();
+                if (c == '\n' || c == '\r') {
+                    // Enter finishes the block, the next one starts on the line below
+                    int nextX = currentTextId != 0 ? textX : startX;
+                    int nextY = (currentTextId != 0 ? textY : startY) + measureGraphics.getFontMetrics(Text2D.DEFAULT_FONT).getHeight();
+                    commitText();
+                    startX = nextX;
+                    startY = nextY;
+                    return;
+                }
+                if (c == '\b') {
+                    if (typedText.length() == 0) {
+                        return;
                     }
+                    typedText.setLength(typedText.length() - 1);
+                } else if (Character.isISOControl(c) || c == KeyEvent.CHAR_UNDEFINED) {
+                    return;
+                } else {
+                    if (currentTextId == 0) {
+                        beginText(startX, startY);
+                    }
+                    typedText.append(c);
+                }
+                showOwnText();
+                if (!textFlushTimer.isRunning()) {
+                    textFlushTimer.start();
                 }
             }
         });
@@ -257,24 +402,32 @@ public class WhiteboardClient extends UnicastRemoteObject implements WhiteboardC
         panel.addMouseMotionListener(new MouseAdapter() {
             @Override
             public void mouseDragged(MouseEvent e) {
+                if (panning) {
+                    viewX = panStartX - e.getX();
+                    viewY = panStartY - e.getY();
+                    panel.repaint();
+                    return;
+                }
                 if (textInputMode || !serverRunning) {
                     return;
                 }
 
-                int x = e.getX();
-                int y = e.getY();
+                int x = boardX(e);
+                int y = boardY(e);
                 int width = Math.abs(x - startX);
                 int height = Math.abs(y - startY);
                 int topLeftX = Math.min(startX, x);
                 int topLeftY = Math.min(startY, y);
 
                 if (drawing) {
+                    // Where the outline was, so it is erased as well as drawn at its new size
+                    Rectangle damage = tempShape != null ? tempShape.getBounds() : null;
                     switch (currentShape) {
                         case LINE:
-                            try {
-                                server.broadcastDrawLine(startX, startY, x, y, currentColor.getRGB());
-                            } catch (RemoteException remoteException) {
-                                remoteException.printStackTrace();
+                            addStrokePoint(x, y);
+                            if (strokeBufferSize >= WhiteboardConfig.strokeFlushPoints() * 2
+                                    || System.currentTimeMillis() - lastStrokeFlush >= WhiteboardConfig.strokeFlushMillis()) {
+                                flushStroke();
                             }
                             startX = x;
                             startY = y;
@@ -295,16 +448,402 @@ public class WhiteboardClient extends UnicastRemoteObject implements WhiteboardC
                             topLeftY = startY < y ? startY : y;
                             tempShape = new Ellipse2D.Double(topLeftX, topLeftY, width, height);
                             break;
+                        case ERASER:
+                            eraseAt(x, y);
+                            break;
                         default:
                             break;
                     }
+                    if (tempShape != null) {
+                        repaintArea(damage != null ? damage.union(tempShape.getBounds()) : tempShape.getBounds());
+                    }
                 }
+            }
+        });
 
-                panel.repaint();
+        // Zoom in and out around the mouse pointer with the wheel
+        panel.addMouseWheelListener(e -> {
+            int level = Math.max(0, Math.min(ZOOM_LEVELS.length - 1, zoomLevel - e.getWheelRotation()));
+            if (level == zoomLevel) {
+                return;
+            }
+            double boardPointX = (e.getX() + viewX) / zoom();
+            double boardPointY = (e.getY() + viewY) / zoom();
+            zoomLevel = level;
+            viewX = (int) Math.round(boardPointX * zoom()) - e.getX();
+            viewY = (int) Math.round(boardPointY * zoom()) - e.getY();
+            panel.repaint();
+        });
+
+        // Ctrl+Z undoes our last edit, Ctrl+Y or Ctrl+Shift+Z redoes it
+        InputMap keys = panel.getInputMap(JComponent.WHEN_FOCUSED);
+        keys.put(KeyStroke.getKeyStroke(KeyEvent.VK_Z, InputEvent.CTRL_DOWN_MASK), "undo");
+        keys.put(KeyStroke.getKeyStroke(KeyEvent.VK_Y, InputEvent.CTRL_DOWN_MASK), "redo");
+        keys.put(KeyStroke.getKeyStroke(KeyEvent.VK_Z, InputEvent.CTRL_DOWN_MASK | InputEvent.SHIFT_DOWN_MASK), "redo");
+        panel.getActionMap().put("undo", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                undo();
+            }
+        });
+        panel.getActionMap().put("redo", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                redo();
             }
         });
     } 
 
+    // VIEW
+    private double zoom() {
+        return ZOOM_LEVELS[zoomLevel];
+    }
+
+    // Board coordinates of a mouse event
+    private int boardX(MouseEvent e) {
+        return (int) Math.floor((e.getX() + viewX) / zoom());
+    }
+
+    private int boardY(MouseEvent e) {
+        return (int) Math.floor((e.getY() + viewY) / zoom());
+    }
+
+    // Id for a stroke or text block, unique enough between clients; 0 means none
+    private static long newPreviewId() {
+        long id;
+        do {
+            id = ThreadLocalRandom.current().nextLong();
+        } while (id == 0);
+        return id;
+    }
+
+    // FREEHAND STROKES
+    private void beginStroke(int x, int y) {
+        long strokeId = newPreviewId();
+        currentStrokeId = strokeId;
+        strokeBufferSize = 0;
+        strokeFlushed = false;
+        lastStrokeFlush = System.currentTimeMillis();
+
+        synchronized (previews) {
+            ownPreviews.add(strokeId);
+            previews.put(strokeId, new ColoredShape(new Path2D.Double(), currentColor, null));
+        }
+        addStrokePoint(x, y);
+    }
+
+    private void addStrokePoint(int x, int y) {
+        if (strokeBufferSize + 2 > strokeBuffer.length) {
+            strokeBuffer = Arrays.copyOf(strokeBuffer, strokeBuffer.length * 2);
+        }
+        strokeBuffer[strokeBufferSize++] = x;
+        strokeBuffer[strokeBufferSize++] = y;
+
+        // Our own stroke is shown straight away, the server copy follows in batches
+        synchronized (previews) {
+            ColoredShape preview = previews.get(currentStrokeId);
+            if (preview != null) {
+                Path2D path = (Path2D) preview.getShape();
+                Rectangle damage = new Rectangle(x, y, 0, 0);
+                Point2D last = path.getCurrentPoint();
+                if (last == null) {
+                    path.moveTo(x, y);
+                } else {
+                    path.lineTo(x, y);
+                    damage.add(last);
+                }
+                repaintArea(damage);
+            }
+        }
+    }
+
+    // Send the buffered points, simplified, as the next part of the current stroke; off the EDT, in
+    // order with the commit that ends it
+    private void flushStroke() {
+        if (strokeBufferSize == 0) {
+            return;
+        }
+        int[] points;
+        if (strokeFlushed) {
+            // Simplify together with the last point sent so the joint is kept
+            int[] joined = new int[strokeBufferSize + 2];
+            joined[0] = lastFlushedX;
+            joined[1] = lastFlushedY;
+            System.arraycopy(strokeBuffer, 0, joined, 2, strokeBufferSize);
+            int[] simplified = StrokeSimplifier.simplify(joined, WhiteboardConfig.strokeTolerance());
+            points = Arrays.copyOfRange(simplified, 2, simplified.length);
+        } else {
+            points = StrokeSimplifier.simplify(Arrays.copyOf(strokeBuffer, strokeBufferSize), WhiteboardConfig.strokeTolerance());
+        }
+        lastFlushedX = strokeBuffer[strokeBufferSize - 2];
+        lastFlushedY = strokeBuffer[strokeBufferSize - 1];
+        strokeBufferSize = 0;
+        strokeFlushed = true;
+        lastStrokeFlush = System.currentTimeMillis();
+
+        long strokeId = currentStrokeId;
+        int color = currentColor.getRGB();
+        edits.execute(() -> {
+            try {
+                server.appendStroke(strokeId, points, color);
+            } catch (RemoteException remoteException) {
+                remoteException.printStackTrace();
+            }
+        });
+    }
+
+    // ERASER
+    // Erases the shapes whose outline passes within the eraser radius of a board point. Hits are buffered
+    // and sent in batches like stroke points.
+    private void eraseAt(int x, int y) {
+        double tolerance = ERASER_RADIUS / zoom();
+        Rectangle2D area = new Rectangle2D.Double(x - tolerance, y - tolerance, tolerance * 2, tolerance * 2);
+        BasicStroke reach = new BasicStroke((float) (tolerance * 2));
+        List<Long> hits = new ArrayList<>();
+        // The index only knows bounding boxes, so check the outlines of what it finds
+        for (ColoredShape coloredShape : replica.query(area)) {
+            Shape shape = coloredShape.getShape();
+            boolean hit = shape instanceof Text2D
+                    ? damageOf(coloredShape).intersects(area)
+                    : reach.createStrokedShape(shape).contains(x, y);
+            // The shape stays in the replica until the server's erase comes back, so it is hit only once
+            if (hit && hitByDrag.add(coloredShape.getSequence())) {
+                pendingErase.add(coloredShape.getSequence());
+            }
+        }
+        if (pendingErase.size() >= WhiteboardConfig.strokeFlushPoints()
+                || System.currentTimeMillis() - lastEraseFlush >= WhiteboardConfig.strokeFlushMillis()) {
+            flushErase();
+        }
+    }
+
+    // Send the buffered hits off the EDT; the server sends the erase back to us like to everyone else,
+    // which repaints the area
+    private void flushErase() {
+        lastEraseFlush = System.currentTimeMillis();
+        if (pendingErase.isEmpty()) {
+            return;
+        }
+        long[] sequences = toArray(pendingErase);
+        pendingErase.clear();
+        List<Long> erasedByThisDrag = erasedByDrag;
+        edits.execute(() -> {
+            try {
+                for (long erased : server.eraseShapes(sequences)) {
+                    erasedByThisDrag.add(erased);
+                }
+            } catch (RemoteException remoteException) {
+                remoteException.printStackTrace();
+            }
+        });
+    }
+
+    // One drag of the eraser is undone as a whole, once everything it sent has been answered
+    private void recordErased(List<Long> erasedByThisDrag) {
+        edits.execute(() -> {
+            if (!erasedByThisDrag.isEmpty()) {
+                Edit edit = new Edit(toArray(erasedByThisDrag), true);
+                SwingUtilities.invokeLater(() -> record(edit));
+            }
+        });
+    }
+
+    private static long[] toArray(List<Long> values) {
+        long[] array = new long[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+
+    // UNDO
+    // A call that adds one shape and returns its sequence, 0 if the server did not add one
+    private interface ShapeAdd {
+        long add() throws RemoteException;
+    }
+
+    // Makes the call on the edits thread and records the shape back on the EDT
+    private void addOnEdits(ShapeAdd call) {
+        edits.execute(() -> {
+            try {
+                long sequence = call.add();
+                SwingUtilities.invokeLater(() -> recordDrawn(sequence));
+            } catch (RemoteException remoteException) {
+                remoteException.printStackTrace();
+            }
+        });
+    }
+
+    // A shape we added, 0 if the server did not add one
+    private void recordDrawn(long sequence) {
+        if (sequence != 0) {
+            record(new Edit(new long[] {sequence}, false));
+        }
+    }
+
+    private void record(Edit edit) {
+        undoHistory.push(edit);
+        while (undoHistory.size() > Math.max(1, WhiteboardConfig.undoDepth())) {
+            undoHistory.removeLast();
+        }
+        redoHistory.clear();
+    }
+
+    // The server is asked on the edits thread and the history updated back on the EDT. Edits that no
+    // longer change anything, e.g. shapes someone else erased since, are skipped. The history is only
+    // looked at once the edits still on their way have been recorded, so the one just made is undone.
+    private void undo() {
+        commitText();
+        edits.execute(() -> SwingUtilities.invokeLater(this::undoRecorded));
+    }
+
+    private void undoRecorded() {
+        if (undoHistory.isEmpty()) {
+            return;
+        }
+        Edit edit = undoHistory.pop();
+        edits.execute(() -> {
+            Edit redo = revert(edit);
+            SwingUtilities.invokeLater(() -> {
+                if (redo != null) {
+                    redoHistory.push(redo);
+                } else {
+                    undoRecorded();
+                }
+            });
+        });
+    }
+
+    private void redo() {
+        commitText();
+        edits.execute(() -> SwingUtilities.invokeLater(this::redoRecorded));
+    }
+
+    private void redoRecorded() {
+        if (redoHistory.isEmpty()) {
+            return;
+        }
+        Edit edit = redoHistory.pop();
+        edits.execute(() -> {
+            Edit undo = revert(edit);
+            SwingUtilities.invokeLater(() -> {
+                if (undo != null) {
+                    undoHistory.push(undo);
+                } else {
+                    redoRecorded();
+                }
+            });
+        });
+    }
+
+    // Erases what the edit drew or restores what it erased, and returns the edit that reverts that, or
+    // null if nothing changed. Restored shapes come back on top with new sequence numbers. Runs on the
+    // edits thread.
+    private Edit revert(Edit edit) {
+        try {
+            if (!edit.erased) {
+                long[] erased = server.eraseShapes(edit.sequences);
+                return erased.length == 0 ? null : new Edit(erased, true);
+            }
+            long[] restored = server.restoreShapes(edit.sequences);
+            int count = 0;
+            for (long sequence : restored) {
+                if (sequence != 0) {
+                    restored[count++] = sequence;
+                }
+            }
+            return count == 0 ? null : new Edit(Arrays.copyOf(restored, count), false);
+        } catch (RemoteException remoteException) {
+            remoteException.printStackTrace();
+            return null;
+        }
+    }
+
+    // TEXT BLOCKS
+    // Typed characters are kept here and sent in batches; the block is one shape once committed. Like
+    // strokes, the calls go to the server on the edits thread, in order.
+    private void beginText(int x, int y) {
+        long textId = newPreviewId();
+        currentTextId = textId;
+        textX = x;
+        textY = y;
+        textColor = currentColor;
+        typedText.setLength(0);
+        sentText = "";
+        synchronized (previews) {
+            ownPreviews.add(textId);
+        }
+        int color = textColor.getRGB();
+        edits.execute(() -> {
+            try {
+                server.openText(textId, x, y, color);
+            } catch (RemoteException remoteException) {
+                remoteException.printStackTrace();
+            }
+        });
+    }
+
+    // Our own block is shown straight away, the server copy follows in batches
+    private void showOwnText() {
+        if (currentTextId == 0) {
+            return;
+        }
+        String text = typedText.toString();
+        synchronized (previews) {
+            ColoredShape old = previews.remove(currentTextId);
+            Rectangle damage = old != null ? damageOf(old) : null;
+            if (!text.isEmpty()) {
+                ColoredShape preview = new ColoredShape(new Text2D(text, textX, textY, textColor, Text2D.DEFAULT_FONT), textColor, text);
+                previews.put(currentTextId, preview);
+                damage = damage != null ? damage.union(damageOf(preview)) : damageOf(preview);
+            }
+            repaintArea(damage);
+        }
+    }
+
+    // Send what changed since the last flush: how much of the sent text is kept, and what follows it
+    private void flushText() {
+        if (currentTextId == 0) {
+            return;
+        }
+        String text = typedText.toString();
+        int keep = 0;
+        int common = Math.min(text.length(), sentText.length());
+        while (keep < common && text.charAt(keep) == sentText.charAt(keep)) {
+            keep++;
+        }
+        if (keep == text.length() && keep == sentText.length()) {
+            return;
+        }
+        long textId = currentTextId;
+        int kept = keep;
+        String more = text.substring(keep);
+        edits.execute(() -> {
+            try {
+                server.appendText(textId, kept, more);
+            } catch (RemoteException remoteException) {
+                remoteException.printStackTrace();
+            }
+        });
+        sentText = text;
+    }
+
+    private void commitText() {
+        if (currentTextId == 0) {
+            return;
+        }
+        long textId = currentTextId;
+        textFlushTimer.stop();
+        flushText();
+        addOnEdits(() -> server.commitText(textId));
+        if (typedText.length() == 0) {
+            // Nothing to commit, so no shape will replace the preview
+            removePreview(textId);
+        }
+        currentTextId = 0;
+        typedText.setLength(0);
+    }
+
     class BottomScrollingTextArea extends JTextArea {
         @Override
         public void append(String str) {
@@ -326,6 +865,10 @@ public class WhiteboardClient extends UnicastRemoteObject implements WhiteboardC
         JLabel chatTitle = new JLabel("Chat Room");
         chatTitle.setHorizontalAlignment(SwingConstants.CENTER);
 
+        olderChatButton = new JButton("Load earlier messages");
+        olderChatButton.setEnabled(false);
+        olderChatButton.addActionListener(e -> loadOlderChat());
+
         JButton sendButton = new JButton("Send");
         sendButton.addActionListener(new ActionListener() {
             @Override
@@ -343,7 +886,10 @@ public class WhiteboardClient extends UnicastRemoteObject implements WhiteboardC
 
         chatPanel = new JPanel();
         chatPanel.setLayout(new BorderLayout());
-        chatPanel.add(chatTitle, BorderLayout.NORTH);
+        JPanel topPanel = new JPanel(new BorderLayout());
+        topPanel.add(chatTitle, BorderLayout.NORTH);
+        topPanel.add(olderChatButton, BorderLayout.SOUTH);
+        chatPanel.add(topPanel, BorderLayout.NORTH);
         chatPanel.add(chatAreaScrollPane, BorderLayout.CENTER);
 
         // Create a panel for the chat field and send button
@@ -415,6 +961,21 @@ public class WhiteboardClient extends UnicastRemoteObject implements WhiteboardC
         });
         buttonPanel.add(RectangleButton);
 
+        JButton eraserButton = new JButton("Eraser");
+        eraserButton.addActionListener(e -> {
+            currentShape = DrawingShape.ERASER;
+            statusLabel.setText("Current Status: " + currentShape.toString() + " | Current Color: " + colorToString(currentColor));
+        });
+        buttonPanel.add(eraserButton);
+
+        JButton undoButton = new JButton("Undo");
+        undoButton.addActionListener(e -> undo());
+        buttonPanel.add(undoButton);
+
+        JButton redoButton = new JButton("Redo");
+        redoButton.addActionListener(e -> redo());
+        buttonPanel.add(redoButton);
+
         JToggleButton textToggleButton = new JToggleButton("Text Mode");
         textToggleButton.addItemListener(e -> {
             if (e.getStateChange() == ItemEvent.SELECTED) {
@@ -423,6 +984,7 @@ public class WhiteboardClient extends UnicastRemoteObject implements WhiteboardC
                 textModeLabel.setText("Text Mode: ON"); 
             } else {
                 // Type mode is disabled
+                commitText();
                 textInputMode = false;
                 textModeLabel.setText("Text Mode: OFF");
             }
@@ -479,7 +1041,50 @@ public class WhiteboardClient extends UnicastRemoteObject implements WhiteboardC
     }
 
     @Override
-    public void draw(ColoredShape coloredShape) throws RemoteException {
+    public synchronized void draw(ColoredShape coloredShape) throws RemoteException {
+        if (syncing) {
+            liveDuringSync.add(coloredShape);
+            return;
+        }
+        switch (replica.append(coloredShape)) {
+            case APPLIED: {
+                Rectangle damage = damageOf(coloredShape);
+                tiles.add(coloredShape, damage);
+                removePreview(coloredShape.getPreviewId());
+                repaintArea(damage);
+                break;
+            }
+            case GAP:
+                // We missed at least one shape, fetch the whole board again
+                liveDuringSync.add(coloredShape);
+                startSync();
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public synchronized void erase(long[] sequences) throws RemoteException {
+        if (syncing) {
+            // The stream may have passed these shapes already
+            erasedDuringSync.add(sequences);
+            return;
+        }
+        eraseFromReplica(sequences);
+    }
+
+    // Only the tiles under the erased shapes are rendered again
+    private void eraseFromReplica(long[] sequences) {
+        for (ColoredShape erased : replica.erase(sequences)) {
+            Rectangle damage = damageOf(erased);
+            tiles.invalidate(damage);
+            repaintArea(damage);
+        }
+    }
+
+    // Draws a shape onto a tile, in board coordinates
+    private void paintShape(Graphics2D graphics, ColoredShape coloredShape) {
         Shape shape = coloredShape.getShape();
         Color color = coloredShape.getColor();
     
@@ -496,36 +1101,216 @@ public class WhiteboardClient extends UnicastRemoteObject implements WhiteboardC
                 graphics.setColor(color);
                 graphics.drawOval((int) ellipse.getX(), (int) ellipse.getY(), (int) ellipse.getWidth(), (int) ellipse.getHeight());
             }
+        } else if (shape instanceof Text2D) {
+            // Checked before Rectangle2D, which Text2D extends
+            Text2D text = (Text2D) shape;
+            graphics.setColor(color);
+            graphics.setFont(text.getFont());
+            graphics.drawString(text.getText(), (int) text.getX(), (int) text.getY());
         } else if (shape instanceof Rectangle2D) {
             Rectangle2D rectangle = (Rectangle2D) shape;
             graphics.setColor(color);
             graphics.drawRect((int) rectangle.getX(), (int) rectangle.getY(), (int) rectangle.getWidth(), (int) rectangle.getHeight());
 
             // System.out.println("Drawing rectangle: " + rectangle.getX() + ", " + rectangle.getY() + ", " + rectangle.getWidth() + ", " + rectangle.getHeight());
-        } else if (shape instanceof Text2D) {
-            Text2D text = (Text2D) shape;
+        } else {
+            // Polyline2D, and the Path2D of a stroke preview
             graphics.setColor(color);
-            graphics.setFont(text.getFont());
-            graphics.drawString(text.getText(), (int) text.getX(), (int) text.getY());
+            graphics.draw(shape);
         }
-        panel.repaint();
     }
     
 
     @Override
-    public void renderDrawings(CopyOnWriteArrayList<ColoredShape> drawings) throws RemoteException {
-        graphics.setColor(Color.WHITE);
-        graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
-        
-        for (ColoredShape coloredShape : drawings) {
-            draw(coloredShape);
+    public void joinAnswered(String boardId, boolean accepted, long grant) throws RemoteException {
+        joinAnswer.complete(accepted ? grant : 0L);
+    }
+
+    @Override
+    public void resync() throws RemoteException {
+        startSync();
+    }
+
+    // BOARD SYNC
+    private void startSync() {
+        synchronized (this) {
+            if (syncing) {
+                // The running sync starts over once it finishes its current pass
+                syncAgain = true;
+                return;
+            }
+            syncing = true;
+        }
+        new Thread(this::runSync, "board-sync").start();
+    }
+
+    private void runSync() {
+        while (true) {
+            try {
+                streamBoard();
+            } catch (RemoteException e) {
+                e.printStackTrace();
+                synchronized (this) {
+                    syncing = false;
+                    liveDuringSync.clear();
+                    erasedDuringSync.clear();
+                }
+                return;
+            }
+            synchronized (this) {
+                if (syncAgain) {
+                    syncAgain = false;
+                    continue;
+                }
+                // Apply what was pushed while we were streaming; older shapes are duplicates by now
+                boolean gap = false;
+                for (ColoredShape coloredShape : liveDuringSync) {
+                    BoardReplica.Result result = replica.append(coloredShape);
+                    if (result == BoardReplica.Result.APPLIED) {
+                        tiles.add(coloredShape, damageOf(coloredShape));
+                        removePreview(coloredShape.getPreviewId());
+                    } else if (result == BoardReplica.Result.GAP) {
+                        gap = true;
+                        break;
+                    }
+                }
+                if (gap) {
+                    continue;
+                }
+                liveDuringSync.clear();
+                for (long[] sequences : erasedDuringSync) {
+                    eraseFromReplica(sequences);
+                }
+                erasedDuringSync.clear();
+                syncing = false;
+                panel.repaint();
+                return;
+            }
+        }
+    }
+
+    // Fetch the board in chunks, drawing each chunk as it arrives
+    private void streamBoard() throws RemoteException {
+        long base = -1;
+        long after = 0;
+        while (true) {
+            BoardChunk chunk = server.getBoardChunk(after, WhiteboardConfig.snapshotChunkSize());
+            synchronized (this) {
+                if (chunk.getBaseSequence() != base) {
+                    // First chunk, or the board was cleared or replaced meanwhile: start from an empty board
+                    base = chunk.getBaseSequence();
+                    replica.reset(new BoardSnapshot(base, new ArrayList<>()));
+                    tiles.invalidate();
+                }
+                for (ColoredShape coloredShape : chunk.getShapes()) {
+                    replica.load(coloredShape);
+                    tiles.add(coloredShape, damageOf(coloredShape));
+                    removePreview(coloredShape.getPreviewId());
+                    after = coloredShape.getSequence();
+                }
+                if (chunk.isLast()) {
+                    // Shapes erased at the end of the board are not in the stream
+                    replica.advanceTo(chunk.getSequence());
+                }
+            }
+            panel.repaint();
+            if (chunk.isLast()) {
+                return;
+            }
         }
-        
-        panel.repaint();
     }
     
     
 
+    @Override
+    public void previewStroke(long strokeId, int[] points, int color) throws RemoteException {
+        synchronized (previews) {
+            if (ownPreviews.contains(strokeId)) {
+                return;
+            }
+            ColoredShape preview = previews.get(strokeId);
+            if (preview == null) {
+                preview = new ColoredShape(new Path2D.Double(), new Color(color), null);
+                previews.put(strokeId, preview);
+            }
+            Path2D path = (Path2D) preview.getShape();
+            Point2D last = path.getCurrentPoint();
+            Rectangle damage = last == null ? null : new Rectangle((int) last.getX(), (int) last.getY(), 0, 0);
+            for (int i = 0; i + 1 < points.length; i += 2) {
+                if (path.getCurrentPoint() == null) {
+                    path.moveTo(points[i], points[i + 1]);
+                } else {
+                    path.lineTo(points[i], points[i + 1]);
+                }
+                if (damage == null) {
+                    damage = new Rectangle(points[i], points[i + 1], 0, 0);
+                } else {
+                    damage.add(points[i], points[i + 1]);
+                }
+            }
+            // Only the new segments need painting
+            repaintArea(damage);
+        }
+    }
+
+    @Override
+    public void previewText(long textId, String text, int x, int y, int color) throws RemoteException {
+        synchronized (previews) {
+            if (ownPreviews.contains(textId)) {
+                return;
+            }
+            ColoredShape old = previews.remove(textId);
+            Rectangle damage = old != null ? damageOf(old) : null;
+            if (!text.isEmpty()) {
+                Color textColor = new Color(color);
+                ColoredShape preview = new ColoredShape(new Text2D(text, x, y, textColor, Text2D.DEFAULT_FONT), textColor, text);
+                previews.put(textId, preview);
+                damage = damage != null ? damage.union(damageOf(preview)) : damageOf(preview);
+            }
+            repaintArea(damage);
+        }
+    }
+
+    private void removePreview(long previewId) {
+        if (previewId == 0) {
+            return;
+        }
+        synchronized (previews) {
+            ColoredShape preview = previews.remove(previewId);
+            ownPreviews.remove(previewId);
+            if (preview != null) {
+                repaintArea(damageOf(preview));
+            }
+        }
+    }
+
+    // DAMAGE TRACKING
+    // Area of the board a shape covers
+    private Rectangle damageOf(ColoredShape coloredShape) {
+        Shape shape = coloredShape.getShape();
+        if (shape instanceof Text2D) {
+            // Text2D has no size of its own, measure the text from its baseline
+            Text2D text = (Text2D) shape;
+            FontMetrics metrics = measureGraphics.getFontMetrics(text.getFont());
+            return new Rectangle((int) text.getX(), (int) text.getY() - metrics.getAscent(),
+                    metrics.stringWidth(text.getText()), metrics.getAscent() + metrics.getDescent());
+        }
+        return shape.getBounds();
+    }
+
+    // Repaint only the part of the panel showing this area of the board; clear and a board sync still
+    // repaint all of it
+    private void repaintArea(Rectangle area) {
+        if (area == null || panel == null) {
+            return;
+        }
+        area.grow(DAMAGE_MARGIN, DAMAGE_MARGIN);
+        double zoom = zoom();
+        int x = (int) Math.floor(area.x * zoom) - viewX;
+        int y = (int) Math.floor(area.y * zoom) - viewY;
+        panel.repaint(x, y, (int) Math.ceil(area.width * zoom) + 1, (int) Math.ceil(area.height * zoom) + 1);
+    }
+
     @Override
     public void receiveMessage(String message) throws RemoteException {
         SwingUtilities.invokeLater(new Runnable() {
@@ -558,9 +1343,14 @@ public class WhiteboardClient extends UnicastRemoteObject implements WhiteboardC
         
 
     @Override
-    public void clear() throws RemoteException {
-        graphics.setColor(Color.WHITE);
-        graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+    public synchronized void clear() throws RemoteException {
+        if (syncing) {
+            // The stream may have already passed the cleared shapes, so fetch the board again
+            syncAgain = true;
+            return;
+        }
+        replica.clear();
+        tiles.invalidate();
         panel.repaint();
     }
 
@@ -582,18 +1372,94 @@ public class WhiteboardClient extends UnicastRemoteObject implements WhiteboardC
     }
 
     @Override
-    public void renderChatMessages(CopyOnWriteArrayList<String> messages) throws RemoteException {
+    public void receiveChatMessage(ChatMessage message) throws RemoteException {
         SwingUtilities.invokeLater(new Runnable() {
             @Override
             public void run() {
-                chatArea.setText("");
-                for (String message : messages) {
-                    chatArea.append(message + "\n");
+                if (!chatLoaded) {
+                    pendingChat.add(message);
+                } else if (message.getSequence() == lastChatSequence + 1) {
+                    chatArea.append(message.getText() + "\n");
+                    lastChatSequence = message.getSequence();
+                } else if (message.getSequence() > lastChatSequence) {
+                    // We missed a message, start again from the latest page
+                    pendingChat.add(message);
+                    reloadChat();
                 }
-                // chatArea.setCaretPosition(chatArea.getDocument().getLength());
             }
         });
     }
+
+    // Fetch the latest page of chat history off the EDT and show it
+    private void reloadChat() {
+        chatLoaded = false;
+        new Thread(() -> {
+            try {
+                ChatHistory history = server.getChatHistory(Long.MAX_VALUE, WhiteboardConfig.chatPageSize());
+                SwingUtilities.invokeLater(() -> showChatHistory(history));
+            } catch (RemoteException e) {
+                e.printStackTrace();
+            }
+        }, "chat-history").start();
+    }
+
+    private void showChatHistory(ChatHistory history) {
+        chatArea.setText("");
+        List<ChatMessage> messages = history.getMessages();
+        lastChatSequence = 0;
+        oldestChatSequence = messages.isEmpty() ? 0 : messages.get(0).getSequence();
+        for (ChatMessage message : messages) {
+            chatArea.append(message.getText() + "\n");
+            lastChatSequence = message.getSequence();
+        }
+        olderChatButton.setEnabled(history.hasOlder());
+        chatLoaded = true;
+
+        // Apply whatever arrived while the page was on its way
+        List<ChatMessage> pending = new ArrayList<>(pendingChat);
+        pendingChat.clear();
+        for (ChatMessage message : pending) {
+            if (lastChatSequence == 0 || message.getSequence() == lastChatSequence + 1) {
+                chatArea.append(message.getText() + "\n");
+                lastChatSequence = message.getSequence();
+                if (oldestChatSequence == 0) {
+                    oldestChatSequence = message.getSequence();
+                }
+            }
+        }
+    }
+
+    // Fetch the page before the oldest message shown and put it at the top
+    private void loadOlderChat() {
+        long before = oldestChatSequence;
+        if (before <= 1) {
+            olderChatButton.setEnabled(false);
+            return;
+        }
+        olderChatButton.setEnabled(false);
+        new Thread(() -> {
+            try {
+                ChatHistory history = server.getChatHistory(before, WhiteboardConfig.chatPageSize());
+                SwingUtilities.invokeLater(() -> {
+                    if (oldestChatSequence != before) {
+                        // The chat was reloaded meanwhile
+                        return;
+                    }
+                    StringBuilder text = new StringBuilder();
+                    for (ChatMessage message : history.getMessages()) {
+                        text.append(message.getText()).append("\n");
+                    }
+                    chatArea.insert(text.toString(), 0);
+                    if (!history.getMessages().isEmpty()) {
+                        oldestChatSequence = history.getMessages().get(0).getSequence();
+                    }
+                    olderChatButton.setEnabled(history.hasOlder());
+                });
+            } catch (RemoteException e) {
+                e.printStackTrace();
+            }
+        }, "chat-history").start();
+    }
     
     
 
@@ -637,9 +1503,18 @@ public class WhiteboardClient extends UnicastRemoteObject implements WhiteboardC
         return "RGB(" + color.getRed() + ", " + color.getGreen() + ", " + color.getBlue() + ")";
     }
 
-    public static void main(String[] args) {
+    public static void main(String[] commandLine) {
+        List<String> options = new ArrayList<>(Arrays.asList(commandLine));
+        Transport transport;
+        try {
+            transport = Transport.fromArgs(options);
+        } catch (IllegalArgumentException e) {
+            System.out.println("Error: " + e.getMessage());
+            return;
+        }
+        String[] args = options.toArray(new String[0]);
         if (args.length < 3) {
-            System.out.println("Usage: java JoinWhiteBoard <serverIPAddress> <serverPort> <username>");
+            System.out.println("Usage: java JoinWhiteBoard <serverIPAddress> <serverPort> <username> [boardId] [--transport rmi|nio]");
             return;
         }
     
@@ -652,9 +1527,14 @@ public class WhiteboardClient extends UnicastRemoteObject implements WhiteboardC
             return;
         }
         String username = args[2];
+        String boardId = args.length > 3 ? args[3] : BoardManager.DEFAULT_BOARD;
+        if (!BoardManager.isValidBoardId(boardId)) {
+            System.out.println("Error: board ids are 1 to 64 letters, digits, '-' or '_'");
+            return;
+        }
     
         try {
-            WhiteboardClient client = new WhiteboardClient(serverIPAddress, serverPort, username);
+            WhiteboardClient client = new WhiteboardClient(serverIPAddress, serverPort, username, boardId, transport);
             client.start(serverIPAddress, serverPort);
         } catch (Exception e) {
             e.printStackTrace();
@@ -1,12 +1,20 @@
 import java.awt.Color;
 import java.rmi.Remote;
 import java.rmi.RemoteException;
-import java.util.concurrent.CopyOnWriteArrayList;
 
 public interface WhiteboardClientInterface extends Remote {
     void draw(ColoredShape shape) throws RemoteException;
 
-    void renderDrawings(CopyOnWriteArrayList<ColoredShape> drawings) throws RemoteException;
+    // The client's copy of the board is out of date and should be fetched again
+    void resync() throws RemoteException;
+
+    // The shapes with these sequence numbers were erased
+    void erase(long[] sequences) throws RemoteException;
+
+    void previewStroke(long strokeId, int[] points, int color) throws RemoteException;
+
+    // The whole text typed so far in a block that is not committed yet; empty if it was abandoned
+    void previewText(long textId, String text, int x, int y, int color) throws RemoteException;
 
     void receiveMessage(String message) throws RemoteException;
 
@@ -18,5 +26,5 @@ public interface WhiteboardClientInterface extends Remote {
 
     boolean ping() throws RemoteException;
 
-    void renderChatMessages(CopyOnWriteArrayList<String> chatMessages) throws RemoteException;
+    void receiveChatMessage(ChatMessage message) throws RemoteException;
 }
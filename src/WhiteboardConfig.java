@@ -0,0 +1,188 @@
+import java.util.HashSet;
+import java.util.Set;
+
+// Tunables for the whiteboard server, read from system properties (e.g. -Dwhiteboard.fanout.queueSize=2048)
+public final class WhiteboardConfig {
+
+    private WhiteboardConfig() {
+    }
+
+    // Maximum number of pending calls per client before the overflow policy applies
+    public static int fanOutQueueSize() {
+        return Integer.getInteger("whiteboard.fanout.queueSize", 1024);
+    }
+
+    // What to do with a client whose queue is full: DROP, COALESCE or EVICT
+    public static OverflowPolicy fanOutOverflowPolicy() {
+        String value = System.getProperty("whiteboard.fanout.overflow", OverflowPolicy.COALESCE.name());
+        return OverflowPolicy.valueOf(value.trim().toUpperCase());
+    }
+
+    // Number of threads shared by all client senders
+    public static int fanOutThreads() {
+        return Integer.getInteger("whiteboard.fanout.threads", Math.max(2, Runtime.getRuntime().availableProcessors()));
+    }
+
+    // Freehand strokes are sent to the server once this many points are buffered...
+    public static int strokeFlushPoints() {
+        return Integer.getInteger("whiteboard.stroke.flushPoints", 32);
+    }
+
+    // ...or once this many milliseconds have passed since the last flush
+    public static int strokeFlushMillis() {
+        return Integer.getInteger("whiteboard.stroke.flushMillis", 40);
+    }
+
+    // Characters typed into a text block are sent to the server at most this often
+    public static int textFlushMillis() {
+        return Integer.getInteger("whiteboard.text.flushMillis", 100);
+    }
+
+    // Ramer-Douglas-Peucker tolerance in pixels, 0 disables simplification
+    public static double strokeTolerance() {
+        return Double.parseDouble(System.getProperty("whiteboard.stroke.tolerance", "1.0"));
+    }
+
+    // How often clients that have not been heard from are pinged
+    public static long heartbeatIntervalMillis() {
+        return Long.getLong("whiteboard.heartbeat.intervalMillis", 1000);
+    }
+
+    // How long a ping may take before it counts as missed
+    public static long heartbeatTimeoutMillis() {
+        return Long.getLong("whiteboard.heartbeat.timeoutMillis", 2000);
+    }
+
+    // Missed heartbeats in a row before a client is removed
+    public static int heartbeatMaxMissed() {
+        return Integer.getInteger("whiteboard.heartbeat.maxMissed", 3);
+    }
+
+    // Number of chat messages the server keeps for late joiners
+    public static int chatRetention() {
+        return Integer.getInteger("whiteboard.chat.retention", 1000);
+    }
+
+    // Number of chat messages fetched per page of history
+    public static int chatPageSize() {
+        return Integer.getInteger("whiteboard.chat.pageSize", 50);
+    }
+
+    // Number of shapes per chunk when a client streams the board
+    public static int snapshotChunkSize() {
+        return Integer.getInteger("whiteboard.snapshot.chunkSize", 2000);
+    }
+
+    // Side in pixels of a cell of the spatial index over the board
+    public static int indexCellSize() {
+        return Integer.getInteger("whiteboard.index.cellSize", 64);
+    }
+
+    // Board tiles a client keeps rendered, 256x256 pixels each (128 tiles are about 32 MB)
+    public static int tileCacheSize() {
+        return Integer.getInteger("whiteboard.tiles.cacheSize", 128);
+    }
+
+    // Where the board journal and checkpoints are kept; empty disables the journal
+    public static String journalDirectory() {
+        return System.getProperty("whiteboard.journal.dir", "whiteboard-journal").trim();
+    }
+
+    // Shapes journaled between two checkpoints of the whole board
+    public static int journalCheckpointEvery() {
+        return Integer.getInteger("whiteboard.journal.checkpointEvery", 50000);
+    }
+
+    // How long erased shapes can still be restored by undo or redo before the compactor may drop them
+    public static long undoRetentionMillis() {
+        return Long.getLong("whiteboard.undo.retentionMillis", 300_000L);
+    }
+
+    // How often each board checks whether erased shapes are worth compacting away
+    public static long compactIntervalMillis() {
+        return Long.getLong("whiteboard.compact.intervalMillis", 30_000L);
+    }
+
+    // Most undo steps a client remembers
+    public static int undoDepth() {
+        return Integer.getInteger("whiteboard.undo.depth", 100);
+    }
+
+    // Shapes, erases and clears one client may make per second, 0 for no limit
+    public static double drawRateLimit() {
+        return Double.parseDouble(System.getProperty("whiteboard.limit.drawPerSecond", "100"));
+    }
+
+    // How many of those a client may make at once after drawing nothing for a while
+    public static double drawBurst() {
+        return Double.parseDouble(System.getProperty("whiteboard.limit.drawBurst", "200"));
+    }
+
+    // Shapes per second shared equally by the clients drawing on a board, 0 for no shared limit
+    public static double boardDrawRateLimit() {
+        return Double.parseDouble(System.getProperty("whiteboard.limit.boardPerSecond", "2000"));
+    }
+
+    // Chat messages one client may send per second, 0 for no limit
+    public static double chatRateLimit() {
+        return Double.parseDouble(System.getProperty("whiteboard.limit.chatPerSecond", "5"));
+    }
+
+    public static double chatBurst() {
+        return Double.parseDouble(System.getProperty("whiteboard.limit.chatBurst", "10"));
+    }
+
+    // How long a call over its limit may wait for the limit to allow it before it is refused
+    public static long admissionMaxWaitMillis() {
+        return Long.getLong("whiteboard.limit.maxWaitMillis", 50L);
+    }
+
+    // Who may join: ask (the host or an admin approves), accept (anyone) or allowlist (only those in
+    // whiteboard.join.allow); see JoinPolicy
+    public static String joinPolicy() {
+        return System.getProperty("whiteboard.join.policy", "ask");
+    }
+
+    // Comma-separated user names that join without being approved
+    public static Set<String> joinAllowlist() {
+        Set<String> names = new HashSet<>();
+        for (String name : System.getProperty("whiteboard.join.allow", "").split(",")) {
+            if (!name.trim().isEmpty()) {
+                names.add(name.trim());
+            }
+        }
+        return names;
+    }
+
+    // How long a join waits for approval before it is denied
+    public static long joinTimeoutMillis() {
+        return Long.getLong("whiteboard.join.timeoutMillis", 120_000L);
+    }
+
+    // A board nobody has been on for this long is written out and unloaded until it is joined again
+    public static long boardIdleMillis() {
+        return Long.getLong("whiteboard.board.idleMillis", 300_000L);
+    }
+
+    // Longest any remote call may wait for its reply before it fails, so a peer whose connection went
+    // half-dead cannot hold the calling thread (e.g. a fan-out sender) for good
+    public static long callTimeoutMillis() {
+        return Long.getLong("whiteboard.call.timeoutMillis", 15_000L);
+    }
+
+    // Shared by the nodes of a cluster; the leader only lets followers that know it join as nodes, and
+    // refuses them all while it is empty
+    public static String clusterSecret() {
+        return System.getProperty("whiteboard.cluster.secret", "");
+    }
+
+    // How clients reach the server when the command line does not say: rmi or nio
+    public static String transport() {
+        return System.getProperty("whiteboard.transport", "rmi");
+    }
+
+    // Local port of the Prometheus /metrics endpoint, 0 leaves it off (JMX is always on)
+    public static int metricsPort() {
+        return Integer.getInteger("whiteboard.metrics.port", 0);
+    }
+}
@@ -1,10 +1,16 @@
 import java.rmi.RemoteException;
-import java.rmi.registry.LocateRegistry;
-import java.rmi.registry.Registry;
+import java.rmi.ServerException;
 import java.rmi.server.UnicastRemoteObject;
 import java.awt.geom.*;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import javax.swing.*;
 import java.awt.*;
 import javax.swing.event.ListSelectionEvent;
@@ -19,38 +25,267 @@ import java.time.format.DateTimeFormatter;
 
 public class WhiteboardServer extends UnicastRemoteObject implements WhiteboardServerInterface {
 
+    private final String boardId;
+    private final ServerExecutors executors;
+    // True when this is a single board that made its own threads, rather than one of a BoardManager's
+    private final boolean ownsExecutors;
     private CopyOnWriteArrayList<WhiteboardClientInterface> clients;
-    private CopyOnWriteArrayList<ColoredShape> drawings;
-    private CopyOnWriteArrayList<String> chat;
+    private ShapeLog drawings;
+    private ChatLog chat;
+    // Names of the joined clients for the host's list; only touched on the EDT
     DefaultListModel<String> listModel = new DefaultListModel<>();
+    // The name each client joined with, to take it off the list again
+    private final Map<WhiteboardClientInterface, String> clientNames = new ConcurrentHashMap<>();
     private File currentFile;
     private String hostUserName;
+    // Set once a BoardManager hosts the board
+    private volatile JoinRequests joins;
+    private BroadcastFanOut fanOut;
+    private HeartbeatMonitor heartbeat;
+    private final BoardMetrics metrics;
+    // Rate limits of the clients that joined through the BoardManager, see ClientSession
+    private final AdmissionControl admission = new AdmissionControl();
+    // The session each of those clients talks to, unexported when the client leaves
+    private final Map<WhiteboardClientInterface, ClientSession> sessions = new ConcurrentHashMap<>();
+    // Null when journaling is disabled
+    private BoardJournal journal;
+    // Freehand strokes that have been started but not committed yet, by stroke id
+    private final Map<Long, PendingStroke> pendingStrokes = new ConcurrentHashMap<>();
+    // Text blocks that are being typed, by text id
+    private final Map<Long, PendingText> pendingTexts = new ConcurrentHashMap<>();
+    // When the last client left (or the board was loaded), 0 while anyone is on it
+    private volatile long idleSince = System.currentTimeMillis();
+    // Only set on a cluster follower. Writes are forwarded to the leader's copy of this board, which
+    // orders them and sends them back to every node through the relay.
+    private final BoardManagerInterface leaderBoards;
+    private final String nodeName;
+    private volatile WhiteboardServerInterface leader;
+    private ClusterRelay relay;
+    private ScheduledFuture<?> leaderCheck;
+    private final ScheduledFuture<?> compactor;
+    // Serializes applying what the leader sends with pulling the whole board from it
+    private final Object replicationLock = new Object();
 
     public WhiteboardServer(String serverIPAddress, int serverPort, String userName) throws RemoteException {
+        this(BoardManager.DEFAULT_BOARD, new ServerExecutors(), true, null, null);
+    }
+
+    // One of the boards hosted by a BoardManager, running on its shared threads
+    public WhiteboardServer(String boardId, ServerExecutors executors) throws RemoteException {
+        this(boardId, executors, false, null, null);
+    }
+
+    // The copy of a board on a cluster follower node, kept in step with the same board on the leader
+    public WhiteboardServer(String boardId, ServerExecutors executors, BoardManagerInterface leaderBoards, String nodeName) throws RemoteException {
+        this(boardId, executors, false, leaderBoards, nodeName);
+    }
+
+    private WhiteboardServer(String boardId, ServerExecutors executors, boolean ownsExecutors,
+                             BoardManagerInterface leaderBoards, String nodeName) throws RemoteException {
+        this.boardId = boardId;
+        this.executors = executors;
+        this.ownsExecutors = ownsExecutors;
+        this.leaderBoards = leaderBoards;
+        this.nodeName = nodeName;
         clients = new CopyOnWriteArrayList<>();
-        drawings = new CopyOnWriteArrayList<>();
-        chat = new CopyOnWriteArrayList<>();
+        drawings = new ShapeLog();
+        chat = new ChatLog(WhiteboardConfig.chatRetention());
+        fanOut = new BroadcastFanOut(executors.fanOut(), WhiteboardConfig.fanOutQueueSize(),
+                WhiteboardConfig.fanOutOverflowPolicy(), WhiteboardClientInterface::resync, this::evictClient);
+        heartbeat = new HeartbeatMonitor(executors.scheduler(), executors.pings(), WhiteboardConfig.heartbeatIntervalMillis(),
+                WhiteboardConfig.heartbeatTimeoutMillis(), WhiteboardConfig.heartbeatMaxMissed(), this::evictClient);
+        metrics = new BoardMetrics(boardId, drawings, fanOut);
+        executors.metrics().add(metrics);
+        heartbeat.setPingListener(metrics::pinged);
+        fanOut.setDeliveryListener(new BroadcastFanOut.DeliveryListener() {
+            @Override
+            public void delivered(WhiteboardClientInterface client, long latencyNanos, int payloadBytes) {
+                heartbeat.recordSuccess(client);
+                metrics.delivered(client, latencyNanos, payloadBytes);
+            }
+
+            @Override
+            public void failed(WhiteboardClientInterface client, RemoteException e) {
+                heartbeat.recordFailure(client);
+            }
+        });
+        if (leaderBoards == null) {
+            recoverBoard();
+        } else {
+            // The leader journals the board, a follower only holds a copy
+            followLeader();
+        }
+        long interval = Math.max(1, WhiteboardConfig.compactIntervalMillis());
+        compactor = executors.scheduler().scheduleWithFixedDelay(this::compact, interval, interval, TimeUnit.MILLISECONDS);
     }
 
-    public void start(int serverPort, String userName) {
+    // Drops erased shapes nobody can restore any more, once there are enough of them to be worth copying
+    // the board for. The journal lets go of them at its next checkpoint.
+    private void compact() {
         try {
-            this.hostUserName = userName;
-            Registry registry = LocateRegistry.createRegistry(serverPort);
-            registry.bind("WhiteboardServer", this);
-            System.out.println("Server started");
-            createServerGUI(userName);
+            int erased = drawings.getErasedCount();
+            if (erased > 0 && erased >= drawings.size() / 8) {
+                drawings.compact(TimeUnit.MILLISECONDS.toNanos(WhiteboardConfig.undoRetentionMillis()));
+            }
+        } catch (RuntimeException e) {
+            // Keep the schedule going
+            e.printStackTrace();
+        }
+    }
+
+    private void followLeader() throws RemoteException {
+        relay = new ClusterRelay(this);
+        leader = leaderBoards.addNode(relay, "node " + nodeName, boardId, WhiteboardConfig.clusterSecret());
+        pullBoard();
+        long period = Math.max(1, WhiteboardConfig.heartbeatIntervalMillis());
+        leaderCheck = executors.scheduler().scheduleWithFixedDelay(this::checkLeader, period, period, TimeUnit.MILLISECONDS);
+    }
 
-            WhiteboardClient client = new WhiteboardClient("localhost", serverPort, userName);
-            client.start("localhost", serverPort);
+    // The leader calls every node at least once per heartbeat interval. After a longer silence it has
+    // most likely evicted this node, so join it again and catch up.
+    private void checkLeader() {
+        long silence = System.currentTimeMillis() - relay.getLastHeard();
+        long limit = WhiteboardConfig.heartbeatIntervalMillis() * (WhiteboardConfig.heartbeatMaxMissed() + 2)
+                + WhiteboardConfig.heartbeatTimeoutMillis();
+        if (silence < limit) {
+            return;
+        }
+        try {
+            System.out.println("No word from the cluster leader for " + silence + " ms, joining board " + boardId + " again");
+            leader.removeClient(relay);
+            leader = leaderBoards.addNode(relay, "node " + nodeName, boardId, WhiteboardConfig.clusterSecret());
+            relay.ping();
+            pullBoard();
+        } catch (RemoteException | RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Replaces this node's copy with the leader's current board. Shapes still on their way from the
+    // leader are then either already included or next in sequence.
+    void pullBoard() throws RemoteException {
+        synchronized (replicationLock) {
+            long base = -1;
+            long after = 0;
+            List<ColoredShape> shapes = new ArrayList<>();
+            BoardChunk chunk;
+            while (true) {
+                chunk = leader.getBoardChunk(after, WhiteboardConfig.snapshotChunkSize());
+                if (chunk.getBaseSequence() != base) {
+                    // First chunk, or the board was cleared or replaced meanwhile
+                    base = chunk.getBaseSequence();
+                    shapes = new ArrayList<>();
+                }
+                for (ColoredShape shape : chunk.getShapes()) {
+                    shapes.add(shape);
+                    after = shape.getSequence();
+                }
+                if (chunk.isLast()) {
+                    break;
+                }
+            }
+            // Erased shapes leave gaps, the last chunk says where the leader's numbering is
+            drawings.restore(base, chunk.getSequence(), shapes, snapshot -> broadcastResync());
+        }
+    }
+
+    // A shape the leader has sequenced. It only fits if it is the next one; a gap means something was
+    // coalesced away on the way here.
+    void applyReplicated(ColoredShape shape) throws RemoteException {
+        synchronized (replicationLock) {
+            long last = drawings.getLastSequence();
+            if (shape.getSequence() <= last) {
+                return;
+            }
+            if (shape.getSequence() != last + 1) {
+                pullBoard();
+                return;
+            }
+            int bytes = BoardMetrics.encodedSize(shape);
+            drawings.append(shape, published -> {
+                metrics.countShape(published);
+                fanOut.broadcastBoard(client -> client.draw(published), bytes);
+            });
+        }
+    }
+
+    void applyErased(long[] sequences) {
+        synchronized (replicationLock) {
+            drawings.erase(sequences, erased -> fanOut.broadcastBoard(client -> client.erase(erased), 8 * erased.length));
+        }
+    }
+
+    // Calls from the leader that are passed on to this node's clients as they are
+    void relayBoard(ClientCall call) {
+        fanOut.broadcastBoard(call);
+    }
+
+    void relayPreview(ClientCall call) {
+        fanOut.broadcastPreview(call, 0);
+    }
+
+    void relay(ClientCall call) {
+        fanOut.broadcast(call);
+    }
+
+    // Rebuild the board from the journal left by the last run, then journal every change from here on
+    private void recoverBoard() {
+        File directory = BoardManager.journalDirectory(boardId);
+        if (directory == null) {
+            return;
+        }
+        BoardJournal recovered = new BoardJournal(directory, WhiteboardConfig.journalCheckpointEvery());
+        // Before recover(), which reports the damaged records it skips
+        recovered.setFlushListener(metrics);
+        try {
+            long start = System.nanoTime();
+            BoardSnapshot snapshot = recovered.recover();
+            // Sequence numbers are kept, erase records in the journal refer to them
+            drawings.restore(0, snapshot.getSequence(), snapshot.getShapes(), null);
+            recovered.start(drawings);
+            journal = recovered;
+            System.out.println("Recovered " + snapshot.getShapes().size() + " shapes from " + directory + " in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms");
+        } catch (IOException e) {
+            // Leave the files alone rather than journal over them
+            System.out.println("Board journal disabled, could not recover from " + directory);
+            e.printStackTrace();
+        }
+    }
+
+    public void start(int serverPort, String userName) {
+        start(serverPort, userName, new RmiTransport());
+    }
+
+    public void start(int serverPort, String userName, Transport transport) {
+        start(serverPort, userName, transport, GraphicsEnvironment.isHeadless());
+    }
+
+    // A headless server has no window and no client of the host's own; its joins are answered by the
+    // join policy, or over JMX
+    public void start(int serverPort, String userName, Transport transport, boolean headless) {
+        try {
+            BoardManager manager = new BoardManager(executors, userName);
+            manager.host(this);
+            transport.bind(serverPort, "WhiteboardBoards", manager);
+            System.out.println("Server started" + (headless ? " headless" : ""));
+            if (!headless) {
+                manager.joinRequests().setApprover(this::askHost);
+                createServerGUI(userName);
+
+                WhiteboardClient client = new WhiteboardClient("localhost", serverPort, userName, boardId, transport);
+                client.start("localhost", serverPort);
+            }
 
-            checkClientsStatus();
+            heartbeat.start();
+            manager.start();
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
     private void createServerGUI(String userName) {
-        JFrame serverFrame = new JFrame("Whiteboard Server" + " - " + userName);
+        JFrame serverFrame = new JFrame("Whiteboard Server" + " - " + userName + " - " + boardId);
         serverFrame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         serverFrame.setLayout(new BorderLayout());
 
@@ -65,17 +300,13 @@ public class WhiteboardServer extends UnicastRemoteObject implements WhiteboardS
             // Clear the current file
             currentFile = null;
             serverFrame.setTitle(userName);
-            drawings.clear();
+            try {
+                replaceBoard(new ArrayList<>());
+            } catch (RemoteException ex) {
+                ex.printStackTrace();
+            }
             // System.out.println("New file created");
             JOptionPane.showMessageDialog(serverFrame, "New file created");
-
-            for (WhiteboardClientInterface client : clients) {
-                try {
-                    client.renderDrawings(drawings);
-                } catch (RemoteException ex) {
-                    ex.printStackTrace();
-                }
-            }
         });
         menu.add(menuItem);
     
@@ -87,27 +318,9 @@ public class WhiteboardServer extends UnicastRemoteObject implements WhiteboardS
                 currentFile = fileChooser.getSelectedFile();
                 serverFrame.setTitle(userName + " - " + currentFile.getName());
             
-                try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(currentFile))) {
-                    drawings.clear();  // clear the previous drawings
-                    while (true) {
-                        try {
-                            ColoredShape drawing = (ColoredShape) ois.readObject();
-                            drawings.add(drawing);
-                        } catch (EOFException ex) {
-                            // We've reached the end of the file, break the loop
-                            break;
-                        }
-                    }
+                try {
+                    openBoard(currentFile);
                     JOptionPane.showMessageDialog(serverFrame, "File opened successfully");
-                    
-                    // Now inform all clients about the new drawings
-                    for (WhiteboardClientInterface client : clients) {
-                        try {
-                            client.renderDrawings(drawings);
-                        } catch (RemoteException ex) {
-                            ex.printStackTrace();
-                        }
-                    }
                 } catch (IOException | ClassNotFoundException ex) {
                     ex.printStackTrace();
                 }
@@ -137,10 +350,8 @@ public class WhiteboardServer extends UnicastRemoteObject implements WhiteboardS
                 }
             }
             // Save the state to the current file
-            try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(currentFile))) {
-                for (ColoredShape drawing : drawings) {
-                    oos.writeObject(drawing);
-                }
+            try {
+                saveBoard(currentFile);
                 // System.out.println(currentFile.getName() + " saved successfully");
                 JOptionPane.showMessageDialog(serverFrame, "File saved successfully");
             } catch (IOException ex) {
@@ -161,10 +372,8 @@ public class WhiteboardServer extends UnicastRemoteObject implements WhiteboardS
                 serverFrame.setTitle(userName + " - " + currentFile.getName());
         
                 // Save the state to the selected file
-                try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(currentFile))) {
-                    for (ColoredShape drawing : drawings) {
-                        oos.writeObject(drawing);
-                    }
+                try {
+                    saveBoard(currentFile);
                     // System.out.println(currentFile.getName() + " saved successfully");
                     JOptionPane.showMessageDialog(serverFrame, "File saved successfully");
                     
@@ -174,6 +383,21 @@ public class WhiteboardServer extends UnicastRemoteObject implements WhiteboardS
             }
         });
         menu.add(menuItem);
+
+        menuItem = new JMenuItem("Export Legacy Format");
+        menuItem.addActionListener(e -> {
+            JFileChooser fileChooser = new JFileChooser();
+            int returnValue = fileChooser.showSaveDialog(serverFrame);
+            if (returnValue == JFileChooser.APPROVE_OPTION) {
+                try {
+                    exportLegacyBoard(fileChooser.getSelectedFile());
+                    JOptionPane.showMessageDialog(serverFrame, "File exported successfully");
+                } catch (IOException ex) {
+                    ex.printStackTrace();
+                }
+            }
+        });
+        menu.add(menuItem);
         
     
         menuItem = new JMenuItem("Close");
@@ -181,17 +405,13 @@ public class WhiteboardServer extends UnicastRemoteObject implements WhiteboardS
             // Close the current file
             currentFile = null;
             serverFrame.setTitle(userName);
-            drawings.clear();
+            try {
+                replaceBoard(new ArrayList<>());
+            } catch (RemoteException ex) {
+                ex.printStackTrace();
+            }
             // System.out.println("File closed");
             JOptionPane.showMessageDialog(serverFrame, "File closed");
-
-            for (WhiteboardClientInterface client : clients) {
-                try {
-                    client.renderDrawings(drawings);
-                } catch (RemoteException ex) {
-                    ex.printStackTrace();
-                }
-            }
         });
         menu.add(menuItem);
     
@@ -212,13 +432,14 @@ public class WhiteboardServer extends UnicastRemoteObject implements WhiteboardS
         serverFrame.setVisible(true);
 
         removeClientButton.addActionListener(e -> {
-            int selectedIndex = clientList.getSelectedIndex();
-            if (selectedIndex != -1) {
+            // By name, the list and the clients need not be in the same order
+            WhiteboardClientInterface client = clientNamed(clientList.getSelectedValue());
+            if (client != null) {
                 try {
-                    clients.get(selectedIndex).clear();
-                    clients.get(selectedIndex).receiveMessage("You have been removed from the server");
-                    clients.get(selectedIndex).renderDrawings(drawings);
-                    removeClient(clients.get(selectedIndex));
+                    client.clear();
+                    client.receiveMessage("You have been removed from the server");
+                    client.resync();
+                    removeClient(client);
                 } catch (RemoteException ex) {
                     ex.printStackTrace();
                 }
@@ -255,145 +476,478 @@ public class WhiteboardServer extends UnicastRemoteObject implements WhiteboardS
         });
     }    
 
-    public boolean displayConnectionRequest(String userName) {
-        int response = JOptionPane.showConfirmDialog(null, userName + " wants to join. Do you accept?", "Connection Request", JOptionPane.YES_NO_OPTION);
-        return response == JOptionPane.YES_OPTION;
+    // Opens a board file in either format; a legacy file is converted to the indexed format on the next Save
+    public void openBoard(File file) throws IOException, ClassNotFoundException {
+        List<ColoredShape> loaded;
+        if (BoardFile.isBoardFile(file)) {
+            try (BoardFile board = BoardFile.open(file)) {
+                loaded = board.readAll();
+            }
+        } else if (BoardFile.isLegacyFile(file)) {
+            loaded = BoardFile.readLegacy(file);
+        } else {
+            throw new StreamCorruptedException("Not a whiteboard file: " + file);
+        }
+        // Replace the previous drawings and inform all clients about the new ones.
+        // The loaded shapes get new sequence numbers in place of the ones they were saved with.
+        replaceBoard(loaded);
+    }
+
+    public void saveBoard(File file) throws IOException {
+        BoardFile.write(file, drawings.snapshot().getShapes());
+    }
+
+    // Writes the board in the format File > Save used before the indexed format
+    public void exportLegacyBoard(File file) throws IOException {
+        BoardFile.writeLegacy(file, drawings.snapshot().getShapes());
+    }
+
+    // Stop background work and unexport the server, e.g. when it is embedded in a benchmark
+    // or paged out by its BoardManager
+    public void shutdown() {
+        try {
+            UnicastRemoteObject.unexportObject(this, true);
+        } catch (java.rmi.NoSuchObjectException e) {
+            // Already unexported
+        }
+        if (relay != null) {
+            leaderCheck.cancel(false);
+            try {
+                leader.removeClient(relay);
+                UnicastRemoteObject.unexportObject(relay, true);
+            } catch (RemoteException e) {
+                // The leader is gone already
+            }
+        }
+        compactor.cancel(false);
+        heartbeat.stop();
+        fanOut.shutdown();
+        if (journal != null) {
+            journal.close();
+        }
+        executors.metrics().remove(metrics);
+        if (ownsExecutors) {
+            executors.shutdown();
+        }
+    }
+
+    public String getBoardId() {
+        return boardId;
+    }
+
+    void setHostUserName(String hostUserName) {
+        this.hostUserName = hostUserName;
+    }
+
+    // Used by boards a BoardManager loads; the host's board starts its heartbeat in start()
+    void startHeartbeat() {
+        heartbeat.start();
+    }
+
+    // Whether the board survives being unloaded: it is journaled here, or held by the cluster leader
+    public boolean canPageOut() {
+        return journal != null || leader != null;
+    }
+
+    // How long nobody has been on this board, 0 while anyone is
+    public long idleMillis() {
+        long since = idleSince;
+        return since == 0 ? 0 : System.currentTimeMillis() - since;
+    }
+
+    void setJoinRequests(JoinRequests joins) {
+        this.joins = joins;
+    }
+
+    // Asked on the event thread, so the join holds no transport thread while the dialog is up
+    private void askHost(JoinRequests.Pending request) {
+        SwingUtilities.invokeLater(() -> {
+            String board = BoardManager.DEFAULT_BOARD.equals(request.getBoardId()) ? "" : " board " + request.getBoardId();
+            int response = JOptionPane.showConfirmDialog(null, request.getUserName() + " wants to join" + board + ". Do you accept?",
+                    "Connection Request", JOptionPane.YES_NO_OPTION);
+            // Does nothing if the request timed out or was answered over JMX meanwhile
+            if (response == JOptionPane.YES_OPTION) {
+                joins.approve(request.getId());
+            } else {
+                joins.deny(request.getId());
+            }
+        });
     }
 
+    // Left from the single-board server. It cannot wait for the host without holding the call, so it only
+    // says whether the join policy accepts userName outright; joining takes the grant from
+    // BoardManagerInterface.requestJoin either way.
     @Override
     public boolean requestConnection(String userName) throws RemoteException {
-        if(userName.equals(hostUserName)) {
-            return true;
-        } else {
-            return displayConnectionRequest(userName);
+        if (leader != null) {
+            // The leader answers joins for the whole cluster
+            return leader.requestConnection(userName);
         }
+        if (joins != null) {
+            return joins.acceptsNow(userName, boardId);
+        }
+        return userName.equals(hostUserName);
     }
     
 
     @Override
     public void addClient(WhiteboardClientInterface client, String userName) throws RemoteException {
+        idleSince = 0;
         clients.add(client);
+        metrics.clientJoined(client, userName);
+        fanOut.register(client);
+        heartbeat.register(client);
         String clientName = userName;
+        clientNames.put(client, clientName);
         System.out.println(clientName + " added");
-        listModel.addElement(clientName);
+        SwingUtilities.invokeLater(() -> listModel.addElement(clientName));
+    }
+
+    private WhiteboardClientInterface clientNamed(String clientName) {
+        for (Map.Entry<WhiteboardClientInterface, String> entry : clientNames.entrySet()) {
+            if (entry.getValue().equals(clientName)) {
+                return entry.getKey();
+            }
+        }
+        return null;
+    }
+
+    // Remembers the session a client joined through, so it is unexported when the client leaves
+    void setSession(WhiteboardClientInterface client, ClientSession session) {
+        ClientSession previous = sessions.put(client, session);
+        if (previous != null) {
+            previous.close();
+        }
     }
 
     @Override
     public void removeClient(WhiteboardClientInterface client) throws RemoteException {
-        int index = clients.indexOf(client);
         clients.remove(client);
+        fanOut.unregister(client);
+        heartbeat.unregister(client);
+        metrics.clientLeft(client);
+        ClientSession session = sessions.remove(client);
+        if (session != null) {
+            session.close();
+        }
         System.out.println("Client removed");
-        if (index != -1) {
-            listModel.remove(index);
+        String clientName = clientNames.remove(client);
+        if (clientName != null) {
+            // By name on the EDT, after the add; an index taken here could be stale by then
+            SwingUtilities.invokeLater(() -> listModel.removeElement(clientName));
+        }
+        if (clients.isEmpty()) {
+            idleSince = System.currentTimeMillis();
         }
     }
 
     @Override
-    public void broadcastDrawText(String text, int x, int y, int color) throws RemoteException {
-        Font font = new Font("Arial", Font.PLAIN, 20); 
-        Text2D text2D = new Text2D(text, x, y, new Color(color), font);
-        ColoredShape coloredText = new ColoredShape(text2D, new Color(color), text);
-        drawings.add(coloredText);
-        for (WhiteboardClientInterface client : clients) {
-            client.draw(coloredText);
-            client.renderDrawings(drawings);
+    public long broadcastDrawText(String text, int x, int y, int color) throws RemoteException {
+        if (leader != null) {
+            return leader.broadcastDrawText(text, x, y, color);
+        }
+        if (text.length() > ShapeCodec.MAX_TEXT_LENGTH) {
+            text = text.substring(0, ShapeCodec.MAX_TEXT_LENGTH);
         }
+        Text2D text2D = new Text2D(text, x, y, new Color(color), Text2D.DEFAULT_FONT);
+        ColoredShape coloredText = new ColoredShape(text2D, new Color(color), text);
+        return appendAndBroadcast(coloredText);
     }
     
 
     @Override
-    public void broadcastDrawLine(int x1, int y1, int x2, int y2, int color) throws RemoteException {
+    public long broadcastDrawLine(int x1, int y1, int x2, int y2, int color) throws RemoteException {
+        if (leader != null) {
+            return leader.broadcastDrawLine(x1, y1, x2, y2, color);
+        }
         Line2D line = new Line2D.Double(x1, y1, x2, y2);
         ColoredShape coloredLine = new ColoredShape(line, new Color(color), null);
-        drawings.add(coloredLine);
-        for (WhiteboardClientInterface client : clients) {
-            client.draw(coloredLine);
-            client.renderDrawings(drawings);
+        return appendAndBroadcast(coloredLine);
+    }
+
+    @Override
+    public void appendStroke(long strokeId, int[] points, int color) throws RemoteException {
+        if (leader != null) {
+            leader.appendStroke(strokeId, points, color);
+            return;
+        }
+        if (points.length % 2 != 0) {
+            return;
+        }
+        PendingStroke stroke = pendingStrokes.computeIfAbsent(strokeId, id -> new PendingStroke(color));
+        int added = stroke.append(points);
+        if (added == 0) {
+            return;
         }
+        int[] shown = added == points.length ? points : Arrays.copyOf(points, added);
+        metrics.countOperation("stroke-points");
+        // Peers show the stroke while it is drawn, but it only enters the board once committed
+        fanOut.broadcastPreview(client -> client.previewStroke(strokeId, shown, color), 12 + 4 * shown.length);
     }
 
     @Override
-    public void broadcastDrawCircle(int x, int y, int diameter, int color) throws RemoteException {
+    public long commitStroke(long strokeId) throws RemoteException {
+        if (leader != null) {
+            return leader.commitStroke(strokeId);
+        }
+        PendingStroke stroke = pendingStrokes.remove(strokeId);
+        if (stroke == null) {
+            return 0;
+        }
+        int[] points = stroke.getPoints();
+        if (points.length == 2) {
+            // A click without dragging, keep it as a dot like a zero-length line
+            points = new int[] {points[0], points[1], points[0], points[1]};
+        }
+        ColoredShape coloredStroke = new ColoredShape(new Polyline2D(points), new Color(stroke.getColor()), null);
+        coloredStroke.setPreviewId(strokeId);
+        return appendAndBroadcast(coloredStroke);
+    }
+
+    @Override
+    public void discardPreviews(long[] strokeIds, long[] textIds) throws RemoteException {
+        if (leader != null) {
+            leader.discardPreviews(strokeIds, textIds);
+            return;
+        }
+        for (long strokeId : strokeIds) {
+            pendingStrokes.remove(strokeId);
+        }
+        for (long textId : textIds) {
+            PendingText pending = pendingTexts.remove(textId);
+            if (pending != null) {
+                fanOut.broadcastBoard(client -> client.previewText(textId, "", pending.getX(), pending.getY(), pending.getColor()));
+            }
+        }
+    }
+
+    @Override
+    public void openText(long textId, int x, int y, int color) throws RemoteException {
+        if (leader != null) {
+            leader.openText(textId, x, y, color);
+            return;
+        }
+        pendingTexts.putIfAbsent(textId, new PendingText(x, y, color));
+    }
+
+    @Override
+    public void appendText(long textId, int keep, String text) throws RemoteException {
+        if (leader != null) {
+            leader.appendText(textId, keep, text);
+            return;
+        }
+        PendingText pending = pendingTexts.get(textId);
+        if (pending == null) {
+            return;
+        }
+        String typed = pending.edit(keep, text);
+        metrics.countOperation("text-edit");
+        // Peers show the block as it grows, it only enters the board once committed
+        fanOut.broadcastPreview(client -> client.previewText(textId, typed, pending.getX(), pending.getY(), pending.getColor()),
+                20 + typed.length());
+    }
+
+    @Override
+    public long commitText(long textId) throws RemoteException {
+        if (leader != null) {
+            return leader.commitText(textId);
+        }
+        PendingText pending = pendingTexts.remove(textId);
+        if (pending == null) {
+            return 0;
+        }
+        String text = pending.getText();
+        if (text.isEmpty()) {
+            // Nothing was typed, only take the preview down; not a preview itself, no commit follows it
+            fanOut.broadcastBoard(client -> client.previewText(textId, "", pending.getX(), pending.getY(), pending.getColor()));
+            return 0;
+        }
+        Color color = new Color(pending.getColor());
+        ColoredShape coloredText = new ColoredShape(new Text2D(text, pending.getX(), pending.getY(), color, Text2D.DEFAULT_FONT), color, text);
+        coloredText.setPreviewId(textId);
+        return appendAndBroadcast(coloredText);
+    }
+
+    @Override
+    public long broadcastDrawCircle(int x, int y, int diameter, int color) throws RemoteException {
+        if (leader != null) {
+            return leader.broadcastDrawCircle(x, y, diameter, color);
+        }
         Ellipse2D circle = new Ellipse2D.Double(x, y, diameter, diameter);
         ColoredShape coloredCircle = new ColoredShape(circle, new Color(color), null);
-        drawings.add(coloredCircle);
-        for (WhiteboardClientInterface client : clients) {
-            client.draw(coloredCircle);
-            client.renderDrawings(drawings);
-        }
+        return appendAndBroadcast(coloredCircle);
     }
     
     @Override
-    public void broadcastDrawOval(int x, int y, int width, int height, int color) throws RemoteException {
+    public long broadcastDrawOval(int x, int y, int width, int height, int color) throws RemoteException {
+        if (leader != null) {
+            return leader.broadcastDrawOval(x, y, width, height, color);
+        }
         Ellipse2D oval = new Ellipse2D.Double(x, y, width, height);
         ColoredShape coloredOval = new ColoredShape(oval, new Color(color), null);
-        drawings.add(coloredOval);
-        for (WhiteboardClientInterface client : clients) {
-            client.draw(coloredOval);
-            client.renderDrawings(drawings);
-        }
+        return appendAndBroadcast(coloredOval);
     }
     
     @Override
-    public void broadcastDrawRectangle(int x, int y, int width, int height, int color) throws RemoteException {
+    public long broadcastDrawRectangle(int x, int y, int width, int height, int color) throws RemoteException {
+        if (leader != null) {
+            return leader.broadcastDrawRectangle(x, y, width, height, color);
+        }
         Rectangle2D rectangle = new Rectangle2D.Double(x, y, width, height);
         ColoredShape coloredRectangle = new ColoredShape(rectangle, new Color(color), null);
-        drawings.add(coloredRectangle);
-        for (WhiteboardClientInterface client : clients) {
-            client.draw(coloredRectangle);
-            client.renderDrawings(drawings);
-        }
+        return appendAndBroadcast(coloredRectangle);
     }
     
-    @Override
-    public CopyOnWriteArrayList<ColoredShape> getDrawings() throws RemoteException {
-        return drawings;
+    // Stamp the shape with the next sequence number and queue only that shape for the clients.
+    // The log publishes shapes in sequence order, so every client's queue stays in that order.
+    // The call returns once the shape is in the journal; the fsync it waits for is shared with concurrent callers.
+    private long appendAndBroadcast(ColoredShape shape) throws RemoteException {
+        long[] ticket = new long[1];
+        // Sized before it has a sequence number, which is a varint of a few bytes
+        int bytes = BoardMetrics.encodedSize(shape);
+        long sequence = drawings.append(shape, published -> ticket[0] = publish(published, bytes));
+        awaitJournal(ticket[0]);
+        return sequence;
+    }
+
+    // Journals and queues a shape the log has just published; returns the journal ticket
+    private long publish(ColoredShape shape, int bytes) {
+        long ticket = journal != null ? journal.append(shape) : 0;
+        metrics.countShape(shape);
+        fanOut.broadcastBoard(client -> client.draw(shape), bytes);
+        return ticket;
     }
 
+    // Clients are only sent the sequence numbers; each repaints where the erased shapes were from its own copy
     @Override
-    public CopyOnWriteArrayList<String> getChat() throws RemoteException {
-        return chat;
+    public long[] eraseShapes(long[] sequences) throws RemoteException {
+        if (leader != null) {
+            return leader.eraseShapes(sequences);
+        }
+        long[] ticket = new long[1];
+        long[] erased = drawings.erase(sequences, gone -> {
+            if (journal != null) {
+                ticket[0] = journal.erase(gone);
+            }
+            metrics.countOperation("erase");
+            fanOut.broadcastBoard(client -> client.erase(gone), 8 * gone.length);
+        });
+        awaitJournal(ticket[0]);
+        return erased;
     }
-    
 
+    // Restored shapes are appended like new ones, so they reach clients and the journal as ordinary draws
     @Override
-    public void clear() throws RemoteException {
-        drawings.clear();
-        for (WhiteboardClientInterface client : clients) {
-            client.clear();
+    public long[] restoreShapes(long[] sequences) throws RemoteException {
+        if (leader != null) {
+            return leader.restoreShapes(sequences);
+        }
+        long[] ticket = new long[1];
+        long[] restored = drawings.revive(sequences, published -> {
+            ticket[0] = publish(published, BoardMetrics.encodedSize(published));
+            metrics.countOperation("restore");
+        });
+        awaitJournal(ticket[0]);
+        return restored;
+    }
+
+    private void replaceBoard(List<ColoredShape> shapes) throws RemoteException {
+        long[] ticket = new long[1];
+        drawings.replace(shapes, snapshot -> {
+            if (journal != null) {
+                ticket[0] = journal.replace(snapshot.getShapes());
+            }
+            broadcastResync();
+        });
+        awaitJournal(ticket[0]);
+    }
+
+    // The change is on the board and with the clients either way; the caller is told it will not survive
+    // a restart
+    private void awaitJournal(long ticket) throws RemoteException {
+        if (journal != null && ticket != 0 && !journal.awaitDurable(ticket)) {
+            throw new ServerException("Board journal failed, the change is not durable", journal.getFailure());
         }
     }
 
+    // Tell every client to fetch the board again, used when the board is replaced rather than appended to
+    private void broadcastResync() {
+        fanOut.broadcastBoard(WhiteboardClientInterface::resync);
+    }
+
+    // Called by the fan-out when a client falls too far behind under the EVICT policy,
+    // and by the heartbeat monitor when a client stops answering
+    private void evictClient(WhiteboardClientInterface client) {
+        try {
+            System.out.println("Evicting unresponsive client");
+            removeClient(client);
+        } catch (RemoteException e) {
+            e.printStackTrace();
+        }
+        // A fan-out thread may be stuck in a call to the client; failing it frees the thread
+        Transport.drop(client);
+    }
+
+    BoardMetrics metrics() {
+        return metrics;
+    }
+
+    AdmissionControl admission() {
+        return admission;
+    }
+
     @Override
-    public void broadcastMessage(String message) throws RemoteException {
-        for (WhiteboardClientInterface client : clients) {
-            client.receiveMessage(message);
+    public BoardSnapshot getSnapshot() {
+        return drawings.snapshot();
+    }
+
+    @Override
+    public BoardChunk getBoardChunk(long afterSequence, int limit) {
+        return drawings.chunk(afterSequence, Math.max(1, Math.min(limit, WhiteboardConfig.snapshotChunkSize())));
+    }
+
+    @Override
+    public ChatHistory getChatHistory(long beforeSequence, int limit) throws RemoteException {
+        if (leader != null) {
+            return leader.getChatHistory(beforeSequence, limit);
         }
+        return chat.page(beforeSequence, limit);
     }
+    
 
-    private void checkClientsStatus() {
-        Timer timer = new Timer(5, e -> {
-            for (int i = 0; i < clients.size(); i++) {
-                WhiteboardClientInterface client = clients.get(i);
-                try {
-                    if (!client.ping()) {
-                        removeClient(client);
-                    }
-                } catch (RemoteException ex) {
-                    try {
-                        removeClient(client);
-                    } catch (RemoteException rex) {
-                        rex.printStackTrace();
-                    }
-                }
+    @Override
+    public void clear() throws RemoteException {
+        if (leader != null) {
+            leader.clear();
+            return;
+        }
+        metrics.countOperation("clear");
+        long[] ticket = new long[1];
+        drawings.clear(() -> {
+            if (journal != null) {
+                ticket[0] = journal.clear();
             }
+            fanOut.broadcastBoard(WhiteboardClientInterface::clear);
         });
-        timer.setInitialDelay(0);
-        timer.start();
+        awaitJournal(ticket[0]);
+    }
+
+    @Override
+    public void broadcastMessage(String message) throws RemoteException {
+        if (leader != null) {
+            leader.broadcastMessage(message);
+            return;
+        }
+        metrics.countOperation("message");
+        fanOut.broadcast(client -> client.receiveMessage(message), message.length());
     }
 
     @Override
     public void addChatMessage(String userName, String message) throws RemoteException {
+        if (leader != null) {
+            leader.addChatMessage(userName, message);
+            return;
+        }
         // Generate a timestamp for the message
         LocalDateTime now = LocalDateTime.now();
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("HH:mm:ss");
@@ -401,18 +955,12 @@ public class WhiteboardServer extends UnicastRemoteObject implements WhiteboardS
     
         String fullMessage = "[" + timeString + "] " + userName + ": " + message;
         System.out.println("Adding chat message: " + fullMessage);
-        chat.add(fullMessage);
-        for (WhiteboardClientInterface client : clients) {
-            try {
-                client.renderChatMessages(chat);
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
-        }
+        metrics.countOperation("chat");
+        chat.append(fullMessage, chatMessage -> fanOut.broadcast(client -> client.receiveChatMessage(chatMessage), fullMessage.length()));
     }
 
     public void printAllDrawingTexts() {
-        for (ColoredShape drawing : drawings) {
+        for (ColoredShape drawing : drawings.snapshot().getShapes()) {
             if (drawing.getText() != null) {
                 System.out.println("Drawing Text: " + drawing.getText());
             }
@@ -420,20 +968,29 @@ public class WhiteboardServer extends UnicastRemoteObject implements WhiteboardS
     }
     
 
-    public static void main(String[] args) {
+    public static void main(String[] commandLine) {
+        List<String> options = new ArrayList<>(Arrays.asList(commandLine));
+        Transport transport = Transport.fromArgs(options);
+        boolean headless = options.remove("--headless") || GraphicsEnvironment.isHeadless();
+        String[] args = options.toArray(new String[0]);
         if (args.length < 3) {
-            System.out.println("Usage: java CreateWhiteBoard <serverIPAddress> <port> <username>");
+            System.out.println("Usage: java CreateWhiteBoard <serverIPAddress> <port> <username> [boardId] [--transport rmi|nio] [--headless]");
             System.exit(1);
         }
 
         String serverIPAddress = args[0];
         int port = Integer.parseInt(args[1]);
         String userName = args[2];
+        String boardId = args.length > 3 ? args[3] : BoardManager.DEFAULT_BOARD;
+        if (!BoardManager.isValidBoardId(boardId)) {
+            System.out.println("Error: board ids are 1 to 64 letters, digits, '-' or '_'");
+            System.exit(1);
+        }
 
         try {
-            WhiteboardServer server = new WhiteboardServer(serverIPAddress, port, userName);
+            WhiteboardServer server = new WhiteboardServer(boardId, new ServerExecutors(), true, null, null);
             System.out.println("Whiteboard server is running...");
-            server.start(port, userName);
+            server.start(port, userName, transport, headless);
 
             server.printAllDrawingTexts();
         } catch (Exception e) {
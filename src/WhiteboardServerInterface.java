@@ -1,6 +1,5 @@
 import java.rmi.Remote;
 import java.rmi.RemoteException;
-import java.util.concurrent.CopyOnWriteArrayList;
 
 public interface WhiteboardServerInterface extends Remote {
     void addClient(WhiteboardClientInterface client, String userName) throws RemoteException;
@@ -9,23 +8,49 @@ public interface WhiteboardServerInterface extends Remote {
 
     void broadcastMessage(String message) throws RemoteException;
 
-    void broadcastDrawLine(int x1, int y1, int x2, int y2, int color) throws RemoteException;
+    // The calls that add a shape return its sequence number, 0 if nothing was added
+    long broadcastDrawLine(int x1, int y1, int x2, int y2, int color) throws RemoteException;
 
     void clear() throws RemoteException;
 
-    void broadcastDrawCircle(int x, int y, int diameter, int color) throws RemoteException;
+    long broadcastDrawCircle(int x, int y, int diameter, int color) throws RemoteException;
 
-    void broadcastDrawOval(int x, int y, int width, int height, int color) throws RemoteException;
+    long broadcastDrawOval(int x, int y, int width, int height, int color) throws RemoteException;
 
-    void broadcastDrawText(String text, int x, int y, int color) throws RemoteException;
+    long broadcastDrawText(String text, int x, int y, int color) throws RemoteException;
 
-    void broadcastDrawRectangle(int x, int y, int width, int height, int color) throws RemoteException;
+    long broadcastDrawRectangle(int x, int y, int width, int height, int color) throws RemoteException;
 
-    CopyOnWriteArrayList<ColoredShape> getDrawings() throws RemoteException;
+    void appendStroke(long strokeId, int[] points, int color) throws RemoteException;
+
+    long commitStroke(long strokeId) throws RemoteException;
+
+    // A text block is typed as openText, any number of appendText calls, then commitText, which adds it
+    // to the board as one shape. appendText keeps the first keep characters typed so far and appends text.
+    void openText(long textId, int x, int y, int color) throws RemoteException;
+
+    void appendText(long textId, int keep, String text) throws RemoteException;
+
+    long commitText(long textId) throws RemoteException;
+
+    // Forgets strokes and text blocks that were started but will never be committed, e.g. because the
+    // client drawing them left
+    void discardPreviews(long[] strokeIds, long[] textIds) throws RemoteException;
+
+    // Erases the shapes with these sequence numbers and returns the ones that were still on the board
+    long[] eraseShapes(long[] sequences) throws RemoteException;
+
+    // Puts erased shapes back on top of the board, e.g. to undo an erase, as long as the compactor has not
+    // dropped them yet. Returns each one's new sequence number, 0 for those that could not be restored.
+    long[] restoreShapes(long[] sequences) throws RemoteException;
+
+    BoardSnapshot getSnapshot() throws RemoteException;
+
+    BoardChunk getBoardChunk(long afterSequence, int limit) throws RemoteException;
     
     boolean requestConnection(String userName) throws RemoteException;
 
-    CopyOnWriteArrayList<String> getChat() throws RemoteException;
+    ChatHistory getChatHistory(long beforeSequence, int limit) throws RemoteException;
 
     void addChatMessage(String userName, String message) throws RemoteException;
 }
@@ -0,0 +1,53 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class AdmissionControlTest {
+
+    @Test
+    void shapesPastTheBurstAreRejectedWithoutWaiting() {
+        // 1 per second with a burst of 3, no board limit, no waiting
+        AdmissionControl admission = new AdmissionControl(1, 3, 0, 0, 0, 0);
+        AdmissionControl.Session session = admission.newSession();
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(AdmissionControl.Result.ADMITTED, admission.admitShape(session));
+        }
+        assertEquals(AdmissionControl.Result.REJECTED, admission.admitShape(session));
+        // Another client has its own buckets
+        assertEquals(AdmissionControl.Result.ADMITTED, admission.admitShape(admission.newSession()));
+    }
+
+    @Test
+    void shapeWaitsForATokenWithinMaxWait() {
+        // 20 per second: the next token is 50 ms away, well within the 2 s wait
+        AdmissionControl admission = new AdmissionControl(20, 1, 0, 0, 0, 2000);
+        AdmissionControl.Session session = admission.newSession();
+
+        assertEquals(AdmissionControl.Result.ADMITTED, admission.admitShape(session));
+        assertEquals(AdmissionControl.Result.DELAYED, admission.admitShape(session));
+    }
+
+    @Test
+    void previewsAreHeldBeforeShapesRunOut() {
+        AdmissionControl admission = new AdmissionControl(1, 4, 0, 0, 0, 0);
+        AdmissionControl.Session session = admission.newSession();
+
+        // Previews keep half the burst for shapes
+        assertEquals(AdmissionControl.Result.ADMITTED, admission.admitPreview(session));
+        assertEquals(AdmissionControl.Result.ADMITTED, admission.admitPreview(session));
+        assertEquals(AdmissionControl.Result.HELD, admission.admitPreview(session));
+        assertEquals(AdmissionControl.Result.ADMITTED, admission.admitShape(session));
+    }
+
+    @Test
+    void noRateIsNoLimit() {
+        AdmissionControl admission = new AdmissionControl(0, 1, 0, 0, 1, 0);
+        AdmissionControl.Session session = admission.newSession();
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(AdmissionControl.Result.ADMITTED, admission.admitShape(session));
+            assertEquals(AdmissionControl.Result.ADMITTED, admission.admitChat(session));
+        }
+    }
+}
@@ -0,0 +1,58 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.Rectangle2D;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BoardFileTest {
+
+    @TempDir
+    File directory;
+
+    private static List<String> types(List<ColoredShape> shapes) {
+        List<String> types = new ArrayList<>();
+        for (ColoredShape shape : shapes) {
+            types.add(BoardMetrics.typeOf(shape.getShape()));
+        }
+        return types;
+    }
+
+    @Test
+    void writtenBoardOpensAndQueriesByViewport() throws IOException {
+        List<ColoredShape> shapes = List.of(
+                new ColoredShape(new Line2D.Double(0, 0, 10, 10), Color.RED, null),
+                new ColoredShape(new Rectangle2D.Double(1000, 1000, 50, 50), Color.BLUE, null),
+                new ColoredShape(new Text2D("note", 20, 40, Color.BLACK, Text2D.DEFAULT_FONT), Color.BLACK, "note"),
+                new ColoredShape(new Polyline2D(new int[] {5000, 5000, 5010, 5020}), Color.GREEN, null),
+                new ColoredShape(new Ellipse2D.Double(-300, -300, 20, 10), Color.ORANGE, null));
+        File file = new File(directory, "board.wb");
+        BoardFile.write(file, shapes);
+
+        assertTrue(BoardFile.isBoardFile(file));
+        assertFalse(BoardFile.isLegacyFile(file));
+        try (BoardFile board = BoardFile.open(file)) {
+            assertEquals(shapes.size(), board.size());
+            assertEquals(List.of("line", "rectangle", "text", "stroke", "oval"), types(board.readAll()));
+            ColoredShape text = board.get(2);
+            assertEquals("note", text.getText());
+            assertEquals("note", ((Text2D) text.getShape()).getText());
+            assertEquals(Color.BLACK, text.getColor());
+            assertArrayEquals(new int[] {5000, 5000, 5010, 5020}, ((Polyline2D) board.get(3).getShape()).getPoints());
+
+            assertEquals(List.of("line", "text"), types(board.query(new Rectangle2D.Double(0, 0, 100, 100))));
+            assertEquals(List.of("stroke"), types(board.query(new Rectangle2D.Double(5005, 5005, 1, 1))));
+            assertEquals(List.of(), types(board.query(new Rectangle2D.Double(2000, 2000, 10, 10))));
+        }
+    }
+}
@@ -0,0 +1,124 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.awt.geom.Line2D;
+import java.awt.geom.Rectangle2D;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BoardJournalTest {
+
+    @TempDir
+    File directory;
+
+    private static ColoredShape line(int x) {
+        return new ColoredShape(new Line2D.Double(x, 0, x, 10), Color.BLACK, null);
+    }
+
+    // Appends to the board and journals in board order, as WhiteboardServer does
+    private static long append(ShapeLog board, BoardJournal journal, ColoredShape shape) {
+        long[] ticket = new long[1];
+        board.append(shape, published -> ticket[0] = journal.append(published));
+        return ticket[0];
+    }
+
+    private static List<Long> sequences(BoardSnapshot snapshot) {
+        List<Long> sequences = new ArrayList<>();
+        for (ColoredShape shape : snapshot.getShapes()) {
+            sequences.add(shape.getSequence());
+        }
+        return sequences;
+    }
+
+    // Writes three lines and erases the second without closing, as if the server then crashed
+    private void writeWithoutClosing() throws IOException {
+        BoardJournal journal = new BoardJournal(directory, 1000);
+        journal.recover();
+        ShapeLog board = new ShapeLog();
+        journal.start(board);
+        append(board, journal, line(1));
+        append(board, journal, line(2));
+        long last = append(board, journal, line(3));
+        long[] ticket = new long[1];
+        board.erase(new long[] {2}, erased -> ticket[0] = journal.erase(erased));
+        assertTrue(journal.awaitDurable(Math.max(last, ticket[0])));
+    }
+
+    private File onlySegment() {
+        File[] segments = directory.listFiles((dir, name) -> name.endsWith(".log"));
+        assertEquals(1, segments.length);
+        return segments[0];
+    }
+
+    @Test
+    void recoversShapesAndErasesWithTheirSequenceNumbers() throws IOException {
+        writeWithoutClosing();
+
+        BoardSnapshot recovered = new BoardJournal(directory, 1000).recover();
+
+        assertEquals(List.of(1L, 3L), sequences(recovered));
+        assertEquals(3, recovered.getSequence());
+    }
+
+    @Test
+    void tornTailIsDropped() throws IOException {
+        writeWithoutClosing();
+        try (RandomAccessFile segment = new RandomAccessFile(onlySegment(), "rw")) {
+            // A record header claiming more bytes than made it to disk
+            segment.seek(segment.length());
+            segment.writeInt(100);
+            segment.writeInt(0);
+            segment.write(new byte[10]);
+        }
+
+        BoardSnapshot recovered = new BoardJournal(directory, 1000).recover();
+
+        assertEquals(List.of(1L, 3L), sequences(recovered));
+    }
+
+    @Test
+    void damagedRecordIsSkippedAndLaterOnesKept() throws IOException {
+        writeWithoutClosing();
+        try (RandomAccessFile segment = new RandomAccessFile(onlySegment(), "rw")) {
+            // Flip the last byte of the first record, after the magic and version
+            segment.seek(5);
+            int length = segment.readInt();
+            long last = 5 + 8 + length - 1;
+            segment.seek(last);
+            int b = segment.read();
+            segment.seek(last);
+            segment.write(b ^ 0xFF);
+        }
+
+        BoardSnapshot recovered = new BoardJournal(directory, 1000).recover();
+
+        assertEquals(List.of(3L), sequences(recovered));
+        assertEquals(3, recovered.getSequence());
+    }
+
+    @Test
+    void unencodableRecordDoesNotStopTheWriter() throws IOException {
+        BoardJournal journal = new BoardJournal(directory, 1000);
+        journal.recover();
+        ShapeLog board = new ShapeLog();
+        journal.start(board);
+        // A label longer than writeUTF takes, handed to the journal only
+        ColoredShape tooLong = new ColoredShape(new Rectangle2D.Double(0, 0, 1, 1), Color.BLACK, "x".repeat(70_000));
+        tooLong.setSequence(100);
+        journal.append(tooLong);
+        long ticket = append(board, journal, line(1));
+
+        assertTrue(journal.awaitDurable(ticket));
+        assertTimeoutPreemptively(Duration.ofSeconds(10), journal::close);
+        assertEquals(List.of(1L), sequences(new BoardJournal(directory, 1000).recover()));
+    }
+}
@@ -0,0 +1,149 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.awt.Color;
+import java.rmi.AccessException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class BoardManagerJoinTest {
+    private BoardManager boards;
+
+    @BeforeEach
+    void startServer() throws Exception {
+        System.setProperty("whiteboard.journal.dir", "");
+        boards = new BoardManager(new ServerExecutors(), "host");
+        boards.joinRequests().setPolicy(JoinPolicy.allowlist(Set.of("alice"), JoinPolicy.Decision.REJECT));
+    }
+
+    @AfterEach
+    void stopServer() {
+        boards.shutdown();
+    }
+
+    @Test
+    void addClientWithoutApprovalIsRejected() {
+        Client mallory = new Client();
+        assertThrows(AccessException.class, () -> boards.addClient(mallory, "mallory", BoardManager.DEFAULT_BOARD, 0));
+        assertThrows(AccessException.class, () -> boards.addClient(mallory, "mallory", BoardManager.DEFAULT_BOARD, 42));
+    }
+
+    @Test
+    void deniedJoinGetsNoGrant() throws Exception {
+        Client mallory = new Client();
+        boards.requestJoin(mallory, "mallory", BoardManager.DEFAULT_BOARD);
+        assertEquals(0L, mallory.grant.get(5, TimeUnit.SECONDS));
+        assertThrows(AccessException.class, () -> boards.addClient(mallory, "mallory", BoardManager.DEFAULT_BOARD, 0));
+    }
+
+    @Test
+    void grantIsGoodForOneJoinOfTheSameUserAndBoard() throws Exception {
+        Client alice = new Client();
+        boards.requestJoin(alice, "alice", BoardManager.DEFAULT_BOARD);
+        long grant = alice.grant.get(5, TimeUnit.SECONDS);
+        assertNotEquals(0L, grant);
+
+        assertThrows(AccessException.class, () -> boards.addClient(new Client(), "mallory", BoardManager.DEFAULT_BOARD, grant));
+        assertThrows(AccessException.class, () -> boards.addClient(alice, "alice", "other", grant));
+        WhiteboardServerInterface session = boards.addClient(alice, "alice", BoardManager.DEFAULT_BOARD, grant);
+        assertNotNull(session);
+        assertThrows(AccessException.class, () -> boards.addClient(alice, "alice", BoardManager.DEFAULT_BOARD, grant));
+
+        // The session does not let anyone else on either
+        assertThrows(AccessException.class, () -> session.addClient(new Client(), "mallory"));
+        session.removeClient(alice);
+    }
+
+    @Test
+    void hostNameIsOnlyAcceptedWithTheHostsWindow() throws Exception {
+        Client headless = new Client();
+        boards.requestJoin(headless, "host", BoardManager.DEFAULT_BOARD);
+        assertEquals(0L, headless.grant.get(5, TimeUnit.SECONDS));
+
+        boards.joinRequests().setApprover(request -> { });
+        Client window = new Client();
+        boards.requestJoin(window, "host", BoardManager.DEFAULT_BOARD);
+        assertNotEquals(0L, window.grant.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void sessionCommitsOnlyItsOwnOpenStrokes() throws Exception {
+        Client alice = new Client();
+        boards.requestJoin(alice, "alice", BoardManager.DEFAULT_BOARD);
+        WhiteboardServerInterface session = boards.addClient(alice, "alice", BoardManager.DEFAULT_BOARD,
+                alice.grant.get(5, TimeUnit.SECONDS));
+
+        assertEquals(0L, session.commitStroke(99));
+        session.appendStroke(1, new int[] {0, 0, 10, 10}, 0);
+        assertNotEquals(0L, session.commitStroke(1));
+        assertEquals(0L, session.commitStroke(1));
+        session.removeClient(alice);
+    }
+
+    @Test
+    void addNodeWithoutTheClusterSecretIsRejected() {
+        assertThrows(AccessException.class, () -> boards.addNode(new Client(), "node x", BoardManager.DEFAULT_BOARD, null));
+        assertThrows(AccessException.class, () -> boards.redeemJoin(1, "alice", BoardManager.DEFAULT_BOARD, ""));
+    }
+
+    private static class Client implements WhiteboardClientInterface, JoinListener {
+        final CompletableFuture<Long> grant = new CompletableFuture<>();
+
+        @Override
+        public void joinAnswered(String boardId, boolean accepted, long grant) {
+            this.grant.complete(grant);
+        }
+
+        @Override
+        public void draw(ColoredShape shape) {
+        }
+
+        @Override
+        public void resync() {
+        }
+
+        @Override
+        public void erase(long[] sequences) {
+        }
+
+        @Override
+        public void previewStroke(long strokeId, int[] points, int color) {
+        }
+
+        @Override
+        public void previewText(long textId, String text, int x, int y, int color) {
+        }
+
+        @Override
+        public void receiveMessage(String message) {
+        }
+
+        @Override
+        public void clear() {
+        }
+
+        @Override
+        public void closeApplication() {
+        }
+
+        @Override
+        public void setCurrentColor(Color color) {
+        }
+
+        @Override
+        public boolean ping() {
+            return true;
+        }
+
+        @Override
+        public void receiveChatMessage(ChatMessage message) {
+        }
+    }
+}
@@ -0,0 +1,59 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class BroadcastFanOutTest {
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final List<String> calls = new CopyOnWriteArrayList<>();
+    // Every call is recorded by method name
+    private final WhiteboardClientInterface client = (WhiteboardClientInterface) Proxy.newProxyInstance(
+            getClass().getClassLoader(), new Class<?>[] {WhiteboardClientInterface.class}, (proxy, method, args) -> {
+                if (method.getDeclaringClass() == Object.class) {
+                    return method.getName().equals("equals") ? proxy == args[0]
+                            : method.getName().equals("hashCode") ? System.identityHashCode(proxy) : "client";
+                }
+                calls.add(method.getName());
+                return method.getReturnType() == boolean.class ? true : null;
+            });
+
+    @AfterEach
+    void stop() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void dropLosesOnlyPreviewsAndResyncsForEverythingElse() throws Exception {
+        BroadcastFanOut fanOut = new BroadcastFanOut(executor, 2, OverflowPolicy.DROP,
+                WhiteboardClientInterface::resync, evicted -> { });
+        fanOut.register(client);
+        // Hold the sender so the queue fills up
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        fanOut.broadcastBoard(c -> c.erase(new long[] {1}));
+        fanOut.broadcastBoard(c -> c.erase(new long[] {2}));
+        fanOut.broadcastPreview(c -> c.previewStroke(1, new int[] {0, 0}, 0), 0);
+        fanOut.broadcastBoard(WhiteboardClientInterface::clear);
+        release.countDown();
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        // The preview is gone, the clear became a resync in place of the erases it could not follow
+        assertEquals(List.of("resync"), calls);
+    }
+}
@@ -0,0 +1,49 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class ChatLogTest {
+
+    private static List<Long> sequences(ChatHistory page) {
+        List<Long> sequences = new ArrayList<>();
+        for (ChatMessage message : page.getMessages()) {
+            sequences.add(message.getSequence());
+        }
+        return sequences;
+    }
+
+    @Test
+    void pagesBackThroughWhatIsRetained() {
+        ChatLog chat = new ChatLog(5);
+        List<Long> published = new ArrayList<>();
+        for (int i = 1; i <= 8; i++) {
+            chat.append("message " + i, message -> published.add(message.getSequence()));
+        }
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L), published);
+
+        ChatHistory latest = chat.page(Long.MAX_VALUE, 3);
+        assertEquals(List.of(6L, 7L, 8L), sequences(latest));
+        assertEquals("message 6", latest.getMessages().get(0).getText());
+        assertTrue(latest.hasOlder());
+
+        // Only 4 to 8 are retained
+        ChatHistory older = chat.page(6, 3);
+        assertEquals(List.of(4L, 5L), sequences(older));
+        assertFalse(older.hasOlder());
+
+        assertEquals(List.of(), sequences(chat.page(4, 3)));
+        assertEquals(List.of(), sequences(chat.page(Long.MAX_VALUE, 0)));
+    }
+
+    @Test
+    void emptyLogHasNoPages() {
+        ChatHistory page = new ChatLog(5).page(Long.MAX_VALUE, 10);
+        assertEquals(List.of(), sequences(page));
+        assertFalse(page.hasOlder());
+    }
+}
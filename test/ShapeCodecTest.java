@@ -0,0 +1,106 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.Rectangle2D;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class ShapeCodecTest {
+
+    private static final Color TRANSLUCENT = new Color(10, 20, 30, 40);
+
+    private static byte[] encode(List<ColoredShape> shapes) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        ShapeCodec codec = new ShapeCodec();
+        for (ColoredShape shape : shapes) {
+            codec.write(out, shape);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static List<ColoredShape> decode(byte[] bytes, int count) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        ShapeCodec codec = new ShapeCodec();
+        List<ColoredShape> shapes = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            shapes.add(codec.read(in));
+        }
+        assertEquals(-1, in.read());
+        return shapes;
+    }
+
+    private static ColoredShape shape(java.awt.Shape shape, String label, long sequence, long previewId) {
+        ColoredShape coloredShape = new ColoredShape(shape, TRANSLUCENT, label);
+        coloredShape.setSequence(sequence);
+        coloredShape.setPreviewId(previewId);
+        return coloredShape;
+    }
+
+    @Test
+    void everyShapeTypeRoundTrips() throws IOException {
+        Font big = new Font("Serif", Font.BOLD, 32);
+        List<ColoredShape> shapes = List.of(
+                shape(new Line2D.Double(-5, 7, 300, -2), null, 1, 0),
+                shape(new Ellipse2D.Double(10, 20, 30, 40), null, 2, -42),
+                shape(new Rectangle2D.Double(-100, -200, 5, 6), "label", Long.MAX_VALUE, 0),
+                shape(new Text2D("héllo", 3, 4, TRANSLUCENT, big), "héllo", 4, 7),
+                // The second text in the same font refers to it by id
+                shape(new Text2D("again", 5, 6, TRANSLUCENT, big), "again", 5, 0),
+                shape(new Polyline2D(new int[] {0, 0, 1000, -1000, -3, 4}), null, 6, 0));
+
+        List<ColoredShape> decoded = decode(encode(shapes), shapes.size());
+
+        for (int i = 0; i < shapes.size(); i++) {
+            ColoredShape expected = shapes.get(i);
+            ColoredShape actual = decoded.get(i);
+            assertEquals(expected.getSequence(), actual.getSequence());
+            assertEquals(expected.getPreviewId(), actual.getPreviewId());
+            assertEquals(expected.getColor(), actual.getColor());
+            assertEquals(expected.getText(), actual.getText());
+            assertEquals(expected.getShape().getBounds2D(), actual.getShape().getBounds2D());
+        }
+        assertEquals("héllo", ((Text2D) decoded.get(3).getShape()).getText());
+        assertEquals(big, ((Text2D) decoded.get(4).getShape()).getFont());
+        assertArrayEquals(new int[] {0, 0, 1000, -1000, -3, 4}, ((Polyline2D) decoded.get(5).getShape()).getPoints());
+    }
+
+    @Test
+    void textIsWrittenOnce() throws IOException {
+        String text = "x".repeat(1000);
+        ColoredShape labelled = shape(new Text2D(text, 0, 0, TRANSLUCENT, Text2D.DEFAULT_FONT), text, 1, 0);
+
+        byte[] bytes = encode(List.of(labelled));
+
+        assertTrue(bytes.length < text.length() + 20, bytes.length + " bytes");
+        assertEquals(text, decode(bytes, 1).get(0).getText());
+    }
+
+    @Test
+    void strokeCountPastTheCapIsCorrupt() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(ShapeCodec.TAG_POLYLINE);
+        out.writeByte(0);
+        ShapeCodec.writeVarLong(out, 1);
+        out.writeInt(0);
+        ShapeCodec.writeVarInt(out, Integer.MAX_VALUE);
+
+        assertThrows(StreamCorruptedException.class,
+                () -> new ShapeCodec().read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))));
+    }
+}
@@ -0,0 +1,79 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.awt.Color;
+import java.awt.geom.Line2D;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class ShapeLogTest {
+
+    private static ColoredShape line(int x) {
+        return new ColoredShape(new Line2D.Double(x, 0, x, 10), Color.BLACK, null);
+    }
+
+    @Test
+    void failedPublishKeepsTheShapeAndDoesNotStallLaterAppends() {
+        ShapeLog log = new ShapeLog();
+        List<Long> forwarded = new ArrayList<>();
+        log.append(line(1), shape -> forwarded.add(shape.getSequence()));
+        assertThrows(IllegalStateException.class, () -> log.append(line(2), shape -> {
+            throw new IllegalStateException("journal full");
+        }));
+
+        long third = assertTimeoutPreemptively(Duration.ofSeconds(5),
+                () -> log.append(line(3), shape -> forwarded.add(shape.getSequence())));
+
+        assertEquals(3, third);
+        assertEquals(List.of(1L, 3L), forwarded);
+        // onPublish may have journaled it before throwing, so the board keeps it too
+        assertEquals(3, log.size());
+        assertEquals(0, log.getErasedCount());
+        List<Long> onBoard = new ArrayList<>();
+        for (ColoredShape shape : log.snapshot().getShapes()) {
+            onBoard.add(shape.getSequence());
+        }
+        assertEquals(List.of(1L, 2L, 3L), onBoard);
+        assertEquals(3, log.getLastSequence());
+    }
+
+    @Test
+    void appenderWaitingOnAFailedSlotGoesAhead() throws Exception {
+        ShapeLog log = new ShapeLog();
+        CountDownLatch publishing = new CountDownLatch(1);
+        CountDownLatch waiting = new CountDownLatch(1);
+        ExecutorService threads = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> failing = threads.submit(() -> log.append(line(1), shape -> {
+                publishing.countDown();
+                try {
+                    waiting.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new IllegalStateException("fan-out closed");
+            }));
+            publishing.await();
+            Future<Long> next = threads.submit(() -> log.append(line(2), null));
+            waiting.countDown();
+
+            assertEquals(2L, next.get(5, TimeUnit.SECONDS));
+            assertEquals(2, log.size());
+            assertThrows(ExecutionException.class, failing::get);
+            assertTimeoutPreemptively(Duration.ofSeconds(5), () -> log.clear(null));
+            assertEquals(0, log.size());
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+}
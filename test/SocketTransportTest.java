@@ -0,0 +1,98 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.ServerSocket;
+import java.rmi.ConnectException;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.rmi.UnmarshalException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class SocketTransportTest {
+
+    public interface Echo extends Remote {
+        String echo(String text) throws RemoteException;
+    }
+
+    public interface Values extends Remote {
+        Object value(Object value) throws RemoteException;
+    }
+
+    private final SocketTransport server = new SocketTransport();
+    private final SocketTransport client = new SocketTransport();
+    private final ExecutorService threads = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void stop() {
+        threads.shutdownNow();
+        client.close();
+        server.close();
+    }
+
+    @Test
+    void droppingOneObjectLeavesTheSharedConnectionUp() throws Exception {
+        CountDownLatch stuck = new CountDownLatch(1);
+        CountDownLatch never = new CountDownLatch(1);
+        int port;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        server.bind(port, "slow", (Echo) text -> {
+            stuck.countDown();
+            try {
+                never.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return text;
+        });
+        server.bind(port, "fast", (Echo) text -> text);
+        // Both looked up through the one connection this process keeps to the port
+        Echo slow = (Echo) client.lookup("localhost", port, "slow");
+        Echo fast = (Echo) client.lookup("localhost", port, "fast");
+
+        Future<String> waiting = threads.submit(() -> slow.echo("hello"));
+        stuck.await(5, TimeUnit.SECONDS);
+        Transport.drop(slow);
+
+        ExecutionException failed = assertThrows(ExecutionException.class, () -> waiting.get(5, TimeUnit.SECONDS));
+        assertEquals(ConnectException.class, failed.getCause().getClass());
+        assertThrows(ConnectException.class, () -> slow.echo("again"));
+        assertEquals("still here", fast.echo("still here"));
+        never.countDown();
+    }
+
+    @Test
+    void onlyProtocolValuesAreDeserialized() throws Exception {
+        int port;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        server.bind(port, "values", (Values) value -> value);
+        Values values = (Values) client.lookup("localhost", port, "values");
+
+        ChatHistory history = (ChatHistory) values.value(new ChatHistory(new ArrayList<>(List.of(new ChatMessage(1, "hi"))), false));
+        assertEquals("hi", history.getMessages().get(0).getText());
+        assertThrows(UnmarshalException.class, () -> values.value(new HashMap<>()));
+        // Nor a value nested deeper than the limit
+        Object[] nested = new Object[0];
+        for (int i = 0; i < 20; i++) {
+            nested = new Object[] {nested};
+        }
+        Object tooDeep = nested;
+        assertThrows(UnmarshalException.class, () -> values.value(tooDeep));
+        assertTrue(values.value(new Object[] {"fine"}) instanceof Object[]);
+    }
+}
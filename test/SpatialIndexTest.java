@@ -0,0 +1,70 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class SpatialIndexTest {
+
+    // Ids whose bounds intersect the area, touching edges included, the way the index reports them
+    private static int[] scan(List<Rectangle2D> shapes, boolean[] removed, Rectangle2D area) {
+        List<Integer> ids = new ArrayList<>();
+        for (int id = 0; id < shapes.size(); id++) {
+            Rectangle2D bounds = shapes.get(id);
+            if (!removed[id] && bounds.getMinX() <= area.getMaxX() && bounds.getMaxX() >= area.getMinX()
+                    && bounds.getMinY() <= area.getMaxY() && bounds.getMaxY() >= area.getMinY()) {
+                ids.add(id);
+            }
+        }
+        return ids.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    @Test
+    void queriesMatchALinearScanAcrossShapeSizes() {
+        Random random = new Random(11);
+        SpatialIndex index = new SpatialIndex(256);
+        List<Rectangle2D> shapes = new ArrayList<>();
+        for (int id = 0; id < 3000; id++) {
+            // Mostly small shapes, some spanning many cells, a few spanning the whole board
+            int size = id % 50 == 0 ? 200_000 : id % 7 == 0 ? 5000 : 40;
+            Rectangle2D bounds = new Rectangle2D.Double(random.nextInt(100_000) - 50_000, random.nextInt(100_000) - 50_000,
+                    random.nextInt(size), random.nextInt(size));
+            shapes.add(bounds);
+            index.add(id, bounds);
+        }
+        boolean[] removed = new boolean[shapes.size()];
+        for (int id = 0; id < shapes.size(); id += 3) {
+            assertTrue(index.remove(id));
+            removed[id] = true;
+        }
+        assertFalse(index.remove(0));
+        assertEquals(2000, index.size());
+
+        for (int i = 0; i < 200; i++) {
+            int size = i % 10 == 0 ? 60_000 : 300;
+            Rectangle2D area = new Rectangle2D.Double(random.nextInt(100_000) - 50_000, random.nextInt(100_000) - 50_000,
+                    size, size);
+            assertArrayEquals(scan(shapes, removed, area), index.query(area));
+        }
+    }
+
+    @Test
+    void renumberKeepsShapesFindable() {
+        SpatialIndex index = new SpatialIndex(256);
+        index.add(0, new Rectangle2D.Double(0, 0, 10, 10));
+        index.add(1, new Rectangle2D.Double(0, 0, 100_000, 100_000));
+        index.add(2, new Rectangle2D.Double(5, 5, 10, 10));
+        index.remove(0);
+
+        index.renumber(new int[] {-1, 0, 1});
+
+        assertArrayEquals(new int[] {0, 1}, index.query(new Rectangle2D.Double(6, 6, 1, 1)));
+        assertArrayEquals(new int[] {0}, index.query(new Rectangle2D.Double(50_000, 50_000, 1, 1)));
+    }
+}